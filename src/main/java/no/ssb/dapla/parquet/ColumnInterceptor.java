@@ -0,0 +1,40 @@
+package no.ssb.dapla.parquet;
+
+/**
+ * ColumnInterceptor is the column oriented counterpart of {@link FieldInterceptor}. Instead of being called once per
+ * value, it is asked once per column for a {@link ColumnTransform}, which then receives the values of that column in
+ * batches. This allows expensive transformations (e.g. pseudonymization) to work on many values at a time.
+ */
+public interface ColumnInterceptor {
+
+    /**
+     * Resolve the transform for a column. This is called once per column when a stream is opened.
+     *
+     * @param columnPath the path to the column, in the same notation as the field passed to
+     *                   {@link FieldInterceptor#intercept(String, String)}, e.g. /person/name/firstName
+     * @return the transform to apply to the values of the column, or null to leave the column as is
+     */
+    ColumnTransform resolve(String columnPath);
+
+    interface ColumnTransform {
+        /**
+         * Transform the first length values of the given array, in place. The array is owned by the caller and is
+         * reused between calls, so it must not be retained.
+         *
+         * @param values the values to transform
+         * @param length the number of values in the array that belong to this batch
+         */
+        void intercept(String[] values, int length);
+    }
+
+    /**
+     * Adapt a {@link FieldInterceptor} to a ColumnInterceptor that intercepts every column, one value at a time.
+     */
+    static ColumnInterceptor of(FieldInterceptor fieldInterceptor) {
+        return columnPath -> (values, length) -> {
+            for (int i = 0; i < length; i++) {
+                values[i] = fieldInterceptor.intercept(columnPath, values[i]);
+            }
+        };
+    }
+}
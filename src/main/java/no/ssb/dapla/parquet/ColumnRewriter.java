@@ -0,0 +1,197 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.format.DataPageHeader;
+import org.apache.parquet.format.DictionaryPageHeader;
+import org.apache.parquet.format.PageHeader;
+import org.apache.parquet.format.Util;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * ColumnRewriter writes a copy of a parquet file in which the values of some columns have been passed through a
+ * {@link FieldInterceptor}, see {@link File#rewrite(SeekableByteChannel, Path, Set, FieldInterceptor)}.
+ * <p></p>
+ * Only the intercepted columns are decoded and encoded again, with a {@link RowGroupEncoder}. The chunks of all other
+ * columns are copied page by page: the page headers are read and written again, but the page bodies are copied as they
+ * are, still compressed. The statistics of copied chunks are kept, but their page indexes are not. Chunks that have
+ * data pages of version 2, which {@link ParquetFileWriter} can't write, are decoded and encoded again, without
+ * interception.
+ */
+class ColumnRewriter {
+
+    private static final ParquetMetadataConverter METADATA_CONVERTER = new ParquetMetadataConverter();
+
+    private final ParquetFileReader reader;
+    private final SeekableInputStream chunks;
+    private final MessageType schema;
+    private final MessageType transcodedSchema;
+    private final Set<ColumnDescriptor> intercepted;
+    private final Set<ColumnDescriptor> transcoded;
+    private final FieldInterceptor fieldInterceptor;
+    private final StandaloneCodecFactory codecFactory = new StandaloneCodecFactory();
+
+    private ColumnRewriter(ParquetFileReader reader, SeekableInputStream chunks, Set<String> globPatterns, FieldInterceptor fieldInterceptor) {
+        this.reader = reader;
+        this.chunks = chunks;
+        this.schema = reader.getFooter().getFileMetaData().getSchema();
+        this.fieldInterceptor = fieldInterceptor;
+
+        MessageType projection = Schema.createProjection(schema, globPatterns);
+        if (projection == null) {
+            throw new RuntimeException("Column glob patterns don't match any columns. Patterns: " + globPatterns);
+        }
+        this.intercepted = new HashSet<>(projection.getColumns());
+        for (ColumnDescriptor column : intercepted) {
+            if (!RecordNormalizer.isBinary(column.getPrimitiveType())) {
+                throw new IllegalArgumentException("Column glob patterns match a column that is not binary. Column: " + File.columnPath(schema, column));
+            }
+        }
+
+        //Columns with pages that can't be copied are transcoded along with the intercepted ones
+        Set<String> transcodedPatterns = new HashSet<>(globPatterns);
+        for (BlockMetaData block : reader.getRowGroups()) {
+            for (ColumnChunkMetaData chunk : block.getColumns()) {
+                if (chunk.getEncodingStats() != null && chunk.getEncodingStats().usesV2Pages()) {
+                    transcodedPatterns.add(File.columnPath(schema, schema.getColumnDescription(chunk.getPath().toArray())));
+                }
+            }
+        }
+        this.transcodedSchema = Schema.createProjection(schema, transcodedPatterns);
+        this.transcoded = new HashSet<>(transcodedSchema.getColumns());
+    }
+
+    static void rewrite(SeekableByteChannel data, Path path, Set<String> globPatterns, FieldInterceptor fieldInterceptor) throws IOException {
+        SeekableByteChannelInputFile inputFile = new SeekableByteChannelInputFile(data);
+        try (ParquetFileReader reader = ParquetReaders.open(inputFile, ParquetReaders.readOptions().build());
+             SeekableInputStream chunks = inputFile.newStream()) {
+            ColumnRewriter rewriter = new ColumnRewriter(reader, chunks, globPatterns, Objects.requireNonNull(fieldInterceptor));
+            try {
+                rewriter.rewrite(path);
+            } finally {
+                rewriter.codecFactory.release();
+            }
+        }
+    }
+
+    private void rewrite(Path path) throws IOException {
+        reader.setRequestedSchema(transcodedSchema);
+        ParquetFileWriter writer = new ParquetFileWriter(HadoopOutputFile.fromPath(new org.apache.hadoop.fs.Path(path.toUri()), new Configuration()),
+                schema, ParquetFileWriter.Mode.CREATE, ParquetWriter.DEFAULT_BLOCK_SIZE, 0, ParquetProperties.DEFAULT_COLUMN_INDEX_TRUNCATE_LENGTH,
+                ParquetProperties.DEFAULT_STATISTICS_TRUNCATE_LENGTH, ParquetProperties.DEFAULT_PAGE_WRITE_CHECKSUM_ENABLED);
+        writer.start();
+        for (BlockMetaData block : reader.getRowGroups()) {
+            RowGroupEncoder encoder = transcode(block, reader.readNextRowGroup());
+            writer.startBlock(block.getRowCount());
+            for (ColumnChunkMetaData chunk : block.getColumns()) {
+                ColumnDescriptor column = schema.getColumnDescription(chunk.getPath().toArray());
+                if (transcoded.contains(column)) {
+                    encoder.writeColumn(writer, column);
+                } else {
+                    copy(writer, column, chunk);
+                }
+            }
+            writer.endBlock();
+        }
+        writer.end(keyValueMetaData());
+    }
+
+    /**
+     * The key-value metadata of the file, without the sort order if the records are sorted on an intercepted column,
+     * as they may no longer be sorted on its values.
+     */
+    private Map<String, String> keyValueMetaData() {
+        Map<String, String> keyValueMetaData = new HashMap<>(reader.getFooter().getFileMetaData().getKeyValueMetaData());
+        String sortOrder = keyValueMetaData.get(SortingJsonWriter.SORT_ORDER_KEY);
+        if (sortOrder != null) {
+            List<String> sortPaths = List.of(sortOrder.split(","));
+            for (ColumnDescriptor column : intercepted) {
+                if (sortPaths.contains(File.columnPath(schema, column))) {
+                    keyValueMetaData.remove(SortingJsonWriter.SORT_ORDER_KEY);
+                }
+            }
+        }
+        return keyValueMetaData;
+    }
+
+    /**
+     * Copy the pages of a column chunk as they are. The statistics of the chunk are given with the first page, as
+     * the statistics of the pages aren't necessarily in the page headers. Version 1 page headers don't hold a row count,
+     * so the pages are written without one.
+     */
+    @SuppressWarnings("deprecation")
+    private void copy(ParquetFileWriter writer, ColumnDescriptor column, ColumnChunkMetaData chunk) throws IOException {
+        long end = chunk.getStartingPos() + chunk.getTotalSize();
+        chunks.seek(chunk.getStartingPos());
+        writer.startColumn(column, chunk.getValueCount(), chunk.getCodec());
+        Statistics<?> statistics = chunk.getStatistics() != null ? chunk.getStatistics() : Statistics.createStats(column.getPrimitiveType());
+        while (chunks.getPos() < end) {
+            PageHeader header = Util.readPageHeader(chunks);
+            byte[] body = new byte[header.getCompressed_page_size()];
+            chunks.readFully(body);
+            switch (header.getType()) {
+                case DICTIONARY_PAGE -> {
+                    DictionaryPageHeader dictionaryHeader = header.getDictionary_page_header();
+                    writer.writeDictionaryPage(new DictionaryPage(BytesInput.from(body), header.getUncompressed_page_size(),
+                            dictionaryHeader.getNum_values(), encoding(dictionaryHeader.getEncoding())));
+                }
+                case DATA_PAGE -> {
+                    DataPageHeader dataHeader = header.getData_page_header();
+                    writer.writeDataPage(dataHeader.getNum_values(), header.getUncompressed_page_size(), BytesInput.from(body), statistics,
+                            encoding(dataHeader.getRepetition_level_encoding()), encoding(dataHeader.getDefinition_level_encoding()),
+                            encoding(dataHeader.getEncoding()));
+                    statistics = Statistics.createStats(column.getPrimitiveType());
+                }
+                case DATA_PAGE_V2 -> throw new IOException("Column chunk has data pages of version 2, which can't be copied. Column: " + chunk.getPath());
+                default -> {
+                    //Index pages aren't used by parquet-mr, and are left out
+                }
+            }
+        }
+        writer.endColumn();
+    }
+
+    private static Encoding encoding(org.apache.parquet.format.Encoding encoding) {
+        return METADATA_CONVERTER.getEncoding(encoding);
+    }
+
+    /**
+     * Decode the transcoded columns of a row group, passing the values of the intercepted columns through the field
+     * interceptor, and encode them again with the codecs of the chunks they were read from.
+     */
+    private RowGroupEncoder transcode(BlockMetaData block, PageReadStore rowGroup) {
+        Map<ColumnDescriptor, CompressionCodecName> codecs = new HashMap<>();
+        for (ColumnChunkMetaData chunk : block.getColumns()) {
+            codecs.put(schema.getColumnDescription(chunk.getPath().toArray()), chunk.getCodec());
+        }
+        RowGroupEncoder encoder = new RowGroupEncoder(transcodedSchema, codecFactory, codecs::get, intercepted, fieldInterceptor);
+        encoder.append(rowGroup, reader.getFooter().getFileMetaData().getCreatedBy());
+        encoder.flush();
+        return encoder;
+    }
+}
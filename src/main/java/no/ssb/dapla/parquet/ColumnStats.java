@@ -0,0 +1,107 @@
+package no.ssb.dapla.parquet;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * ColumnStats holds aggregates of a single column across all row groups of a file, see
+ * {@link File#columnStats(java.nio.channels.SeekableByteChannel, String)}.
+ * <p></p>
+ * Min and max are the physical values of the column: Integer, Long, Float, Double or Boolean for the respective
+ * primitive types, String for binary columns with a string annotation and byte[] for other binary columns. They are
+ * ordered by the sort order of the column type, e.g. strings are compared by their unsigned UTF-8 bytes.
+ */
+public class ColumnStats {
+
+    private final String path;
+    private final long valueCount;
+    private final long nullCount;
+    private final Object min;
+    private final Object max;
+    private final boolean scanned;
+
+    ColumnStats(String path, long valueCount, long nullCount, Object min, Object max, boolean scanned) {
+        this.path = path;
+        this.valueCount = valueCount;
+        this.nullCount = nullCount;
+        this.min = min;
+        this.max = max;
+        this.scanned = scanned;
+    }
+
+    /**
+     * @return the path to the column, e.g. /person/name/firstName
+     */
+    public String path() {
+        return path;
+    }
+
+    /**
+     * @return the number of values in the column, including nulls. For columns in lists, every list element is a value
+     * and null or empty lists count as a single null.
+     */
+    public long valueCount() {
+        return valueCount;
+    }
+
+    public long nullCount() {
+        return nullCount;
+    }
+
+    /**
+     * @return the smallest value of the column, or null if all values are null
+     */
+    public Object min() {
+        return min;
+    }
+
+    /**
+     * @return the largest value of the column, or null if all values are null
+     */
+    public Object max() {
+        return max;
+    }
+
+    /**
+     * @return true if some row groups didn't have trustworthy statistics in the footer and had to be scanned
+     */
+    public boolean scanned() {
+        return scanned;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ColumnStats that = (ColumnStats) o;
+        return valueCount == that.valueCount &&
+                nullCount == that.nullCount &&
+                scanned == that.scanned &&
+                path.equals(that.path) &&
+                Objects.deepEquals(min, that.min) &&
+                Objects.deepEquals(max, that.max);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(path, valueCount, nullCount, scanned);
+        result = 31 * result + Arrays.deepHashCode(new Object[]{min, max});
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnStats{" +
+                "path='" + path + '\'' +
+                ", valueCount=" + valueCount +
+                ", nullCount=" + nullCount +
+                ", min=" + (min instanceof byte[] ? Arrays.toString((byte[]) min) : min) +
+                ", max=" + (max instanceof byte[] ? Arrays.toString((byte[]) max) : max) +
+                ", scanned=" + scanned +
+                '}';
+    }
+}
@@ -0,0 +1,323 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.PrimitiveType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * ColumnVector holds the values of a single column for the rows of a {@link ColumnarBatch}.
+ * <p></p>
+ * Values are held in a primitive array that matches the physical type of the column: {@link #booleans()},
+ * {@link #ints()}, {@link #longs()}, {@link #floats()} or {@link #doubles()}. Binary values, including strings, are
+ * held back to back in {@link #bytes()}, where value i spans {@link #byteOffsets()}[i] to {@link #byteOffsets()}[i + 1].
+ * Arrays are returned as is, may be longer than the number of values, and must not be modified.
+ * <p></p>
+ * A null value occupies a slot like any other value, and is marked in {@link #nulls()}. In columns that are in lists,
+ * a row has any number of values, and the values of row r are the values from {@link #offsets()}[r] to
+ * {@link #offsets()}[r + 1]. An empty or missing list is a single null value, and {@link #definitionLevels()} tells
+ * which level of the column is missing, like in parquet itself.
+ */
+public class ColumnVector {
+
+    private final String path;
+    private final PrimitiveType type;
+    private final int maxDefinitionLevel;
+    private final int maxRepetitionLevel;
+    private final BitSet nulls = new BitSet();
+    private int size;
+    private int rowCount;
+    private int[] offsets;
+    private int[] definitionLevels;
+    private boolean[] booleans;
+    private int[] ints;
+    private long[] longs;
+    private float[] floats;
+    private double[] doubles;
+    private byte[] bytes;
+    private int[] byteOffsets;
+
+    ColumnVector(String path, ColumnDescriptor column, int capacity) {
+        this.path = path;
+        this.type = column.getPrimitiveType();
+        this.maxDefinitionLevel = column.getMaxDefinitionLevel();
+        this.maxRepetitionLevel = column.getMaxRepetitionLevel();
+        if (maxRepetitionLevel > 0) {
+            offsets = new int[capacity + 1];
+            definitionLevels = new int[capacity];
+        }
+        switch (type.getPrimitiveTypeName()) {
+            case BOOLEAN -> booleans = new boolean[capacity];
+            case INT32 -> ints = new int[capacity];
+            case INT64 -> longs = new long[capacity];
+            case FLOAT -> floats = new float[capacity];
+            case DOUBLE -> doubles = new double[capacity];
+            default -> {
+                bytes = new byte[capacity * 16];
+                byteOffsets = new int[capacity + 1];
+            }
+        }
+    }
+
+    /**
+     * @return the path to the column, e.g. /person/name/firstName
+     */
+    public String path() {
+        return path;
+    }
+
+    public PrimitiveType type() {
+        return type;
+    }
+
+    public int maxDefinitionLevel() {
+        return maxDefinitionLevel;
+    }
+
+    public int maxRepetitionLevel() {
+        return maxRepetitionLevel;
+    }
+
+    /**
+     * @return the number of values, which is the number of rows unless the column is in a list
+     */
+    public int size() {
+        return size;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public boolean isNull(int index) {
+        return nulls.get(index);
+    }
+
+    /**
+     * @return the indexes of the null values. The returned set must not be modified.
+     */
+    public BitSet nulls() {
+        return nulls;
+    }
+
+    /**
+     * @return the index of the first value of every row, followed by the number of values, or null if the column
+     * isn't in a list
+     */
+    public int[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * @return the definition level of every value, or null if the column isn't in a list
+     */
+    public int[] definitionLevels() {
+        return definitionLevels;
+    }
+
+    public boolean[] booleans() {
+        return booleans;
+    }
+
+    public int[] ints() {
+        return ints;
+    }
+
+    public long[] longs() {
+        return longs;
+    }
+
+    public float[] floats() {
+        return floats;
+    }
+
+    public double[] doubles() {
+        return doubles;
+    }
+
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the offset of every binary value in {@link #bytes()}, followed by the total number of bytes
+     */
+    public int[] byteOffsets() {
+        return byteOffsets;
+    }
+
+    public boolean getBoolean(int index) {
+        return booleans[index];
+    }
+
+    public int getInt(int index) {
+        return ints[index];
+    }
+
+    public long getLong(int index) {
+        return longs[index];
+    }
+
+    public float getFloat(int index) {
+        return floats[index];
+    }
+
+    public double getDouble(int index) {
+        return doubles[index];
+    }
+
+    /**
+     * @return a copy of a binary value
+     */
+    public byte[] getBinary(int index) {
+        return Arrays.copyOfRange(bytes, byteOffsets[index], byteOffsets[index + 1]);
+    }
+
+    /**
+     * @return a binary value decoded as UTF-8
+     */
+    public String getString(int index) {
+        return new String(bytes, byteOffsets[index], byteOffsets[index + 1] - byteOffsets[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the value as an object of its physical type, e.g. an Integer for an INT32 column, a String for a binary
+     * column with a string annotation and a byte[] for other binary columns, or null if the value is null
+     */
+    public Object get(int index) {
+        if (isNull(index)) {
+            return null;
+        }
+        return switch (type.getPrimitiveTypeName()) {
+            case BOOLEAN -> booleans[index];
+            case INT32 -> ints[index];
+            case INT64 -> longs[index];
+            case FLOAT -> floats[index];
+            case DOUBLE -> doubles[index];
+            default -> isString() ? getString(index) : getBinary(index);
+        };
+    }
+
+    private boolean isString() {
+        LogicalTypeAnnotation annotation = type.getLogicalTypeAnnotation();
+        return annotation instanceof LogicalTypeAnnotation.StringLogicalTypeAnnotation
+                || annotation instanceof LogicalTypeAnnotation.EnumLogicalTypeAnnotation
+                || annotation instanceof LogicalTypeAnnotation.JsonLogicalTypeAnnotation;
+    }
+
+    /**
+     * Clear the vector for the next batch, keeping its arrays.
+     */
+    void clear() {
+        size = 0;
+        rowCount = 0;
+        nulls.clear();
+    }
+
+    /**
+     * Start a new row. Values appended from now on belong to the row.
+     */
+    void startRow() {
+        if (offsets != null) {
+            offsets = grow(offsets, rowCount + 2);
+            offsets[rowCount] = size;
+            offsets[rowCount + 1] = size;
+        }
+        rowCount++;
+    }
+
+    private void endValue(int definitionLevel) {
+        if (definitionLevels != null) {
+            definitionLevels = grow(definitionLevels, size + 1);
+            definitionLevels[size] = definitionLevel;
+        }
+        size++;
+        if (offsets != null) {
+            offsets[rowCount] = size;
+        }
+    }
+
+    void appendNull(int definitionLevel) {
+        nulls.set(size);
+        switch (type.getPrimitiveTypeName()) {
+            case BOOLEAN -> booleans = grow(booleans, size + 1);
+            case INT32 -> ints = grow(ints, size + 1);
+            case INT64 -> longs = grow(longs, size + 1);
+            case FLOAT -> floats = grow(floats, size + 1);
+            case DOUBLE -> doubles = grow(doubles, size + 1);
+            default -> {
+                byteOffsets = grow(byteOffsets, size + 2);
+                byteOffsets[size + 1] = byteOffsets[size];
+            }
+        }
+        endValue(definitionLevel);
+    }
+
+    void appendBoolean(boolean value) {
+        booleans = grow(booleans, size + 1);
+        booleans[size] = value;
+        endValue(maxDefinitionLevel);
+    }
+
+    void appendInt(int value) {
+        ints = grow(ints, size + 1);
+        ints[size] = value;
+        endValue(maxDefinitionLevel);
+    }
+
+    void appendLong(long value) {
+        longs = grow(longs, size + 1);
+        longs[size] = value;
+        endValue(maxDefinitionLevel);
+    }
+
+    void appendFloat(float value) {
+        floats = grow(floats, size + 1);
+        floats[size] = value;
+        endValue(maxDefinitionLevel);
+    }
+
+    void appendDouble(double value) {
+        doubles = grow(doubles, size + 1);
+        doubles[size] = value;
+        endValue(maxDefinitionLevel);
+    }
+
+    void appendBinary(Binary value) {
+        ByteBuffer buffer = value.toByteBuffer();
+        int length = buffer.remaining();
+        int offset = byteOffsets[size];
+        if (bytes.length < offset + length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, offset + length));
+        }
+        buffer.get(bytes, offset, length);
+        byteOffsets = grow(byteOffsets, size + 2);
+        byteOffsets[size + 1] = offset + length;
+        endValue(maxDefinitionLevel);
+    }
+
+    private static int[] grow(int[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(array.length * 2, length));
+    }
+
+    private static boolean[] grow(boolean[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(array.length * 2, length));
+    }
+
+    private static long[] grow(long[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(array.length * 2, length));
+    }
+
+    private static float[] grow(float[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(array.length * 2, length));
+    }
+
+    private static double[] grow(double[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(array.length * 2, length));
+    }
+}
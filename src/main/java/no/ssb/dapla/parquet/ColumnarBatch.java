@@ -0,0 +1,79 @@
+package no.ssb.dapla.parquet;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ColumnarBatch holds up to {@link #capacity()} rows as one {@link ColumnVector} per column, filled by
+ * {@link ColumnarReader#readBatch(ColumnarBatch)}.
+ * <p></p>
+ * The vectors keep their arrays between reads, so reading into the same batch again reuses their capacity. This also
+ * means that the values of a batch are only valid until the batch is read into again.
+ */
+public class ColumnarBatch {
+
+    private final int capacity;
+    private final List<ColumnVector> columns;
+    private final Map<String, ColumnVector> columnsByPath = new LinkedHashMap<>();
+    private int rowCount;
+
+    ColumnarBatch(int capacity, List<ColumnVector> columns) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be positive. Got: " + capacity);
+        }
+        this.capacity = capacity;
+        this.columns = List.copyOf(columns);
+        for (ColumnVector column : columns) {
+            columnsByPath.put(column.path(), column);
+        }
+    }
+
+    /**
+     * @return the maximum number of rows in this batch
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of rows in this batch
+     */
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    /**
+     * @return the vectors of this batch, in schema order
+     */
+    public List<ColumnVector> columns() {
+        return columns;
+    }
+
+    /**
+     * @param path the path to a column, e.g. /person/name/firstName
+     * @return the vector of the column, or null if the column isn't in this batch
+     */
+    public ColumnVector column(String path) {
+        return columnsByPath.get(path);
+    }
+
+    int remaining() {
+        return capacity - rowCount;
+    }
+
+    void clear() {
+        rowCount = 0;
+        for (ColumnVector column : columns) {
+            column.clear();
+        }
+    }
+
+    void addRows(int rows) {
+        rowCount += rows;
+    }
+}
@@ -0,0 +1,240 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * ColumnarReader reads a parquet file in batches of rows, with the values of each column in a {@link ColumnVector} of
+ * primitive arrays rather than in records. Values go straight from the column readers into the vectors, without being
+ * assembled into records and normalized, which makes it the cheaper way to scan a few columns of many rows.
+ * <p></p>
+ * Columns are selected with the same globs as {@link RecordStream.Builder#withFieldSelectors(Set)}, and every
+ * primitive column under a selected field gets its own vector. A batch may hold rows from more than one row group.
+ */
+public class ColumnarReader implements AutoCloseable {
+
+    private final SeekableByteChannel file;
+    private final ParquetFileReader fileReader;
+    private final RowGroupBuffers buffers;
+    private final Metrics metrics;
+    private final MessageType schema;
+    private final List<ColumnDescriptor> columns;
+    private final List<String> columnPaths = new ArrayList<>();
+    private final GroupConverter converter;
+    private final String createdBy;
+    private final int batchSize;
+    private final ColumnReader[] columnReaders;
+    private final long[] valuesLeft;
+    private long rowsLeft;
+
+    private ColumnarReader(Builder builder) throws IOException {
+        this.file = builder.file;
+        this.metrics = builder.metrics;
+        this.buffers = builder.allocator != null ? new RowGroupBuffers(builder.allocator) : null;
+        this.fileReader = ParquetReaders.open(file, builder.metrics, buffers);
+        MessageType schema = fileReader.getFileMetaData().getSchema();
+        if (!builder.fieldSelectors.isEmpty()) {
+            schema = Schema.createProjection(schema, builder.fieldSelectors);
+            if (schema == null) {
+                fileReader.close();
+                throw new RuntimeException("Field selectors don't match any columns. Selectors: " + builder.fieldSelectors);
+            }
+        }
+        this.schema = schema;
+        this.fileReader.setRequestedSchema(schema);
+        this.columns = schema.getColumns();
+        for (ColumnDescriptor column : columns) {
+            columnPaths.add(File.columnPath(schema, column));
+        }
+        this.converter = new File.DiscardingConverter(schema);
+        this.createdBy = fileReader.getFooter().getFileMetaData().getCreatedBy();
+        this.batchSize = builder.batchSize;
+        this.columnReaders = new ColumnReader[columns.size()];
+        this.valuesLeft = new long[columns.size()];
+    }
+
+    /**
+     * @return the schema of the columns read, which is the projection of the file schema on the field selectors
+     */
+    public MessageType schema() {
+        return schema;
+    }
+
+    /**
+     * Read up to the batch size of the reader rows into a new batch.
+     *
+     * @return a batch holding the rows read, which is empty if the end of the file has been reached.
+     * @throws IOException if an error occurs while reading.
+     */
+    public ColumnarBatch readBatch() throws IOException {
+        List<ColumnVector> vectors = new ArrayList<>(columns.size());
+        for (int c = 0; c < columns.size(); c++) {
+            vectors.add(new ColumnVector(columnPaths.get(c), columns.get(c), batchSize));
+        }
+        return readBatch(new ColumnarBatch(batchSize, vectors));
+    }
+
+    /**
+     * Read rows into an existing batch from this reader, replacing its current content and reusing the arrays of its
+     * vectors. At most {@link ColumnarBatch#capacity()} rows are read.
+     *
+     * @param batch a batch returned by {@link #readBatch()} of this reader
+     * @return the given batch, which is empty if the end of the file has been reached.
+     * @throws IOException if an error occurs while reading.
+     */
+    public ColumnarBatch readBatch(ColumnarBatch batch) throws IOException {
+        if (batch.columns().size() != columns.size()) {
+            throw new IllegalArgumentException("Batch has " + batch.columns().size() + " columns, expected " + columns.size());
+        }
+        batch.clear();
+        while (batch.remaining() > 0 && (rowsLeft > 0 || nextRowGroup())) {
+            int rows = (int) Math.min(rowsLeft, batch.remaining());
+            for (int c = 0; c < columns.size(); c++) {
+                readRows(c, batch.columns().get(c), rows);
+            }
+            batch.addRows(rows);
+            rowsLeft -= rows;
+        }
+        return batch;
+    }
+
+    /**
+     * Move on to the next row group that has rows.
+     *
+     * @return false if there are no more row groups
+     */
+    private boolean nextRowGroup() throws IOException {
+        do {
+            if (buffers != null) {
+                buffers.releaseAll();
+            }
+            PageReadStore rowGroup = fileReader.readNextRowGroup();
+            if (rowGroup == null) {
+                return false;
+            }
+            ColumnReadStoreImpl columnReadStore = new ColumnReadStoreImpl(rowGroup, converter, schema, createdBy);
+            for (int c = 0; c < columns.size(); c++) {
+                columnReaders[c] = columnReadStore.getColumnReader(columns.get(c));
+                valuesLeft[c] = ParquetReaders.valueCount(rowGroup, columns.get(c));
+            }
+            rowsLeft = rowGroup.getRowCount();
+            metrics.rowGroupRead(rowsLeft);
+        } while (rowsLeft == 0);
+        return true;
+    }
+
+    /**
+     * Read the values of the given number of rows from a column into its vector. The values of a row in a list are
+     * the values up to the next value with repetition level 0, which starts a new row.
+     */
+    private void readRows(int c, ColumnVector vector, int rows) {
+        ColumnReader columnReader = columnReaders[c];
+        ColumnDescriptor column = columns.get(c);
+        int maxDefinitionLevel = column.getMaxDefinitionLevel();
+        boolean repeated = column.getMaxRepetitionLevel() > 0;
+        long left = valuesLeft[c];
+        for (int row = 0; row < rows; row++) {
+            vector.startRow();
+            do {
+                int definitionLevel = columnReader.getCurrentDefinitionLevel();
+                if (definitionLevel < maxDefinitionLevel) {
+                    vector.appendNull(definitionLevel);
+                } else {
+                    switch (column.getPrimitiveType().getPrimitiveTypeName()) {
+                        case BOOLEAN -> vector.appendBoolean(columnReader.getBoolean());
+                        case INT32 -> vector.appendInt(columnReader.getInteger());
+                        case INT64 -> vector.appendLong(columnReader.getLong());
+                        case FLOAT -> vector.appendFloat(columnReader.getFloat());
+                        case DOUBLE -> vector.appendDouble(columnReader.getDouble());
+                        default -> vector.appendBinary(columnReader.getBinary());
+                    }
+                }
+                columnReader.consume();
+                left--;
+            } while (repeated && left > 0 && columnReader.getCurrentRepetitionLevel() > 0);
+        }
+        valuesLeft[c] = left;
+    }
+
+    @Override
+    public void close() {
+        try {
+            try {
+                fileReader.close();
+            } finally {
+                if (buffers != null) {
+                    buffers.releaseAll();
+                }
+                file.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error when closing ColumnarReader", e);
+        }
+    }
+
+    public static Builder builder(SeekableByteChannel file) {
+        return new Builder(file);
+    }
+
+    public static class Builder {
+        private final SeekableByteChannel file;
+        private Set<String> fieldSelectors = Set.of();
+        private int batchSize = 1024;
+        private Metrics metrics = Metrics.noOp();
+        private ByteBufferAllocator allocator;
+
+        private Builder(SeekableByteChannel file) {
+            this.file = Objects.requireNonNull(file);
+        }
+
+        public Builder withFieldSelectors(Set<String> globPatterns) {
+            this.fieldSelectors = globPatterns;
+            return this;
+        }
+
+        /**
+         * Set the number of rows in the batches returned by {@link ColumnarReader#readBatch()}. Defaults to 1024.
+         */
+        public Builder withBatchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive. Got: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Report the bytes read, the row groups read and the pages decompressed to the given metrics.
+         */
+        public Builder withMetrics(Metrics metrics) {
+            this.metrics = Objects.requireNonNull(metrics);
+            return this;
+        }
+
+        /**
+         * Read column chunks into buffers from the given allocator. Values are copied into the vectors, so the buffers
+         * of a row group are released as soon as the reader moves on to the next row group.
+         */
+        public Builder withAllocator(ByteBufferAllocator allocator) {
+            this.allocator = allocator;
+            return this;
+        }
+
+        public ColumnarReader build() throws IOException {
+            return new ColumnarReader(this);
+        }
+    }
+}
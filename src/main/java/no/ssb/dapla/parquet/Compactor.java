@@ -0,0 +1,241 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compactor merges parquet files into fewer files of a target size, see {@link File#compact(List, Path, long)}.
+ * <p></p>
+ * Row groups that are at least half the row group size are appended as they are, without being decompressed. Smaller
+ * row groups are decoded and encoded again with a {@link RowGroupEncoder}, merged with other small row groups until the
+ * merged row group reaches the row group size. Columns keep the codec they were compressed with, so a small row group
+ * is only merged with row groups that use the same codecs. Merged row groups are written when they are full, so their
+ * rows may end up after rows of row groups that were appended as they are.
+ * <p></p>
+ * If compaction fails, the files it has written are deleted, as the caller isn't told about them.
+ */
+class Compactor {
+
+    private final MessageType schema;
+    private final Map<String, String> keyValueMetaData;
+    private final Path directory;
+    private final long targetFileSize;
+    private final long rowGroupSize;
+    private final List<Path> outputs;
+    private final StandaloneCodecFactory codecFactory = new StandaloneCodecFactory();
+    private ParquetFileWriter writer;
+    private StreamTrackingOutputFile output;
+    private int rowGroups;
+    private RowGroupEncoder encoder;
+    private Map<ColumnDescriptor, CompressionCodecName> encoderCodecs;
+
+    private Compactor(MessageType schema, Map<String, String> keyValueMetaData, Path directory, long targetFileSize, long rowGroupSize, List<Path> outputs) {
+        this.schema = schema;
+        this.keyValueMetaData = keyValueMetaData;
+        this.directory = directory;
+        this.targetFileSize = targetFileSize;
+        this.rowGroupSize = rowGroupSize;
+        this.outputs = outputs;
+    }
+
+    /**
+     * @param rowGroupSize the size of merged row groups, in bytes
+     */
+    static List<Path> compact(List<Path> files, Path directory, long targetFileSize, long rowGroupSize) throws IOException {
+        //Files are compacted with other files of the same schema, and keep only the metadata that all of them agree on
+        Map<MessageType, List<Path>> filesBySchema = new LinkedHashMap<>();
+        Map<MessageType, Map<String, String>> keyValueMetaData = new HashMap<>();
+        for (Path file : files) {
+            try (ParquetFileReader reader = ParquetReaders.open(FileChannel.open(file))) {
+                MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+                Map<String, String> fileMetaData = reader.getFooter().getFileMetaData().getKeyValueMetaData();
+                filesBySchema.computeIfAbsent(schema, s -> new ArrayList<>()).add(file);
+                keyValueMetaData.computeIfAbsent(schema, s -> new HashMap<>(fileMetaData)).entrySet().retainAll(fileMetaData.entrySet());
+            }
+        }
+        //Compacted files aren't sorted, as the rows of merged row groups may end up after the rows of copied ones
+        for (Map<String, String> metaData : keyValueMetaData.values()) {
+            metaData.remove(SortingJsonWriter.SORT_ORDER_KEY);
+        }
+
+        List<Path> outputs = new ArrayList<>();
+        try {
+            for (Map.Entry<MessageType, List<Path>> entry : filesBySchema.entrySet()) {
+                Compactor compactor = new Compactor(entry.getKey(), keyValueMetaData.get(entry.getKey()), directory, targetFileSize, rowGroupSize, outputs);
+                try {
+                    compactor.compact(entry.getValue());
+                } catch (IOException | RuntimeException e) {
+                    compactor.closeFile(e);
+                    throw e;
+                } finally {
+                    compactor.codecFactory.release();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Path output : outputs) {
+                try {
+                    Files.deleteIfExists(output);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        return outputs;
+    }
+
+    private void compact(List<Path> files) throws IOException {
+        for (Path file : files) {
+            SeekableByteChannelInputFile inputFile = new SeekableByteChannelInputFile(FileChannel.open(file));
+            try (ParquetFileReader reader = ParquetReaders.open(inputFile, ParquetReaders.readOptions().build());
+                 SeekableInputStream rowGroupStream = inputFile.newStream()) {
+                String createdBy = reader.getFooter().getFileMetaData().getCreatedBy();
+                for (BlockMetaData block : reader.getRowGroups()) {
+                    if (block.getCompressedSize() >= rowGroupSize / 2) {
+                        reader.skipNextRowGroup();
+                        prepareFile(block.getCompressedSize());
+                        writer.appendRowGroup(rowGroupStream, block, false);
+                        rowGroups++;
+                    } else {
+                        Map<ColumnDescriptor, CompressionCodecName> codecs = codecs(block);
+                        if (encoder != null && !codecs.equals(encoderCodecs)) {
+                            writeEncoder();
+                        }
+                        PageReadStore rowGroup = reader.readNextRowGroup();
+                        if (encoder == null) {
+                            encoder = new RowGroupEncoder(schema, codecFactory, codecs::get, Set.of(), FieldInterceptor.noOp());
+                            encoderCodecs = codecs;
+                        }
+                        encoder.append(rowGroup, createdBy);
+                        if (encoder.bufferedSize() >= rowGroupSize) {
+                            writeEncoder();
+                        }
+                    }
+                }
+            }
+        }
+        if (encoder != null) {
+            writeEncoder();
+        }
+        if (writer != null) {
+            endFile();
+        }
+    }
+
+    private Map<ColumnDescriptor, CompressionCodecName> codecs(BlockMetaData block) {
+        Map<ColumnDescriptor, CompressionCodecName> codecs = new HashMap<>();
+        for (ColumnChunkMetaData chunk : block.getColumns()) {
+            codecs.put(schema.getColumnDescription(chunk.getPath().toArray()), chunk.getCodec());
+        }
+        return codecs;
+    }
+
+    private void writeEncoder() throws IOException {
+        encoder.flush();
+        prepareFile(encoder.bufferedSize());
+        encoder.writeRowGroup(writer);
+        rowGroups++;
+        encoder = null;
+    }
+
+    /**
+     * Make sure there is a file to write a row group of the given size to. A new file is started if the row group
+     * would make the current file larger than the target size, unless the current file is empty.
+     */
+    private void prepareFile(long size) throws IOException {
+        if (writer != null && rowGroups > 0 && writer.getPos() + size > targetFileSize) {
+            endFile();
+        }
+        if (writer == null) {
+            Path path = directory.resolve("part-%d.parquet".formatted(outputs.size()));
+            output = new StreamTrackingOutputFile(HadoopOutputFile.fromPath(new org.apache.hadoop.fs.Path(path.toUri()), new Configuration()));
+            writer = new ParquetFileWriter(output, schema, ParquetFileWriter.Mode.CREATE, ParquetWriter.DEFAULT_BLOCK_SIZE, 0,
+                    ParquetProperties.DEFAULT_COLUMN_INDEX_TRUNCATE_LENGTH, ParquetProperties.DEFAULT_STATISTICS_TRUNCATE_LENGTH,
+                    ParquetProperties.DEFAULT_PAGE_WRITE_CHECKSUM_ENABLED);
+            outputs.add(path);
+            writer.start();
+        }
+    }
+
+    private void endFile() throws IOException {
+        writer.end(keyValueMetaData);
+        writer = null;
+        output = null;
+        rowGroups = 0;
+    }
+
+    /**
+     * Close the stream of a file that was left unfinished by the given failure. A parquet file writer can only be
+     * closed by ending the file, which would give it a footer.
+     */
+    private void closeFile(Exception failure) {
+        if (output != null && output.stream != null) {
+            try {
+                output.stream.close();
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        writer = null;
+        output = null;
+    }
+
+    /**
+     * An output file that keeps the stream it creates, so that the stream can be closed without the writer.
+     */
+    private static class StreamTrackingOutputFile implements OutputFile {
+
+        private final OutputFile delegate;
+        private PositionOutputStream stream;
+
+        private StreamTrackingOutputFile(OutputFile delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) throws IOException {
+            stream = delegate.create(blockSizeHint);
+            return stream;
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+            stream = delegate.createOrOverwrite(blockSizeHint);
+            return stream;
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return delegate.supportsBlockSize();
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return delegate.defaultBlockSize();
+        }
+    }
+}
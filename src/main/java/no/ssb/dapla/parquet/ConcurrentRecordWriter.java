@@ -0,0 +1,423 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.ValidatingRecordConsumer;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * ConcurrentRecordWriter writes records from many threads to a single parquet file. A {@link ParquetWriter} can only be
+ * used by one thread at a time, so rather than having every thread take a lock on the writer for every record, records
+ * are buffered in stripes and handed to the writer in batches.
+ * <p></p>
+ * Every thread writes to one of the stripes, picked by its thread id, so threads only contend with the other threads
+ * of their stripe, and only for as long as it takes to add a record to a list. When the buffer of a stripe is full, it
+ * is queued as a batch, and the thread that queued it writes the queued batches to the file, unless another thread
+ * already does. Threads only wait for the writer when the queue is longer than the number of stripes, which keeps the
+ * memory held by queued batches bounded when the writer can't keep up.
+ * <p></p>
+ * Every record is run through the write support in the thread that writes it, against a record consumer that checks
+ * it against the schema and then discards it, before it is buffered. A record that can't be written, e.g. json that
+ * doesn't parse or a record without a required field, fails in the thread that wrote it, and is never buffered.
+ * <p></p>
+ * Records are written to the file some time after {@link #write(Object)} returns. Records that are maps are therefore
+ * copied before they are checked and buffered, along with their nested maps, lists, byte arrays and
+ * {@link Utf8String}s, so the caller may reuse or modify them. Json records are immutable strings, but objects that
+ * are read through a {@link RecordPlan} are buffered as they are, and must not be modified after they are written.
+ * <p></p>
+ * The records of each thread are written in the order they were written by that thread, while the records of
+ * different threads are interleaved batch by batch. {@link #close()} writes the records of all buffers and queued
+ * batches before the file is closed, so the threads that write must be done writing before the writer is closed.
+ * If writing a batch fails nonetheless, e.g. on an I/O error, the records of that batch are lost, and every later write
+ * fails as well. The close then fails too, and deletes the file rather than writing a footer, as the row group that was
+ * being written may hold part of a record.
+ *
+ * @param <T> the type of records written
+ */
+public class ConcurrentRecordWriter<T> implements AutoCloseable {
+
+    private final Path path;
+    private final MeteredWriter<T> writer;
+    private final ThreadLocal<WriteSupport<T>> validators;
+    private final UnaryOperator<T> copier;
+    private final List<Stripe<T>> stripes;
+    private final int batchSize;
+    private final Queue<List<T>> batches = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private volatile Exception failure;
+    private boolean closed;
+
+    private ConcurrentRecordWriter(Builder<T> builder) throws IOException {
+        this.path = builder.path;
+        this.writer = new MeteredWriter<>(builder.path, builder.writerBuilder, builder.metrics, builder.memoryManager);
+        this.validators = ThreadLocal.withInitial(() -> {
+            WriteSupport<T> validator = builder.writeSupport.get();
+            validator.prepareForWrite(new ValidatingRecordConsumer(new DiscardingRecordConsumer(), builder.schema));
+            return validator;
+        });
+        this.copier = builder.copier;
+        this.batchSize = builder.batchSize;
+        this.stripes = new ArrayList<>(builder.stripes);
+        for (int i = 0; i < builder.stripes; i++) {
+            stripes.add(new Stripe<>(batchSize));
+        }
+    }
+
+    /**
+     * Buffer a record, and write the queued batches to the file if the buffer is full. Records that are maps are
+     * copied, while objects that are read through a {@link RecordPlan} must not be modified after they are written.
+     *
+     * @throws IOException           if an error occurs while writing a batch, now or earlier.
+     * @throws IllegalStateException if the writer has been closed.
+     * @throws RuntimeException      if the record can't be written with the schema, in which case it isn't buffered.
+     */
+    public void write(T record) throws IOException {
+        Objects.requireNonNull(record);
+        checkFailure();
+        record = copier.apply(record);
+        validate(record);
+        Stripe<T> stripe = stripes.get((int) (Thread.currentThread().getId() % stripes.size()));
+        boolean full;
+        synchronized (stripe) {
+            if (stripe.closed) {
+                throw new IllegalStateException("Writer has been closed");
+            }
+            stripe.records.add(record);
+            full = stripe.records.size() >= batchSize;
+            if (full) {
+                //The batch is queued while the stripe is held, so that the batches of a stripe are queued in order
+                queue(stripe.records);
+                stripe.records = new ArrayList<>(batchSize);
+            }
+        }
+        if (full) {
+            writeBatches(queued.get() > stripes.size());
+        }
+    }
+
+    private void validate(T record) {
+        try {
+            validators.get().write(record);
+        } catch (RuntimeException e) {
+            //The validator may have been left part way through the record, so the thread gets a new one
+            validators.remove();
+            throw e;
+        }
+    }
+
+    /**
+     * Queue the records buffered by all threads, and write all queued batches to the file. The records are not
+     * necessarily written to the file yet, as the parquet writer buffers a row group in memory.
+     *
+     * @throws IOException if an error occurs while writing a batch, now or earlier.
+     */
+    public void flush() throws IOException {
+        checkFailure();
+        for (Stripe<T> stripe : stripes) {
+            synchronized (stripe) {
+                if (!stripe.records.isEmpty()) {
+                    queue(stripe.records);
+                    stripe.records = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        writeBatches(true);
+    }
+
+    private void queue(List<T> batch) {
+        batches.add(batch);
+        queued.incrementAndGet();
+    }
+
+    /**
+     * Write the queued batches, unless another thread is already writing them.
+     *
+     * @param wait wait for the thread that is writing, and write the batches that are left when it is done
+     */
+    private void writeBatches(boolean wait) throws IOException {
+        do {
+            if (wait) {
+                writerLock.lock();
+            } else if (!writerLock.tryLock()) {
+                return;
+            }
+            try {
+                checkFailure();
+                List<T> batch;
+                while ((batch = batches.poll()) != null) {
+                    queued.decrementAndGet();
+                    try {
+                        for (T record : batch) {
+                            writer.write(record);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failure = e;
+                        throw e;
+                    }
+                }
+            } finally {
+                writerLock.unlock();
+            }
+            //A batch might have been queued after the queue was found empty, but before the lock was released
+            wait = false;
+        } while (!batches.isEmpty());
+    }
+
+    private void checkFailure() throws IOException {
+        Exception failure = this.failure;
+        if (failure != null) {
+            throw new IOException("An earlier write failed", failure);
+        }
+    }
+
+    /**
+     * Write the records of all buffers and queued batches, flush the last row group and write the footer of the file.
+     * Writes made after the writer has been closed throw {@link IllegalStateException}. If writing a batch fails, now
+     * or earlier, the file is deleted instead.
+     *
+     * @throws IOException if an error occurs while writing to the file, now or earlier.
+     */
+    @Override
+    public void close() throws IOException {
+        writerLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Stripe<T> stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.closed = true;
+                    if (!stripe.records.isEmpty()) {
+                        queue(stripe.records);
+                        stripe.records = List.of();
+                    }
+                }
+            }
+            try {
+                writeBatches(true);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    writer.abort();
+                    Files.deleteIfExists(path);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            writer.close();
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Create a builder for a writer of json records, like the json writers of {@link File}.
+     */
+    public static Builder<String> jsonBuilder(Path path, MessageType schema) {
+        Objects.requireNonNull(schema);
+        return new Builder<>(path, schema, file -> JsonParquetWriter.builder(file, schema), () -> new JsonWriteSupport(schema), UnaryOperator.identity());
+    }
+
+    /**
+     * Create a builder for a writer of records as maps keyed on field name, see {@link RecordWriter}. The records are
+     * copied when they are written.
+     */
+    @SuppressWarnings("unchecked")
+    public static Builder<Map<String, Object>> builder(Path path, MessageType schema) {
+        Objects.requireNonNull(schema);
+        return new Builder<>(path, schema, file -> RecordWriteSupport.builder(file, schema, null), () -> new RecordWriteSupport<>(schema, null),
+                record -> (Map<String, Object>) copy(record));
+    }
+
+    /**
+     * Create a builder for a writer of objects that are read through the given plan, see {@link RecordWriter}. The
+     * objects are not copied, and must not be modified after they are written.
+     */
+    public static <T> Builder<T> builder(Path path, MessageType schema, RecordPlan<T> plan) {
+        Objects.requireNonNull(schema);
+        Objects.requireNonNull(plan);
+        return new Builder<>(path, schema, file -> RecordWriteSupport.builder(file, schema, plan), () -> new RecordWriteSupport<>(schema, plan), UnaryOperator.identity());
+    }
+
+    /**
+     * Copy the values of a map record that belong to the caller. Strings, numbers and booleans are immutable, and
+     * {@link Utf8String}s are copied so that they don't keep the page they were read from in memory.
+     */
+    private static Object copy(Object value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                copy.add(copy(element));
+            }
+            return copy;
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        } else if (value instanceof Utf8String) {
+            return ((Utf8String) value).copy();
+        }
+        return value;
+    }
+
+    /**
+     * The buffer of the threads whose records are written to the stripe. Guarded by the stripe itself.
+     */
+    private static class Stripe<T> {
+        private List<T> records;
+        private boolean closed;
+
+        private Stripe(int batchSize) {
+            this.records = new ArrayList<>(batchSize);
+        }
+    }
+
+    /**
+     * A record consumer that drops everything it is given.
+     */
+    private static class DiscardingRecordConsumer extends RecordConsumer {
+        @Override
+        public void startMessage() {
+        }
+
+        @Override
+        public void endMessage() {
+        }
+
+        @Override
+        public void startField(String field, int index) {
+        }
+
+        @Override
+        public void endField(String field, int index) {
+        }
+
+        @Override
+        public void startGroup() {
+        }
+
+        @Override
+        public void endGroup() {
+        }
+
+        @Override
+        public void addInteger(int value) {
+        }
+
+        @Override
+        public void addLong(long value) {
+        }
+
+        @Override
+        public void addBoolean(boolean value) {
+        }
+
+        @Override
+        public void addBinary(Binary value) {
+        }
+
+        @Override
+        public void addFloat(float value) {
+        }
+
+        @Override
+        public void addDouble(double value) {
+        }
+    }
+
+    public static class Builder<T> {
+        private final Path path;
+        private final MessageType schema;
+        private final Function<OutputFile, ParquetWriter.Builder<T, ?>> writerBuilder;
+        private final Supplier<WriteSupport<T>> writeSupport;
+        private final UnaryOperator<T> copier;
+        private int stripes = Runtime.getRuntime().availableProcessors();
+        private int batchSize = 1024;
+        private Metrics metrics = Metrics.noOp();
+        private WriterMemoryManager memoryManager = WriterMemoryManager.global();
+
+        /**
+         * @param writeSupport creates the write supports that check records in the threads that write them
+         * @param copier       copies records that the caller may modify after writing them
+         */
+        private Builder(Path path, MessageType schema, Function<OutputFile, ParquetWriter.Builder<T, ?>> writerBuilder, Supplier<WriteSupport<T>> writeSupport,
+                        UnaryOperator<T> copier) {
+            this.path = Objects.requireNonNull(path);
+            this.schema = schema;
+            this.writerBuilder = writerBuilder;
+            this.writeSupport = writeSupport;
+            this.copier = copier;
+        }
+
+        /**
+         * The number of buffers that threads write records to. Defaults to the number of available processors.
+         */
+        public Builder<T> withStripes(int stripes) {
+            if (stripes < 1) {
+                throw new IllegalArgumentException("Number of stripes must be positive. Got: " + stripes);
+            }
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * The number of records a stripe buffers before they are written to the file as a batch. Defaults to 1024.
+         */
+        public Builder<T> withBatchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive. Got: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Report the records written and the row groups flushed to the given metrics. Nothing is measured by default.
+         */
+        public Builder<T> withMetrics(Metrics metrics) {
+            this.metrics = Objects.requireNonNull(metrics);
+            return this;
+        }
+
+        /**
+         * Share the given memory budget with other writers, rather than the global one.
+         */
+        public Builder<T> withMemoryManager(WriterMemoryManager memoryManager) {
+            this.memoryManager = Objects.requireNonNull(memoryManager);
+            return this;
+        }
+
+        /**
+         * @throws IOException if the file can't be created.
+         */
+        public ConcurrentRecordWriter<T> build() throws IOException {
+            return new ConcurrentRecordWriter<>(this);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Dataset reads a set of parquet files as one, e.g. a directory of part files.
+ * <p></p>
+ * The footers of all files are read concurrently when the dataset is built, to validate or merge their schemas. Records
+ * and column values are then read across all files, in file order, with up to {@link Builder#withParallelism(int)}
+ * files being opened or read at the same time.
+ * <p></p>
+ * A dataset owns the channels of its files and closes them when it is closed. Operations on a dataset share the
+ * channels, so only one operation should be in progress at a time, unless the channels can be read at a position
+ * without moving it, like the {@link FileChannel}s of a dataset built from a directory.
+ */
+public class Dataset implements AutoCloseable {
+
+    private final List<SeekableByteChannel> files;
+    private final List<String> fileNames;
+    private final List<MessageType> fileSchemas;
+    private final MessageType schema;
+    private final long rowCount;
+    private final int parallelism;
+
+    private Dataset(List<SeekableByteChannel> files, List<String> fileNames, List<MessageType> fileSchemas, MessageType schema, long rowCount, int parallelism) {
+        this.files = files;
+        this.fileNames = fileNames;
+        this.fileSchemas = fileSchemas;
+        this.schema = schema;
+        this.rowCount = rowCount;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the schema of the files, or the union of their schemas if the dataset was built with schema merging
+     */
+    public MessageType schema() {
+        return schema;
+    }
+
+    /**
+     * @return the total number of rows in all files, as given by their footers
+     */
+    public long rowCount() {
+        return rowCount;
+    }
+
+    public int fileCount() {
+        return files.size();
+    }
+
+    /**
+     * Read all values in a given column of all files, see {@link File#readColumn(SeekableByteChannel, String)}. Files
+     * are read in parallel, and the values are returned in file order. Files that don't have the column don't add any
+     * values.
+     *
+     * @param columnGlobPattern a glob that should match a single column
+     * @return a list of all the column values
+     */
+    public List<Object> readColumn(String columnGlobPattern) {
+        if (Schema.createProjection(schema, Set.of(columnGlobPattern)) == null) {
+            throw new RuntimeException("Column glob pattern doesn't match any columns. Pattern: " + columnGlobPattern);
+        }
+        List<Callable<List<Object>>> tasks = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (Schema.createProjection(fileSchemas.get(i), Set.of(columnGlobPattern)) == null) {
+                continue;
+            }
+            SeekableByteChannel file = channel(i);
+            String fileName = fileNames.get(i);
+            tasks.add(() -> File.readColumn(file, columnGlobPattern, Metrics.noOp(), null, fileName));
+        }
+        List<Object> values = new ArrayList<>();
+        for (List<Object> fileValues : invokeAll(tasks, "reading column " + columnGlobPattern)) {
+            values.addAll(fileValues);
+        }
+        return values;
+    }
+
+    /**
+     * Stream the records of all files, one file after the other. The next files are opened in the background while
+     * the current one is read.
+     *
+     * @param options configures the {@link RecordStream} of each file, e.g. with field selectors and interceptors
+     * @return a stream of the records of all files
+     */
+    public DatasetStream records(Consumer<RecordStream.Builder> options) {
+        List<Callable<RecordStream>> openers = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            SeekableByteChannel file = channel(i);
+            String fileName = fileNames.get(i);
+            openers.add(() -> {
+                RecordStream.Builder builder = RecordStream.builder(file).withFileName(fileName);
+                options.accept(builder);
+                return builder.build();
+            });
+        }
+        return new DatasetStream(openers, parallelism);
+    }
+
+    /**
+     * Read the records of all files in parallel, handing every record to the consumer. Records of the same file are
+     * handed over in order, by the same thread, but records of different files are interleaved. The consumer must be
+     * thread safe, and must copy records it keeps if the streams reuse them.
+     *
+     * @param options  configures the {@link RecordStream} of each file, e.g. with field selectors and interceptors
+     * @param consumer receives every record
+     */
+    public void forEachRecord(Consumer<RecordStream.Builder> options, Consumer<Map<String, Object>> consumer) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            SeekableByteChannel file = channel(i);
+            String fileName = fileNames.get(i);
+            tasks.add(() -> {
+                RecordStream.Builder builder = RecordStream.builder(file).withFileName(fileName);
+                options.accept(builder);
+                try (RecordStream stream = builder.build()) {
+                    Map<String, Object> record;
+                    while ((record = stream.read()) != null) {
+                        consumer.accept(record);
+                    }
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks, "reading records");
+    }
+
+    /**
+     * @return the channel of the i-th file, which readers can close without closing the file
+     */
+    private SeekableByteChannel channel(int i) {
+        return new UnclosableChannel(files.get(i));
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks, String description) {
+        return invokeAll(tasks, parallelism, description);
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks, int parallelism, String description) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, tasks.size())));
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while " + description, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while " + description, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        closeAll(files);
+    }
+
+    private static void closeAll(List<SeekableByteChannel> files) {
+        IOException exception = null;
+        for (SeekableByteChannel file : files) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw new RuntimeException("Error when closing dataset files", exception);
+        }
+    }
+
+    /**
+     * Create a dataset of all files with the suffix .parquet in a directory, in order of file name.
+     */
+    public static Builder builder(Path directory) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> list = Files.list(directory)) {
+            paths = list.filter(path -> Files.isRegularFile(path) && path.getFileName().toString().endsWith(".parquet"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<SeekableByteChannel> files = new ArrayList<>();
+        try {
+            for (Path path : paths) {
+                files.add(FileChannel.open(path));
+            }
+        } catch (IOException e) {
+            closeAll(files);
+            throw e;
+        }
+        Builder builder = new Builder(files);
+        builder.fileNames = paths.stream().map(Path::toString).collect(Collectors.toList());
+        return builder;
+    }
+
+    /**
+     * Create a dataset of the given files, in the given order. The dataset takes ownership of the channels.
+     */
+    public static Builder builder(List<SeekableByteChannel> files) {
+        return new Builder(files);
+    }
+
+    public static class Builder {
+        private final List<SeekableByteChannel> files;
+        private List<String> fileNames;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private boolean schemaMerging = false;
+
+        public Builder(List<SeekableByteChannel> files) {
+            this.files = List.copyOf(Objects.requireNonNull(files));
+            this.fileNames = Collections.nCopies(this.files.size(), "");
+        }
+
+        /**
+         * The maximum number of files that are opened or read at the same time. Defaults to the number of available
+         * processors.
+         */
+        public Builder withParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be positive. Got: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Allow files with different schemas, as long as their fields don't conflict. The schema of the dataset is
+         * then the union of the schemas of the files. By default, all files must have the same schema.
+         */
+        public Builder withSchemaMerging(boolean schemaMerging) {
+            this.schemaMerging = schemaMerging;
+            return this;
+        }
+
+        /**
+         * Read the footers of all files concurrently, and validate or merge their schemas. The channels are closed if
+         * the dataset can't be built.
+         */
+        public Dataset build() {
+            try {
+                return open();
+            } catch (RuntimeException e) {
+                closeAll(files);
+                throw e;
+            }
+        }
+
+        private Dataset open() {
+            if (files.isEmpty()) {
+                throw new RuntimeException("No files found in dataset");
+            }
+            List<Callable<ParquetMetadata>> tasks = new ArrayList<>();
+            for (SeekableByteChannel file : files) {
+                tasks.add(() -> {
+                    //Only the footer is needed, so the reader is closed right away, leaving the channel open
+                    try (ParquetFileReader reader = ParquetReaders.open(new UnclosableChannel(file))) {
+                        return reader.getFooter();
+                    }
+                });
+            }
+            List<ParquetMetadata> footers = invokeAll(tasks, parallelism, "reading footers");
+
+            List<MessageType> fileSchemas = new ArrayList<>();
+            MessageType schema = footers.get(0).getFileMetaData().getSchema();
+            long rowCount = 0;
+            for (int i = 0; i < footers.size(); i++) {
+                MessageType fileSchema = footers.get(i).getFileMetaData().getSchema();
+                if (schemaMerging) {
+                    schema = schema.union(fileSchema);
+                } else if (!schema.equals(fileSchema)) {
+                    throw new RuntimeException(String.format("Schema of file %d differs from the schema of file 0. Expected: %s. Got: %s", i, schema, fileSchema));
+                }
+                fileSchemas.add(fileSchema);
+                for (BlockMetaData block : footers.get(i).getBlocks()) {
+                    rowCount += block.getRowCount();
+                }
+            }
+            return new Dataset(files, fileNames, fileSchemas, schema, rowCount, parallelism);
+        }
+    }
+}
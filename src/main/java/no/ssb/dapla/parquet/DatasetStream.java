@@ -0,0 +1,165 @@
+package no.ssb.dapla.parquet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DatasetStream is a continuous stream of records from all files of a {@link Dataset}, one file after the other.
+ * <p></p>
+ * While a file is read, the {@link RecordStream}s of the next files are opened in the background, so that their
+ * footers have been read by the time they are needed. Closing the stream early never interrupts the files being
+ * opened, as an interrupted read closes the channel of the file, which the stream shares with its {@link Dataset}.
+ * Instead, the files that haven't started opening are skipped, and the ones that are being opened are closed once
+ * they are open.
+ */
+public class DatasetStream implements AutoCloseable {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final Iterator<Callable<RecordStream>> openers;
+    private final Deque<Future<RecordStream>> opening = new ArrayDeque<>();
+    private final int prefetch;
+    private RecordStream current;
+
+    DatasetStream(List<Callable<RecordStream>> openers, int parallelism) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, openers.size())), runnable -> {
+            Thread thread = new Thread(runnable, "dataset-stream-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.openers = openers.iterator();
+        this.prefetch = parallelism;
+        prefetch();
+    }
+
+    private void prefetch() {
+        while (opening.size() < prefetch && openers.hasNext()) {
+            opening.add(executor.submit(openers.next()));
+        }
+    }
+
+    /**
+     * Close the current file, and move on to the next one.
+     *
+     * @return false if there are no more files
+     */
+    private boolean nextFile() throws IOException {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+        Future<RecordStream> next = opening.poll();
+        if (next == null) {
+            return false;
+        }
+        prefetch();
+        try {
+            current = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while opening dataset file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Error while opening dataset file", e.getCause());
+        }
+        return true;
+    }
+
+    /**
+     * Read the next record from this stream of records, see {@link RecordStream#read()}.
+     *
+     * @return the next record in the stream, or null if the end of the last file has been reached.
+     * @throws IOException if an error occurs while reading.
+     */
+    public Map<String, Object> read() throws IOException {
+        while (true) {
+            if (current != null) {
+                Map<String, Object> record = current.read();
+                if (record != null) {
+                    return record;
+                }
+            }
+            if (!nextFile()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Read up to n records from this stream of records into a new batch.
+     *
+     * @param n the maximum number of records to read
+     * @return a batch holding the records read, which is empty if the end of the last file has been reached.
+     * @throws IOException if an error occurs while reading.
+     */
+    public RecordBatch readBatch(int n) throws IOException {
+        return readBatch(new RecordBatch(n));
+    }
+
+    /**
+     * Read records from this stream of records into an existing batch, see {@link RecordStream#readBatch(RecordBatch)}.
+     * A batch never spans two files, so it might hold fewer records than its capacity at the end of a file.
+     *
+     * @param batch the batch to read records into
+     * @return the given batch, which is empty if the end of the last file has been reached.
+     * @throws IOException if an error occurs while reading.
+     */
+    public RecordBatch readBatch(RecordBatch batch) throws IOException {
+        while (true) {
+            if (current != null && !current.readBatch(batch).isEmpty()) {
+                return batch;
+            }
+            if (!nextFile()) {
+                batch.clear();
+                return batch;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        } finally {
+            boolean interrupted = false;
+            for (Future<RecordStream> future : opening) {
+                if (future.cancel(false)) {
+                    continue;
+                }
+                while (true) {
+                    try {
+                        future.get().close();
+                        break;
+                    } catch (InterruptedException e) {
+                        //The file is still being opened, and must be closed once it is open
+                        interrupted = true;
+                    } catch (ExecutionException | RuntimeException e) {
+                        //The file failed to open, or to close, and there is nothing more to do with it
+                        break;
+                    }
+                }
+            }
+            opening.clear();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
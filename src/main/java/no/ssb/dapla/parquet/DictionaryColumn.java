@@ -0,0 +1,67 @@
+package no.ssb.dapla.parquet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * DictionaryColumn holds the values of a string column as a dictionary of distinct values and one dictionary id per
+ * value, see {@link File#readDictionaryColumn(java.nio.channels.SeekableByteChannel, String)}.
+ * <p></p>
+ * The value at position i is {@code dictionary()[ids()[i]]}. The arrays are returned as is, and must not be modified.
+ */
+public class DictionaryColumn {
+
+    private final String[] dictionary;
+    private final int[] ids;
+
+    DictionaryColumn(String[] dictionary, int[] ids) {
+        this.dictionary = dictionary;
+        this.ids = ids;
+    }
+
+    /**
+     * @return the distinct values of the column, in order of first occurrence
+     */
+    public String[] dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the dictionary id of every value in the column
+     */
+    public int[] ids() {
+        return ids;
+    }
+
+    /**
+     * @return the number of values in the column
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    public String get(int index) {
+        return dictionary[ids[index]];
+    }
+
+    /**
+     * @return the values of the column, as returned by
+     * {@link File#readColumn(java.nio.channels.SeekableByteChannel, String)}
+     */
+    public List<Object> toList() {
+        List<Object> values = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            values.add(dictionary[id]);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "DictionaryColumn{" +
+                "dictionary=" + Arrays.toString(dictionary) +
+                ", size=" + ids.length +
+                '}';
+    }
+}
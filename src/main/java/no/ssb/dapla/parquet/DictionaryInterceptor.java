@@ -0,0 +1,105 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.column.EncodingStats;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DictionaryInterceptor intercepts dictionary-encoded columns once per distinct value.
+ * <p></p>
+ * For every binary column chunk in a row group where all data pages are dictionary-encoded, the dictionary page is
+ * decoded, its entries are intercepted by the {@link RecordNormalizer}, and a new dictionary page holding the
+ * intercepted entries replaces the original one. The data pages are left as they are, so every dictionary id resolves
+ * to an intercepted value when the records are assembled, and the normalizer skips interception for those columns.
+ */
+class DictionaryInterceptor {
+
+    private final RecordNormalizer normalizer;
+    private final MessageType schema;
+
+    DictionaryInterceptor(RecordNormalizer normalizer, MessageType schema) {
+        this.normalizer = normalizer;
+        this.schema = schema;
+    }
+
+    PageReadStore intercept(BlockMetaData block, PageReadStore rowGroup) throws IOException {
+        normalizer.resetDictionaries();
+
+        Map<ColumnPath, ColumnChunkMetaData> chunks = new HashMap<>();
+        for (ColumnChunkMetaData chunk : block.getColumns()) {
+            chunks.put(chunk.getPath(), chunk);
+        }
+
+        Map<ColumnDescriptor, DictionaryPage> dictionaries = new HashMap<>();
+        for (ColumnDescriptor column : schema.getColumns()) {
+            if (column.getPrimitiveType().getPrimitiveTypeName() != PrimitiveTypeName.BINARY) {
+                continue;
+            }
+            ColumnChunkMetaData chunk = chunks.get(ColumnPath.get(column.getPath()));
+            if (chunk == null || !isFullyDictionaryEncoded(chunk)) {
+                continue;
+            }
+            DictionaryPage page = rowGroup.getPageReader(column).readDictionaryPage();
+            if (page == null) {
+                continue;
+            }
+            //The page has been taken from the page reader, so it must be handed back even if it can't be intercepted
+            page = page.copy();
+            DictionaryPage intercepted = intercept(column, page);
+            dictionaries.put(column, intercepted != null ? intercepted : page);
+        }
+
+        if (dictionaries.isEmpty()) {
+            return rowGroup;
+        }
+        return new ReplacedDictionaryPageReadStore(rowGroup, dictionaries);
+    }
+
+    static boolean isFullyDictionaryEncoded(ColumnChunkMetaData chunk) {
+        EncodingStats stats = chunk.getEncodingStats();
+        return stats != null && stats.hasDictionaryEncodedPages() && !stats.hasNonDictionaryEncodedPages();
+    }
+
+    /**
+     * @return a copy of the dictionary page with intercepted entries, or null if any entry was intercepted to null,
+     * which a dictionary can't hold.
+     */
+    private DictionaryPage intercept(ColumnDescriptor column, DictionaryPage page) throws IOException {
+        Dictionary dictionary = page.getEncoding().initDictionary(column, page);
+        String[] values = new String[dictionary.getMaxId() + 1];
+        for (int id = 0; id < values.length; id++) {
+            values[id] = dictionary.decodeToBinary(id).toStringUsingUTF8();
+        }
+
+        normalizer.interceptDictionary(column.getPath(), values);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String value : values) {
+            if (value == null) {
+                normalizer.resetDictionary(column.getPath());
+                return null;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes.length);
+            out.write(bytes.length >>> 8);
+            out.write(bytes.length >>> 16);
+            out.write(bytes.length >>> 24);
+            out.write(bytes);
+        }
+        return new DictionaryPage(BytesInput.from(out), values.length, page.getEncoding());
+    }
+}
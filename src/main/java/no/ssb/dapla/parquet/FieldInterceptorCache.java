@@ -0,0 +1,284 @@
+package no.ssb.dapla.parquet;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * FieldInterceptorCache memoizes the results of a {@link FieldInterceptor}, keyed on (field, value). See
+ * {@link RecordStream.Builder#withFieldInterceptorCache(FieldInterceptorCache)}.
+ * <p></p>
+ * The cache is bounded by total weight, where the weight of an entry defaults to 1 (i.e. the bound is a number of
+ * entries) and can be customized, e.g. to the size of the strings held. Least recently used entries are evicted first.
+ * The cache is split in segments with a lock each, so a single instance can be shared by streams read in parallel,
+ * and across files. Every segment holds an equal share of the maximum weight, so an entry that weighs more than the
+ * maximum weight divided by the concurrency is never cached. Only fields that match the field globs are cached, other
+ * fields are passed straight through.
+ * <p></p>
+ * A cache must only be used with one interceptor (or with interceptors that give the same results), the interceptor
+ * must be a pure function of its input, and results that are null are not cached.
+ */
+public class FieldInterceptorCache {
+
+    private final Predicate<String> fieldFilter;
+    private final ToLongBiFunction<String, String> weigher;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private FieldInterceptorCache(Builder builder) {
+        this.fieldFilter = builder.fieldFilter;
+        this.weigher = builder.weigher;
+        this.segments = new Segment[builder.concurrency];
+        long segmentWeight = builder.maximumWeight / builder.concurrency;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentWeight);
+        }
+    }
+
+    /**
+     * Wrap an interceptor so that its results are looked up in, and added to, this cache.
+     */
+    public FieldInterceptor wrap(FieldInterceptor delegate) {
+        Objects.requireNonNull(delegate);
+        return (field, value) -> intercept(delegate, field, value);
+    }
+
+    private String intercept(FieldInterceptor delegate, String field, String value) {
+        if (value == null || !fieldFilter.test(field)) {
+            return delegate.intercept(field, value);
+        }
+        Key key = new Key(field, value);
+        Segment segment = segments[(key.hashCode() & 0x7fffffff) % segments.length];
+        String cached = segment.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        String intercepted = delegate.intercept(field, value);
+        if (intercepted != null) {
+            segment.put(key, intercepted, weigher.applyAsLong(field, value));
+        }
+        return intercepted;
+    }
+
+    /**
+     * @return the number of lookups that were answered from the cache
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to call the wrapped interceptor
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries that were evicted to stay within the maximum weight
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return hits divided by lookups, or 1.0 if there have been no lookups
+     */
+    public double hitRate() {
+        long hits = hitCount();
+        long lookups = hits + missCount();
+        return lookups == 0 ? 1.0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return the number of entries currently in the cache
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Predicate<String> fieldFilter = field -> true;
+        private ToLongBiFunction<String, String> weigher = (field, value) -> 1;
+        private long maximumWeight = 10_000;
+        private int concurrency = 16;
+
+        /**
+         * Only cache the fields whose paths match at least one of the glob patterns, e.g. "/person/**". For glob syntax
+         * see: https://docs.oracle.com/javase/tutorial/essential/io/fileOps.html#glob. All fields are cached by
+         * default.
+         */
+        public Builder withFieldSelectors(Set<String> globPatterns) {
+            Objects.requireNonNull(globPatterns);
+            List<PathMatcher> pathMatchers = new ArrayList<>();
+            for (String glob : globPatterns) {
+                pathMatchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+            }
+            Map<String, Boolean> matches = new ConcurrentHashMap<>();
+            this.fieldFilter = field -> matches.computeIfAbsent(field, f -> {
+                Path path = Paths.get(f);
+                return pathMatchers.stream().anyMatch(pathMatcher -> pathMatcher.matches(path));
+            });
+            return this;
+        }
+
+        /**
+         * The maximum total weight of the cached entries. Must be at least the concurrency. Defaults to 10 000.
+         */
+        public Builder withMaximumWeight(long maximumWeight) {
+            if (maximumWeight < 1) {
+                throw new IllegalArgumentException("Maximum weight must be positive. Got: " + maximumWeight);
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * The weight of an entry, given the field and the value before interception. Defaults to 1 for all entries.
+         * Weights must not be negative, and an entry with a negative weight fails with
+         * {@link IllegalArgumentException} when it is added to the cache.
+         */
+        public Builder withWeigher(ToLongBiFunction<String, String> weigher) {
+            this.weigher = Objects.requireNonNull(weigher);
+            return this;
+        }
+
+        /**
+         * The number of independently locked segments of the cache. Must be at most the maximum weight. Defaults to 16.
+         */
+        public Builder withConcurrency(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("Concurrency must be positive. Got: " + concurrency);
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the maximum weight is less than the concurrency, which would leave
+         *                                  the segments without weight to hold any entry.
+         */
+        public FieldInterceptorCache build() {
+            if (maximumWeight < concurrency) {
+                throw new IllegalArgumentException(String.format("Maximum weight must be at least the concurrency. Got: %d < %d", maximumWeight, concurrency));
+            }
+            return new FieldInterceptorCache(this);
+        }
+    }
+
+    private static class Key {
+        private final String field;
+        private final String value;
+        private final int hash;
+
+        private Key(String field, String value) {
+            this.field = field;
+            this.value = value;
+            this.hash = 31 * field.hashCode() + value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return field.equals(key.field) && value.equals(key.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Entry {
+        private final String value;
+        private final long weight;
+
+        private Entry(String value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A least recently used cache, bounded by weight and guarded by its own lock.
+     */
+    private class Segment {
+        private final long maximumWeight;
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        private Segment(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+
+        private synchronized String get(Key key) {
+            Entry entry = entries.get(key);
+            return entry == null ? null : entry.value;
+        }
+
+        private synchronized void put(Key key, String value, long entryWeight) {
+            if (entryWeight < 0) {
+                throw new IllegalArgumentException(String.format("Weight must not be negative. Field: %s, Got: %d", key.field, entryWeight));
+            }
+            if (entryWeight > maximumWeight) {
+                return;
+            }
+            Entry previous = entries.put(key, new Entry(value, entryWeight));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entryWeight;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (weight > maximumWeight && iterator.hasNext()) {
+                weight -= iterator.next().weight;
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+    }
+}
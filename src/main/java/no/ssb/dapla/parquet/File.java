@@ -3,31 +3,68 @@ package no.ssb.dapla.parquet;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonReader;
+import org.apache.parquet.bytes.ByteBufferAllocator;
 import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.column.page.DictionaryPage;
 import org.apache.parquet.column.page.PageReadStore;
 import org.apache.parquet.example.data.Group;
 import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
 import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
 import org.apache.parquet.io.ColumnIOFactory;
-import org.apache.parquet.io.InputFile;
 import org.apache.parquet.io.MessageColumnIO;
 import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
 import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * Utility functions for working with parquet files.
  */
 public class File {
 
+    private static final long DEFAULT_SORT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
     /**
      * readColumn returns all values in a given column, specified by a glob. For glob syntax see:
      * https://docs.oracle.com/javase/tutorial/essential/io/fileOps.html#glob. To avoid having to scan the entire
@@ -60,49 +97,473 @@ public class File {
      * @return a list of all the column values
      */
     public static List<Object> readColumn(SeekableByteChannel data, String columnGlobPattern) {
+        return readColumn(data, columnGlobPattern, Metrics.noOp());
+    }
 
-        InputFile inputFile = new SeekableByteChannelInputFile(data);
-
-        List<Object> columnValues = new ArrayList<>();
-        try (ParquetFileReader reader = ParquetFileReader.open(inputFile)) {
+    /**
+     * readColumn returns all values in a given column, reporting the bytes read, the row groups read, the pages
+     * decompressed and the records decoded to the given metrics. See {@link #readColumn(SeekableByteChannel, String)}.
+     */
+    public static List<Object> readColumn(SeekableByteChannel data, String columnGlobPattern, Metrics metrics) {
+        return readColumn(data, columnGlobPattern, metrics, null);
+    }
 
-            MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+    /**
+     * readColumn returns all values in a given column, reporting to the given metrics and reading the column chunks
+     * into buffers from the given allocator, e.g. a shared {@link PooledByteBufferAllocator}, unless it is null. The
+     * buffers of a row group are released when the next row group is read, and when the file has been read. See
+     * {@link #readColumn(SeekableByteChannel, String)}.
+     */
+    public static List<Object> readColumn(SeekableByteChannel data, String columnGlobPattern, Metrics metrics, ByteBufferAllocator allocator) {
+        return readColumn(data, columnGlobPattern, metrics, allocator, "");
+    }
 
-            MessageType schemaProjection = Schema.createProjection(schema, Set.of(columnGlobPattern));
-            if (schemaProjection == null) {
-                throw new RuntimeException("Column glob pattern doesn't match any columns. Pattern: " + columnGlobPattern);
-            }
+    /**
+     * @param fileName identifies the file in JFR events
+     */
+    static List<Object> readColumn(SeekableByteChannel data, String columnGlobPattern, Metrics metrics, ByteBufferAllocator allocator, String fileName) {
 
-            List<ColumnDescriptor> columns = schemaProjection.getColumns();
-            if (columns.size() > 1) {
-                throw new RuntimeException("Column glob pattern matches several columns. Pattern: " + columnGlobPattern + ". Matches: " + columns.size());
-            }
+        boolean metered = Metrics.isEnabled(metrics);
+        List<Object> columnValues = new ArrayList<>();
+        RowGroupBuffers buffers = allocator != null ? new RowGroupBuffers(allocator) : null;
+        try (ParquetFileReader reader = ParquetReaders.open(data, metrics, buffers)) {
 
+            MessageType schemaProjection = columnProjection(reader, columnGlobPattern);
             reader.setRequestedSchema(schemaProjection);
 
-            String[] columnPath = columns.get(0).getPath();
+            String[] columnPath = schemaProjection.getColumns().get(0).getPath();
 
-            PageReadStore rowGroup;
-            while ((rowGroup = reader.readNextRowGroup()) != null) {
+            Set<ColumnPath> columnPaths = RowGroupReadEvent.columnPaths(schemaProjection);
+            List<BlockMetaData> blocks = reader.getRowGroups();
+            for (int rowGroupIndex = 0; rowGroupIndex < blocks.size(); rowGroupIndex++) {
+                RowGroupReadEvent event = RowGroupReadEvent.start();
+                if (buffers != null) {
+                    buffers.releaseAll();
+                }
+                PageReadStore rowGroup = reader.readNextRowGroup();
+                if (rowGroup == null) {
+                    break;
+                }
                 long rows = rowGroup.getRowCount();
+                metrics.rowGroupRead(rows);
 
                 MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(schemaProjection);
                 RecordReader<Group> groupReader = columnIO.getRecordReader(rowGroup, new GroupRecordConverter(schemaProjection));
+                if (event != null) {
+                    event.opened(fileName, rowGroupIndex, blocks.get(rowGroupIndex), columnPaths);
+                }
 
+                boolean timed = metered || event != null;
                 for (int i = 0; i < rows; i++) {
+                    long start = timed ? System.nanoTime() : 0;
                     Group group = groupReader.read();
+                    if (timed) {
+                        long nanos = System.nanoTime() - start;
+                        metrics.recordDecoded(nanos);
+                        if (event != null) {
+                            event.decoded(nanos);
+                        }
+                    }
                     List<Object> values = findColumnValues(group, columnPath, 0);
                     columnValues.addAll(values);
                 }
+                if (event != null) {
+                    event.finish();
+                }
             }
 
         } catch (IOException e) {
             throw new RuntimeException("Got error while reading", e);
+        } finally {
+            if (buffers != null) {
+                buffers.releaseAll();
+            }
         }
 
         return columnValues;
     }
 
+    /**
+     * readDictionaryColumn returns all values in a given string column, like {@link #readColumn(SeekableByteChannel, String)},
+     * but as a {@link DictionaryColumn}: an array of distinct values and an array of ids into it, one per value. This
+     * keeps columns with few distinct values (e.g. categories or municipalities) compact in memory, and makes it cheap
+     * to group or count by value.
+     * <p></p>
+     * The dictionaries of the column chunks are merged into a single dictionary for the whole file. For column chunks
+     * that are fully dictionary-encoded, the values are never decoded; only the dictionary ids of the chunk are read and
+     * remapped. Values of other column chunks are decoded and added to the dictionary one by one.
+     *
+     * @param data              a parquet file as a {@link SeekableByteChannel}
+     * @param columnGlobPattern a glob that should match a single binary column
+     * @return the column values, dictionary-encoded
+     */
+    public static DictionaryColumn readDictionaryColumn(SeekableByteChannel data, String columnGlobPattern) {
+        try (ParquetFileReader reader = ParquetReaders.open(data)) {
+
+            MessageType schemaProjection = columnProjection(reader, columnGlobPattern);
+            ColumnDescriptor column = schemaProjection.getColumns().get(0);
+            if (column.getPrimitiveType().getPrimitiveTypeName() != PrimitiveTypeName.BINARY) {
+                throw new RuntimeException("Column glob pattern matches a column that is not binary. Pattern: " + columnGlobPattern);
+            }
+
+            reader.setRequestedSchema(schemaProjection);
+
+            String createdBy = reader.getFooter().getFileMetaData().getCreatedBy();
+            GroupConverter converter = new DiscardingConverter(schemaProjection);
+            int maxDefinitionLevel = column.getMaxDefinitionLevel();
+
+            Map<String, Integer> dictionaryIds = new HashMap<>();
+            List<String> dictionary = new ArrayList<>();
+            int[] ids = new int[1024];
+            int size = 0;
+
+            List<BlockMetaData> blocks = reader.getRowGroups();
+            int blockIndex = 0;
+            PageReadStore rowGroup;
+            while ((rowGroup = reader.readNextRowGroup()) != null) {
+                int[] remappedIds = null;
+                if (DictionaryInterceptor.isFullyDictionaryEncoded(columnChunk(blocks.get(blockIndex++), column))) {
+                    DictionaryPage page = rowGroup.getPageReader(column).readDictionaryPage();
+                    if (page != null) {
+                        //The page has been taken from the page reader, so it must be handed back to the column reader
+                        page = page.copy();
+                        Dictionary chunkDictionary = page.getEncoding().initDictionary(column, page);
+                        remappedIds = new int[chunkDictionary.getMaxId() + 1];
+                        for (int id = 0; id < remappedIds.length; id++) {
+                            String value = chunkDictionary.decodeToBinary(id).toStringUsingUTF8();
+                            remappedIds[id] = dictionaryId(value, dictionaryIds, dictionary);
+                        }
+                        rowGroup = new ReplacedDictionaryPageReadStore(rowGroup, Map.of(column, page));
+                    }
+                }
+
+                ColumnReader columnReader = new ColumnReadStoreImpl(rowGroup, converter, schemaProjection, createdBy).getColumnReader(column);
+                long values = ParquetReaders.valueCount(rowGroup, column);
+                for (long i = 0; i < values; i++) {
+                    //Values below the max definition level are nulls or empty lists, which readColumn leaves out as well
+                    if (columnReader.getCurrentDefinitionLevel() == maxDefinitionLevel) {
+                        if (size == ids.length) {
+                            ids = Arrays.copyOf(ids, size * 2);
+                        }
+                        ids[size++] = remappedIds != null
+                                ? remappedIds[columnReader.getCurrentValueDictionaryID()]
+                                : dictionaryId(columnReader.getBinary().toStringUsingUTF8(), dictionaryIds, dictionary);
+                    }
+                    columnReader.consume();
+                }
+            }
+
+            return new DictionaryColumn(dictionary.toArray(new String[0]), Arrays.copyOf(ids, size));
+
+        } catch (IOException e) {
+            throw new RuntimeException("Got error while reading", e);
+        }
+    }
+
+    /**
+     * rowCount returns the number of rows in a parquet file. Only the footer is read.
+     *
+     * @param data a parquet file as a {@link SeekableByteChannel}
+     * @return the number of rows in the file
+     */
+    public static long rowCount(SeekableByteChannel data) {
+        try (ParquetFileReader reader = ParquetReaders.open(data)) {
+            return reader.getRecordCount();
+        } catch (IOException e) {
+            throw new RuntimeException("Got error while reading", e);
+        }
+    }
+
+    /**
+     * columnStats returns the value count, null count, min and max of every column that matches a glob, see
+     * {@link #readColumn(SeekableByteChannel, String)} for how columns are matched.
+     * <p></p>
+     * The aggregates are computed from the row group statistics in the footer. Row groups where the statistics of a
+     * column are missing or can't be trusted, e.g. when min and max have been left out because the writer used a sort
+     * order that isn't compatible with the column type, are scanned for that column instead. A catalog that only needs
+     * footers for files written by recent writers can check {@link ColumnStats#scanned()}.
+     *
+     * @param data              a parquet file as a {@link SeekableByteChannel}
+     * @param columnGlobPattern a glob that matches one or more columns
+     * @return the statistics of each matching column, keyed on column path in schema order
+     */
+    public static Map<String, ColumnStats> columnStats(SeekableByteChannel data, String columnGlobPattern) {
+        return columnStats(data, columnGlobPattern, File::hasTrustworthyStatistics);
+    }
+
+    static Map<String, ColumnStats> columnStats(SeekableByteChannel data, String columnGlobPattern, Predicate<ColumnChunkMetaData> trustworthy) {
+        try (ParquetFileReader reader = ParquetReaders.open(data)) {
+
+            MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+            MessageType schemaProjection = Schema.createProjection(schema, Set.of(columnGlobPattern));
+            if (schemaProjection == null) {
+                throw new RuntimeException("Column glob pattern doesn't match any columns. Pattern: " + columnGlobPattern);
+            }
+
+            List<ColumnDescriptor> columns = schemaProjection.getColumns();
+            List<BlockMetaData> blocks = reader.getRowGroups();
+            Statistics<?>[] statistics = new Statistics<?>[columns.size()];
+            long[] valueCounts = new long[columns.size()];
+            boolean[][] scans = new boolean[blocks.size()][columns.size()];
+            boolean scanned = false;
+
+            for (int c = 0; c < columns.size(); c++) {
+                statistics[c] = Statistics.createStats(schema.getColumnDescription(columns.get(c).getPath()).getPrimitiveType());
+                for (int b = 0; b < blocks.size(); b++) {
+                    ColumnChunkMetaData chunk = columnChunk(blocks.get(b), columns.get(c));
+                    valueCounts[c] += chunk.getValueCount();
+                    if (trustworthy.test(chunk)) {
+                        statistics[c].mergeStatistics(chunk.getStatistics());
+                    } else {
+                        scans[b][c] = true;
+                        scanned = true;
+                    }
+                }
+            }
+
+            if (scanned) {
+                reader.setRequestedSchema(schemaProjection);
+                String createdBy = reader.getFooter().getFileMetaData().getCreatedBy();
+                GroupConverter converter = new DiscardingConverter(schemaProjection);
+                for (boolean[] scan : scans) {
+                    if (!contains(scan)) {
+                        reader.skipNextRowGroup();
+                        continue;
+                    }
+                    PageReadStore rowGroup = reader.readNextRowGroup();
+                    ColumnReadStoreImpl columnReadStore = new ColumnReadStoreImpl(rowGroup, converter, schemaProjection, createdBy);
+                    for (int c = 0; c < columns.size(); c++) {
+                        if (scan[c]) {
+                            scan(columnReadStore.getColumnReader(columns.get(c)), ParquetReaders.valueCount(rowGroup, columns.get(c)), statistics[c]);
+                        }
+                    }
+                }
+            }
+
+            Map<String, ColumnStats> columnStats = new LinkedHashMap<>();
+            for (int c = 0; c < columns.size(); c++) {
+                String path = columnPath(schema, columns.get(c));
+                Object min = statistics[c].hasNonNullValue() ? value(statistics[c].genericGetMin(), statistics[c].type()) : null;
+                Object max = statistics[c].hasNonNullValue() ? value(statistics[c].genericGetMax(), statistics[c].type()) : null;
+                columnStats.put(path, new ColumnStats(path, valueCounts[c], statistics[c].getNumNulls(), min, max, contains(scans, c)));
+            }
+            return columnStats;
+
+        } catch (IOException e) {
+            throw new RuntimeException("Got error while reading", e);
+        }
+    }
+
+    /**
+     * rewrite writes a copy of a parquet file to a path, with the values of the columns that match a glob passed through
+     * a field interceptor, e.g. to pseudonymize a few columns of a wide file. The interceptor is given the column path
+     * and the value, like a {@link RecordStream} with the same interceptor and field selectors would give it.
+     * <p></p>
+     * Only the matched columns are decoded and encoded again, see {@link ColumnRewriter}. The chunks of all other
+     * columns are copied without being decompressed, so the rewrite is mostly sequential copying.
+     *
+     * @param data             a parquet file as a {@link SeekableByteChannel}
+     * @param path             the file to write to
+     * @param globPatterns     globs that match one or more binary columns
+     * @param fieldInterceptor the interceptor of the values of the matched columns, which must not return null
+     */
+    public static void rewrite(SeekableByteChannel data, Path path, Set<String> globPatterns, FieldInterceptor fieldInterceptor) {
+        try {
+            ColumnRewriter.rewrite(data, path, globPatterns, fieldInterceptor);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error while rewriting. Path: %s", path), e);
+        }
+    }
+
+    /**
+     * compact merges parquet files, e.g. many small files with small row groups written by streaming ingestion, into
+     * files of roughly the target size in the given directory. The files are named part-0.parquet, part-1.parquet etc.
+     * <p></p>
+     * Files are only merged with files of the same schema. Row groups of a reasonable size are copied as they are,
+     * without being decompressed, while small row groups are decoded and merged into row groups of up to 128 MB, or the
+     * target size if it is smaller. See {@link Compactor}.
+     *
+     * @param files          the parquet files to compact
+     * @param directory      the directory to write the compacted files to
+     * @param targetFileSize the size in bytes that the compacted files shouldn't exceed, unless a single row group does
+     * @return the parquet files that were written
+     */
+    public static List<Path> compact(List<Path> files, Path directory, long targetFileSize) {
+        return compact(files, directory, targetFileSize, Math.min(targetFileSize, ParquetWriter.DEFAULT_BLOCK_SIZE));
+    }
+
+    static List<Path> compact(List<Path> files, Path directory, long targetFileSize, long rowGroupSize) {
+        try {
+            return Compactor.compact(files, directory, targetFileSize, rowGroupSize);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error while compacting. Directory: %s", directory), e);
+        }
+    }
+
+    /**
+     * The footer statistics of a column chunk are trustworthy if they have a null count, and have min and max unless
+     * all values are null. The parquet reader already leaves out statistics that are known to be corrupt, and min and
+     * max that were written with an incompatible sort order.
+     */
+    static boolean hasTrustworthyStatistics(ColumnChunkMetaData chunk) {
+        Statistics<?> statistics = chunk.getStatistics();
+        if (statistics == null || !statistics.isNumNullsSet()) {
+            return false;
+        }
+        return statistics.hasNonNullValue() || statistics.getNumNulls() == chunk.getValueCount();
+    }
+
+    private static void scan(ColumnReader columnReader, long values, Statistics<?> statistics) {
+        ColumnDescriptor column = columnReader.getDescriptor();
+        int maxDefinitionLevel = column.getMaxDefinitionLevel();
+        for (long i = 0; i < values; i++) {
+            if (columnReader.getCurrentDefinitionLevel() < maxDefinitionLevel) {
+                statistics.incrementNumNulls();
+            } else {
+                switch (column.getPrimitiveType().getPrimitiveTypeName()) {
+                    case INT32 -> statistics.updateStats(columnReader.getInteger());
+                    case INT64 -> statistics.updateStats(columnReader.getLong());
+                    case FLOAT -> statistics.updateStats(columnReader.getFloat());
+                    case DOUBLE -> statistics.updateStats(columnReader.getDouble());
+                    case BOOLEAN -> statistics.updateStats(columnReader.getBoolean());
+                    default -> statistics.updateStats(columnReader.getBinary());
+                }
+            }
+            columnReader.consume();
+        }
+    }
+
+    /**
+     * Convert a min or max value from its parquet representation, see {@link ColumnStats}.
+     */
+    private static Object value(Object value, PrimitiveType type) {
+        if (!(value instanceof Binary)) {
+            return value;
+        }
+        Binary binary = (Binary) value;
+        LogicalTypeAnnotation annotation = type.getLogicalTypeAnnotation();
+        if (annotation instanceof LogicalTypeAnnotation.StringLogicalTypeAnnotation
+                || annotation instanceof LogicalTypeAnnotation.EnumLogicalTypeAnnotation
+                || annotation instanceof LogicalTypeAnnotation.JsonLogicalTypeAnnotation) {
+            return binary.toStringUsingUTF8();
+        }
+        return binary.getBytes();
+    }
+
+    /**
+     * The path to a column, in the notation used by globs, i.e. without the repeated 'array' groups of lists.
+     */
+    static String columnPath(MessageType schema, ColumnDescriptor column) {
+        StringBuilder path = new StringBuilder();
+        Type type = schema;
+        for (String name : column.getPath()) {
+            type = type.asGroupType().getType(name);
+            if (type.getRepetition() != Type.Repetition.REPEATED) {
+                path.append('/').append(name);
+            }
+        }
+        return path.toString();
+    }
+
+    private static boolean contains(boolean[] values) {
+        for (boolean value : values) {
+            if (value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(boolean[][] values, int index) {
+        for (boolean[] value : values) {
+            if (value[index]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int dictionaryId(String value, Map<String, Integer> dictionaryIds, List<String> dictionary) {
+        Integer id = dictionaryIds.get(value);
+        if (id == null) {
+            id = dictionary.size();
+            dictionaryIds.put(value, id);
+            dictionary.add(value);
+        }
+        return id;
+    }
+
+    private static ColumnChunkMetaData columnChunk(BlockMetaData block, ColumnDescriptor column) {
+        ColumnPath path = ColumnPath.get(column.getPath());
+        for (ColumnChunkMetaData chunk : block.getColumns()) {
+            if (chunk.getPath().equals(path)) {
+                return chunk;
+            }
+        }
+        throw new RuntimeException("Column chunk not found in row group. Column: " + path);
+    }
+
+    /**
+     * A converter that ignores all values. It is only there to set up column readers, and has dictionary support to
+     * make column readers expose dictionary ids.
+     */
+    static class DiscardingConverter extends GroupConverter {
+        private final Converter[] converters;
+
+        DiscardingConverter(GroupType type) {
+            this.converters = new Converter[type.getFieldCount()];
+            for (int i = 0; i < converters.length; i++) {
+                Type field = type.getType(i);
+                converters[i] = field.isPrimitive() ? new PrimitiveConverter() {
+                    @Override
+                    public boolean hasDictionarySupport() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setDictionary(Dictionary dictionary) {
+                    }
+                } : new DiscardingConverter(field.asGroupType());
+            }
+        }
+
+        @Override
+        public Converter getConverter(int fieldIndex) {
+            return converters[fieldIndex];
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    /**
+     * Create a projection of the file schema holding the single column that the glob matches.
+     */
+    private static MessageType columnProjection(ParquetFileReader reader, String columnGlobPattern) {
+        return columnProjection(reader.getFooter().getFileMetaData().getSchema(), columnGlobPattern);
+    }
+
+    /**
+     * The projection of a schema on the single column that a glob matches.
+     */
+    static MessageType columnProjection(MessageType schema, String columnGlobPattern) {
+        MessageType schemaProjection = Schema.createProjection(schema, Set.of(columnGlobPattern));
+        if (schemaProjection == null) {
+            throw new RuntimeException("Column glob pattern doesn't match any columns. Pattern: " + columnGlobPattern);
+        }
+
+        List<ColumnDescriptor> columns = schemaProjection.getColumns();
+        if (columns.size() > 1) {
+            throw new RuntimeException("Column glob pattern matches several columns. Pattern: " + columnGlobPattern + ". Matches: " + columns.size());
+        }
+        return schemaProjection;
+    }
+
     /**
      * Recursively traverse the hierarchy until we find the column we're interested in. Return the column values as a
      * list (column could be in a collection).
@@ -138,6 +599,38 @@ public class File {
         throw new RuntimeException("Not implemented yet!");
     }
 
+    /**
+     * readNdjson writes all records of a parquet file as newline-delimited json, one json object per line.
+     *
+     * @param data a parquet file as a {@link SeekableByteChannel}
+     * @param out  the stream to write the json lines to
+     */
+    public static void readNdjson(SeekableByteChannel data, OutputStream out) throws IOException {
+        readNdjson(data, Set.of(), out);
+    }
+
+    /**
+     * readNdjson writes all records of a parquet file as newline-delimited json, one json object per line. Only the
+     * fields that match at least one of the glob patterns are included, see
+     * {@link Schema#createProjection(MessageType, Set)}.
+     *
+     * @param data         a parquet file as a {@link SeekableByteChannel}
+     * @param globPatterns the globs to match fields against, or an empty set to include all fields
+     * @param out          the stream to write the json lines to
+     */
+    public static void readNdjson(SeekableByteChannel data, Set<String> globPatterns, OutputStream out) throws IOException {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try (RecordStream stream = RecordStream.builder(data).withFieldSelectors(globPatterns).build()) {
+            Map<String, Object> record;
+            while ((record = stream.read()) != null) {
+                gson.toJson(record, writer);
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+    }
+
     /**
      * writeJson writes an array of json objects to file, as parquet.
      *
@@ -146,7 +639,15 @@ public class File {
      * @param schema the parquet schema ({@link MessageType}) of the file
      */
     public static void writeJson(InputStream json, Path path, MessageType schema) {
-        try (JsonParquetWriter writer = new JsonParquetWriter(path, schema)) {
+        writeJson(json, path, schema, Metrics.noOp());
+    }
+
+    /**
+     * writeJson writes a json array to file, as parquet, reporting the records written and the row groups flushed to
+     * the given metrics. See {@link #writeJson(InputStream, Path, MessageType)}.
+     */
+    public static void writeJson(InputStream json, Path path, MessageType schema, Metrics metrics) {
+        try (MeteredWriter<String> writer = MeteredWriter.json(path, schema, metrics)) {
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
             try (JsonReader reader = new JsonReader(new InputStreamReader(json))) {
                 reader.beginArray();
@@ -169,10 +670,222 @@ public class File {
      * @param schema the parquet schema ({@link MessageType}) of the file
      */
     public static void writeJson(String json, Path path, MessageType schema) {
-        try (JsonParquetWriter writer = new JsonParquetWriter(path, schema)) {
+        try (MeteredWriter<String> writer = MeteredWriter.json(path, schema, Metrics.noOp())) {
             writer.write(json);
         } catch (IOException e) {
             throw new RuntimeException(String.format("Error while writing json. Path: %s", path), e);
         }
     }
+
+    /**
+     * writeNdjson writes newline-delimited json to file, as parquet. Every non-blank line must hold a single json
+     * object.
+     *
+     * @param ndjson newline-delimited json objects as an {@link InputStream}
+     * @param path   the file to write to
+     * @param schema the parquet schema ({@link MessageType}) of the file
+     */
+    public static void writeNdjson(InputStream ndjson, Path path, MessageType schema) {
+        writeNdjson(ndjson, path, schema, Metrics.noOp());
+    }
+
+    /**
+     * writeNdjson writes newline-delimited json to file, as parquet, reporting the records written and the row groups
+     * flushed to the given metrics. See {@link #writeNdjson(InputStream, Path, MessageType)}.
+     */
+    public static void writeNdjson(InputStream ndjson, Path path, MessageType schema, Metrics metrics) {
+        try (MeteredWriter<String> writer = MeteredWriter.json(path, schema, metrics);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    writer.write(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error while writing json. Path: %s", path), e);
+        }
+    }
+
+    /**
+     * writeJsonSorted writes an array of json objects to file, as parquet, sorted on the given paths. See
+     * {@link #writeNdjsonSorted(InputStream, Path, MessageType, List, long)}.
+     */
+    public static void writeJsonSorted(InputStream json, Path path, MessageType schema, List<String> sortPaths) {
+        writeJsonSorted(json, path, schema, sortPaths, DEFAULT_SORT_MEMORY_BUDGET);
+    }
+
+    /**
+     * writeJsonSorted writes an array of json objects to file, as parquet, sorted on the given paths. The records are
+     * sorted like {@link #writeNdjsonSorted(InputStream, Path, MessageType, List, long)} sorts them.
+     *
+     * @param json         a json array of objects as an {@link InputStream}
+     * @param path         the file to write to
+     * @param schema       the parquet schema ({@link MessageType}) of the file
+     * @param sortPaths    paths of binary fields that aren't in a list, e.g. /person/id
+     * @param memoryBudget the approximate number of bytes of records to sort in memory at a time
+     */
+    public static void writeJsonSorted(InputStream json, Path path, MessageType schema, List<String> sortPaths, long memoryBudget) {
+        try (SortingJsonWriter writer = new SortingJsonWriter(path, schema, sortPaths, memoryBudget, Metrics.noOp())) {
+            Gson gson = new Gson();
+            try (JsonReader reader = new JsonReader(new InputStreamReader(json))) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Object o = gson.fromJson(reader, Object.class);
+                    writer.write(gson.toJson(o));
+                }
+                reader.endArray();
+            }
+            writer.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error while writing json. Path: %s", path), e);
+        }
+    }
+
+    /**
+     * writeNdjsonSorted writes newline-delimited json to file, as parquet, sorted on the given paths with a memory
+     * budget of 64 MB. See {@link #writeNdjsonSorted(InputStream, Path, MessageType, List, long)}.
+     */
+    public static void writeNdjsonSorted(InputStream ndjson, Path path, MessageType schema, List<String> sortPaths) {
+        writeNdjsonSorted(ndjson, path, schema, sortPaths, DEFAULT_SORT_MEMORY_BUDGET);
+    }
+
+    /**
+     * writeNdjsonSorted writes newline-delimited json to file, as parquet, sorted on the given paths. The first path
+     * is the primary key, the next one breaks ties and so on. Sorting clusters the values of the keys, so that the
+     * min and max statistics of each row group cover a narrow range and can be used to skip row groups.
+     * <p></p>
+     * Records that don't fit within the memory budget are sorted in runs that are spilled to a temporary directory next
+     * to the file, and merged when all records have been read. See {@link SortingJsonWriter}. The sort paths are
+     * recorded in the metadata of the file, see {@link #sortOrder(SeekableByteChannel)}.
+     *
+     * @param ndjson       newline-delimited json objects as an {@link InputStream}
+     * @param path         the file to write to
+     * @param schema       the parquet schema ({@link MessageType}) of the file
+     * @param sortPaths    paths of binary fields that aren't in a list, e.g. /person/id
+     * @param memoryBudget the approximate number of bytes of records to sort in memory at a time
+     */
+    public static void writeNdjsonSorted(InputStream ndjson, Path path, MessageType schema, List<String> sortPaths, long memoryBudget) {
+        try (SortingJsonWriter writer = new SortingJsonWriter(path, schema, sortPaths, memoryBudget, Metrics.noOp());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    writer.write(line);
+                }
+            }
+            writer.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error while writing json. Path: %s", path), e);
+        }
+    }
+
+    /**
+     * sortOrder returns the paths that the records of a parquet file are sorted on, if the file was written by
+     * {@link #writeNdjsonSorted(InputStream, Path, MessageType, List, long)} or
+     * {@link #writeJsonSorted(InputStream, Path, MessageType, List, long)}. Only the footer is read.
+     *
+     * @param data a parquet file as a {@link SeekableByteChannel}
+     * @return the sort paths, or an empty list if the file isn't known to be sorted
+     */
+    public static List<String> sortOrder(SeekableByteChannel data) {
+        try (ParquetFileReader reader = ParquetReaders.open(data)) {
+            String sortOrder = reader.getFooter().getFileMetaData().getKeyValueMetaData().get(SortingJsonWriter.SORT_ORDER_KEY);
+            return sortOrder == null ? List.of() : List.of(sortOrder.split(","));
+        } catch (IOException e) {
+            throw new RuntimeException("Got error while reading", e);
+        }
+    }
+
+    /**
+     * writeNdjson writes the lines of a newline-delimited json file that start within the byte range [start, end) to
+     * file, as parquet. A range that starts in the middle of a line skips ahead to the next line, and the last line
+     * of a range is read to its end. Ranges that together cover the input can therefore be written independently, and
+     * in parallel, without any line being lost or written twice. See {@link #splitNdjson(SeekableByteChannel, int)}.
+     *
+     * @param ndjson newline-delimited json as a {@link SeekableByteChannel}
+     * @param start  the first byte of the range, inclusive
+     * @param end    the last byte of the range, exclusive
+     * @param path   the file to write to
+     * @param schema the parquet schema ({@link MessageType}) of the file
+     */
+    public static void writeNdjson(SeekableByteChannel ndjson, long start, long end, Path path, MessageType schema) {
+        try (MeteredWriter<String> writer = MeteredWriter.json(path, schema, Metrics.noOp())) {
+            NdjsonLines lines = new NdjsonLines(ndjson, start, end);
+            String line;
+            while ((line = lines.next()) != null) {
+                writer.write(line);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error while writing json. Path: %s", path), e);
+        }
+    }
+
+    /**
+     * writeNdjson splits a newline-delimited json file into ranges and writes each range to its own parquet file in
+     * the given directory, using up to the given number of threads. The files are named part-0.parquet,
+     * part-1.parquet etc. in input order.
+     *
+     * @param ndjson    the newline-delimited json file
+     * @param directory the directory to write the parquet files to
+     * @param schema    the parquet schema ({@link MessageType}) of the files
+     * @param workers   the number of ranges to write in parallel
+     * @return the parquet files that were written
+     */
+    public static List<Path> writeNdjson(Path ndjson, Path directory, MessageType schema, int workers) {
+        List<Long> offsets;
+        try (SeekableByteChannel channel = FileChannel.open(ndjson)) {
+            offsets = splitNdjson(channel, workers);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error while splitting json. Path: %s", ndjson), e);
+        }
+
+        List<Path> parts = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < offsets.size(); i++) {
+            long start = offsets.get(i);
+            long end = offsets.get(i + 1);
+            Path part = directory.resolve("part-%d.parquet".formatted(i));
+            parts.add(part);
+            tasks.add(() -> {
+                try (SeekableByteChannel channel = FileChannel.open(ndjson)) {
+                    writeNdjson(channel, start, end, part, schema);
+                }
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(workers, tasks.size())));
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("Interrupted while writing json. Path: %s", ndjson), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(String.format("Error while writing json. Path: %s", ndjson), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return parts;
+    }
+
+    /**
+     * splitNdjson finds byte offsets that split a newline-delimited json file into ranges of roughly equal size. Every
+     * offset is aligned to the start of a line, so that each range can be passed directly to
+     * {@link #writeNdjson(SeekableByteChannel, long, long, Path, MessageType)}.
+     *
+     * @param ndjson newline-delimited json as a {@link SeekableByteChannel}
+     * @param splits the wanted number of ranges
+     * @return the range boundaries, starting with 0 and ending with the size of the input. Might hold fewer ranges
+     * than requested if the input has fewer lines.
+     */
+    public static List<Long> splitNdjson(SeekableByteChannel ndjson, int splits) {
+        try {
+            return NdjsonLines.split(ndjson, splits);
+        } catch (IOException e) {
+            throw new RuntimeException("Got error while reading", e);
+        }
+    }
 }
@@ -0,0 +1,144 @@
+package no.ssb.dapla.parquet;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventFactory;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.ValueDescriptor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JfrEvent is a JDK Flight Recorder event of a {@link Type} defined at runtime.
+ * <p></p>
+ * Event types are defined with {@link EventFactory} rather than by subclassing {@link Event}, and events are only
+ * handled as objects through method handles, since the hierarchy of {@link Event} isn't part of the symbols javac
+ * uses to compile for older releases. The method handles are constants, so the JIT inlines them like direct calls.
+ */
+class JfrEvent {
+
+    private static final MethodHandle BEGIN = eventMethod("begin", MethodType.methodType(void.class));
+    private static final MethodHandle END = eventMethod("end", MethodType.methodType(void.class));
+    private static final MethodHandle SHOULD_COMMIT = eventMethod("shouldCommit", MethodType.methodType(boolean.class));
+    private static final MethodHandle COMMIT = eventMethod("commit", MethodType.methodType(void.class));
+    private static final MethodHandle SET = eventMethod("set", MethodType.methodType(void.class, int.class, Object.class));
+
+    private final Object event;
+
+    private JfrEvent(Object event) {
+        this.event = event;
+    }
+
+    private static MethodHandle eventMethod(String name, MethodType type) {
+        try {
+            MethodHandle method = MethodHandles.publicLookup().findVirtual(Event.class, name, type);
+            return method.asType(type.insertParameterTypes(0, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Begin the timing of the event again.
+     */
+    void begin() {
+        try {
+            BEGIN.invokeExact(event);
+        } catch (Throwable e) {
+            throw new RuntimeException("Error when beginning JFR event", e);
+        }
+    }
+
+    /**
+     * End the timing of the event. The event is timed until it is committed if it isn't ended.
+     */
+    void end() {
+        try {
+            END.invokeExact(event);
+        } catch (Throwable e) {
+            throw new RuntimeException("Error when ending JFR event", e);
+        }
+    }
+
+    /**
+     * Set the field with the given index in the order the fields were given to {@link Type}.
+     */
+    void set(int index, Object value) {
+        try {
+            SET.invokeExact(event, index, value);
+        } catch (Throwable e) {
+            throw new RuntimeException("Error when setting JFR event field", e);
+        }
+    }
+
+    /**
+     * Commit the event if it is still enabled and lasted longer than the threshold of the recording.
+     */
+    void commit() {
+        try {
+            if ((boolean) SHOULD_COMMIT.invokeExact(event)) {
+                COMMIT.invokeExact(event);
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException("Error when committing JFR event", e);
+        }
+    }
+
+    static class Type {
+
+        private final EventFactory factory;
+
+        /**
+         * @param name   the name of the event type, e.g. no.ssb.dapla.parquet.RowGroupRead
+         * @param fields the fields of the event type, which are set by their index in this list
+         */
+        Type(String name, String label, String description, List<ValueDescriptor> fields) {
+            List<AnnotationElement> annotations = new ArrayList<>();
+            annotations.add(new AnnotationElement(Name.class, name));
+            annotations.add(new AnnotationElement(Label.class, label));
+            annotations.add(new AnnotationElement(Description.class, description));
+            annotations.add(new AnnotationElement(Category.class, new String[]{"Dapla", "Parquet"}));
+            annotations.add(new AnnotationElement(StackTrace.class, false));
+            this.factory = EventFactory.create(annotations, fields);
+        }
+
+        /**
+         * @return a new event that has begun, or null if the event type isn't enabled in any running recording
+         */
+        JfrEvent begin() {
+            if (!isEnabled()) {
+                return null;
+            }
+            JfrEvent event = new JfrEvent(factory.newEvent());
+            event.begin();
+            return event;
+        }
+
+        /**
+         * @return true if the event type is enabled in any running recording
+         */
+        boolean isEnabled() {
+            return factory.getEventType().isEnabled();
+        }
+
+        /**
+         * @param annotations further annotations of the field, e.g. a {@link jdk.jfr.DataAmount}
+         */
+        static ValueDescriptor field(Class<?> type, String name, String label, String description, AnnotationElement... annotations) {
+            List<AnnotationElement> elements = new ArrayList<>(List.of(annotations));
+            elements.add(new AnnotationElement(Label.class, label));
+            if (description != null) {
+                elements.add(new AnnotationElement(Description.class, description));
+            }
+            return new ValueDescriptor(type, name, elements);
+        }
+    }
+}
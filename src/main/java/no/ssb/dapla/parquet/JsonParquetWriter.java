@@ -1,11 +1,15 @@
 package no.ssb.dapla.parquet;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
 import org.apache.parquet.schema.MessageType;
 
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * JsonParquetWriter overrides {@link ParquetWriter} and uses an instance of {@link JsonWriteSupport} to enable writing
@@ -17,6 +21,49 @@ class JsonParquetWriter extends ParquetWriter<String> {
     }
 
     public JsonParquetWriter(Path file, MessageType schema, boolean enableDictionary, CompressionCodecName codecName) throws IOException {
-        super(file, new JsonWriteSupport(schema), codecName, DEFAULT_BLOCK_SIZE, DEFAULT_PAGE_SIZE, enableDictionary, true);
+        this(file, schema, enableDictionary, codecName, DEFAULT_BLOCK_SIZE, DEFAULT_PAGE_SIZE);
+    }
+
+    JsonParquetWriter(Path file, MessageType schema, boolean enableDictionary, CompressionCodecName codecName, int blockSize, int pageSize) throws IOException {
+        super(file, new JsonWriteSupport(schema), codecName, blockSize, pageSize, enableDictionary, true);
+    }
+
+    /**
+     * Create a builder for a writer of json records to any {@link OutputFile}. The builder is configured like the
+     * constructors of this class, i.e. with SNAPPY compression, dictionary encoding and validation.
+     */
+    static Builder builder(OutputFile file, MessageType schema) {
+        return new Builder(file, schema)
+                .withCompressionCodec(CompressionCodecName.SNAPPY)
+                .withDictionaryEncoding(true)
+                .withValidation(true);
+    }
+
+    static class Builder extends ParquetWriter.Builder<String, Builder> {
+        private final MessageType schema;
+        private Map<String, String> extraMetaData = Map.of();
+
+        private Builder(OutputFile file, MessageType schema) {
+            super(file);
+            this.schema = schema;
+        }
+
+        /**
+         * Write the given key-value metadata to the footer of the file.
+         */
+        Builder withExtraMetaData(Map<String, String> extraMetaData) {
+            this.extraMetaData = extraMetaData;
+            return this;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<String> getWriteSupport(Configuration conf) {
+            return new JsonWriteSupport(schema, extraMetaData);
+        }
     }
 }
@@ -19,14 +19,23 @@ class JsonWriteSupport extends WriteSupport<String> {
 
     private ValidatingRecordConsumer recordConsumer;
     private MessageType schema;
+    private Map<String, String> extraMetaData;
 
     public JsonWriteSupport(MessageType schema) {
+        this(schema, Map.of());
+    }
+
+    /**
+     * @param extraMetaData key-value metadata to write to the footer of the file
+     */
+    JsonWriteSupport(MessageType schema, Map<String, String> extraMetaData) {
         this.schema = schema;
+        this.extraMetaData = extraMetaData;
     }
 
     @Override
     public WriteContext init(Configuration configuration) {
-        return new WriteContext(schema, new HashMap<>());
+        return new WriteContext(schema, new HashMap<>(extraMetaData));
     }
 
     @Override
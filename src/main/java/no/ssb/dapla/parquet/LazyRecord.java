@@ -0,0 +1,290 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.Type;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * LazyRecord is a read-only {@link Map} view of a parquet record that decodes fields only when they are accessed.
+ * <p></p>
+ * It holds the same content as the map returned by {@link Record#normalize(Group, FieldInterceptor)}, but nested
+ * groups are themselves lazy views, and primitive values are converted and passed through the {@link FieldInterceptor}
+ * the first time they are read. Each field is decoded at most once. Use {@link #materialize()} to get a plain copy of
+ * the record made of {@link HashMap}, {@link ArrayList} and {@link String}, or {@link Utf8String} for binary values of
+ * records read with UTF-8 views, which are never intercepted.
+ */
+public class LazyRecord extends AbstractMap<String, Object> {
+
+    private final Group group;
+    private final FieldInterceptor fieldInterceptor;
+    private final boolean utf8Views;
+    private final String path;
+    private final Object[] values;
+    private final boolean[] decoded;
+    private Set<Entry<String, Object>> entrySet;
+    private int size = -1;
+
+    LazyRecord(Group group, FieldInterceptor fieldInterceptor) {
+        this(group, fieldInterceptor, false);
+    }
+
+    LazyRecord(Group group, FieldInterceptor fieldInterceptor, boolean utf8Views) {
+        this(Objects.requireNonNull(group), fieldInterceptor, utf8Views, "");
+    }
+
+    private LazyRecord(Group group, FieldInterceptor fieldInterceptor, boolean utf8Views, String path) {
+        this.group = group;
+        this.fieldInterceptor = fieldInterceptor;
+        this.utf8Views = utf8Views;
+        this.path = path;
+        this.values = new Object[group.getType().getFieldCount()];
+        this.decoded = new boolean[values.length];
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : value(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            int n = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (group.getFieldRepetitionCount(i) > 0) {
+                    n++;
+                }
+            }
+            size = n;
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new FieldIterator();
+                }
+
+                @Override
+                public int size() {
+                    return LazyRecord.this.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Decode all remaining fields of this record and return them as a plain, mutable copy. Fields that have already
+     * been accessed are not decoded or intercepted again.
+     *
+     * @return the record as nested {@link HashMap}, {@link ArrayList} and {@link String}
+     */
+    public Map<String, Object> materialize() {
+        Map<String, Object> map = new HashMap<>();
+        for (Entry<String, Object> entry : entrySet()) {
+            map.put(entry.getKey(), materialize(entry.getValue()));
+        }
+        return map;
+    }
+
+    private static Object materialize(Object value) {
+        if (value instanceof LazyRecord) {
+            return ((LazyRecord) value).materialize();
+        } else if (value instanceof LazyList) {
+            return ((LazyList) value).materialize();
+        }
+        return value;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        GroupType type = group.getType();
+        String name = (String) key;
+        if (!type.containsField(name)) {
+            return -1;
+        }
+        int index = type.getFieldIndex(name);
+        return group.getFieldRepetitionCount(index) > 0 ? index : -1;
+    }
+
+    private Object value(int index) {
+        Object value = values[index];
+        if (!decoded[index]) {
+            Type fieldType = group.getType().getType(index);
+            String fieldPath = "%s/%s".formatted(path, fieldType.getName());
+            if (fieldType instanceof GroupType) {
+                //Assume it's safe to always use index=0 here
+                value = view(group.getGroup(index, 0), fieldInterceptor, utf8Views, fieldPath);
+            } else if (utf8Views && RecordNormalizer.isBinary(fieldType)) {
+                value = Utf8String.of(group.getBinary(index, 0), false);
+            } else {
+                value = fieldInterceptor.intercept(fieldPath, group.getValueToString(index, 0));
+            }
+            values[index] = value;
+            decoded[index] = true;
+        }
+        return value;
+    }
+
+    private static Object view(Group group, FieldInterceptor fieldInterceptor, boolean utf8Views, String path) {
+        //Assume always a single field named 'array' when we encounter an array
+        if ("array".equals(group.getType().getFields().get(0).getName())) {
+            return new LazyList(group, fieldInterceptor, utf8Views, path);
+        }
+        return new LazyRecord(group, fieldInterceptor, utf8Views, path);
+    }
+
+    private class FieldIterator implements Iterator<Entry<String, Object>> {
+
+        private int next = advance(0);
+
+        private int advance(int from) {
+            int i = from;
+            while (i < values.length && group.getFieldRepetitionCount(i) < 1) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int index = next;
+            next = advance(next + 1);
+            return new FieldEntry(index);
+        }
+    }
+
+    /**
+     * An entry that decodes its value when it is first asked for, so that iterating over the keys of a record doesn't
+     * decode any values.
+     */
+    private class FieldEntry implements Entry<String, Object> {
+
+        private final int index;
+
+        private FieldEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return group.getType().getFieldName(index);
+        }
+
+        @Override
+        public Object getValue() {
+            return value(index);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return getKey().equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * A read-only {@link List} view of a parquet array that decodes elements only when they are accessed.
+     */
+    static class LazyList extends AbstractList<Object> {
+
+        private final Group group;
+        private final FieldInterceptor fieldInterceptor;
+        private final boolean utf8Views;
+        private final String path;
+        private final boolean primitive;
+        private final Object[] values;
+        private final boolean[] decoded;
+
+        private LazyList(Group group, FieldInterceptor fieldInterceptor, boolean utf8Views, String path) {
+            this.group = group;
+            this.fieldInterceptor = fieldInterceptor;
+            this.utf8Views = utf8Views;
+            this.path = path;
+            this.primitive = group.getType().getType("array").isPrimitive();
+            this.values = new Object[group.getFieldRepetitionCount("array")];
+            this.decoded = new boolean[values.length];
+        }
+
+        @Override
+        public Object get(int index) {
+            Object value = values[index];
+            if (!decoded[index]) {
+                if (primitive && utf8Views && RecordNormalizer.isBinary(group.getType().getType("array"))) {
+                    value = Utf8String.of(group.getBinary("array", index), false);
+                } else if (primitive) {
+                    value = fieldInterceptor.intercept(path, group.getValueToString(0, index));
+                } else {
+                    value = view(group.getGroup("array", index), fieldInterceptor, utf8Views, path);
+                }
+                values[index] = value;
+                decoded[index] = true;
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        List<Object> materialize() {
+            List<Object> list = new ArrayList<>(values.length);
+            for (int i = 0; i < values.length; i++) {
+                list.add(LazyRecord.materialize(get(i)));
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package no.ssb.dapla.parquet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A channel that reports the bytes read from it to {@link Metrics#bytesRead(long)}, also when it is read from at a
+ * position.
+ */
+class MeteredChannel implements SeekableByteChannel, PositionalReader.Source {
+
+    private final SeekableByteChannel delegate;
+    private final Metrics metrics;
+
+    MeteredChannel(SeekableByteChannel delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = delegate.read(dst);
+        if (read > 0) {
+            metrics.bytesRead(read);
+        }
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return delegate.write(src);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return delegate.position();
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        delegate.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return delegate.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        delegate.truncate(size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public PositionalReader positionalReader() {
+        PositionalReader reader = PositionalReader.of(delegate);
+        if (reader == null) {
+            return null;
+        }
+        return (dst, position) -> {
+            int read = reader.read(dst, position);
+            if (read > 0) {
+                metrics.bytesRead(read);
+            }
+            return read;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
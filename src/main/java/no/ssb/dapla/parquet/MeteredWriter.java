@@ -0,0 +1,241 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * MeteredWriter writes records to a parquet file with a {@link ParquetWriter}, e.g. json records with
+ * {@link JsonParquetWriter} or maps and objects with {@link RecordWriteSupport}, and reports the records
+ * written and the row groups flushed to {@link Metrics} when they are enabled, and as {@link RowGroupFlushEvent}s when
+ * the event is enabled in a JFR recording that is running when the writer is created. The writer is registered with a
+ * {@link WriterMemoryManager} while it is open.
+ * <p></p>
+ * A parquet writer buffers a whole row group in memory and only writes to the file when the row group is flushed, so
+ * a write that moves the position of the file has flushed a row group, and its duration is the flush duration.
+ */
+class MeteredWriter<T> implements AutoCloseable {
+
+    private final ParquetWriter<T> writer;
+    private final CountingOutputFile file;
+    private final Metrics metrics;
+    private final boolean metered;
+    private final WriterMemoryManager memoryManager;
+    private final String path;
+    private final List<RowGroupFlushEvent> flushEvents;
+    private RowGroupFlushEvent flushEvent;
+    private long records;
+
+    /**
+     * @param builder creates the builder of the parquet writer for a given output file
+     */
+    MeteredWriter(Path path, Function<OutputFile, ParquetWriter.Builder<T, ?>> builder, Metrics metrics, WriterMemoryManager memoryManager) throws IOException {
+        this.file = new CountingOutputFile(HadoopOutputFile.fromPath(new org.apache.hadoop.fs.Path(path.toUri()), new Configuration()));
+        this.writer = builder.apply(file).build();
+        this.memoryManager = memoryManager;
+        memoryManager.register(writer, ParquetWriter.DEFAULT_BLOCK_SIZE);
+        this.metrics = metrics;
+        this.metered = Metrics.isEnabled(metrics);
+        this.path = path.toString();
+        this.flushEvents = RowGroupFlushEvent.isEnabled() ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Create a writer of json records, see {@link JsonParquetWriter}.
+     */
+    static MeteredWriter<String> json(Path path, MessageType schema, Metrics metrics) throws IOException {
+        return json(path, schema, metrics, WriterMemoryManager.global());
+    }
+
+    static MeteredWriter<String> json(Path path, MessageType schema, Metrics metrics, WriterMemoryManager memoryManager) throws IOException {
+        return new MeteredWriter<>(path, file -> JsonParquetWriter.builder(file, schema), metrics, memoryManager);
+    }
+
+    /**
+     * Create a writer of json records that writes the given key-value metadata to the footer of the file.
+     */
+    static MeteredWriter<String> json(Path path, MessageType schema, Map<String, String> extraMetaData, Metrics metrics) throws IOException {
+        return new MeteredWriter<>(path, file -> JsonParquetWriter.builder(file, schema).withExtraMetaData(extraMetaData), metrics, WriterMemoryManager.global());
+    }
+
+    void write(T record) throws IOException {
+        if (!metered && flushEvents == null) {
+            writer.write(record);
+            return;
+        }
+        long written = file.bytesWritten;
+        long start = System.nanoTime();
+        beginFlushEvent();
+        writer.write(record);
+        records++;
+        long flushed = file.bytesWritten - written;
+        if (flushed > 0) {
+            endFlushEvent();
+            if (metered) {
+                metrics.rowGroupFlushed(flushed, System.nanoTime() - start);
+                reportRecords();
+            }
+        }
+    }
+
+    /**
+     * Begin the event of the next flush. The same event is begun again by every write until one of them flushes.
+     */
+    private void beginFlushEvent() {
+        if (flushEvents == null) {
+            return;
+        }
+        if (flushEvent == null) {
+            flushEvent = RowGroupFlushEvent.start();
+        } else {
+            flushEvent.begin();
+        }
+    }
+
+    private void endFlushEvent() {
+        if (flushEvent != null) {
+            flushEvent.end();
+            flushEvents.add(flushEvent);
+            flushEvent = null;
+        }
+    }
+
+    /**
+     * Commit the flush events with the sizes of their row groups from the footer.
+     */
+    private void commitFlushEvents() {
+        List<BlockMetaData> blocks = writer.getFooter().getBlocks();
+        for (int i = 0; i < Math.min(blocks.size(), flushEvents.size()); i++) {
+            flushEvents.get(i).flushed(path, i, blocks.get(i));
+        }
+    }
+
+    private void reportRecords() {
+        metrics.recordsWritten(records);
+        records = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeWriter();
+        } finally {
+            memoryManager.unregister(writer);
+        }
+    }
+
+    /**
+     * Close the file without flushing the buffered row group or writing the footer, e.g. when a write failed part way
+     * through a record. The file is left incomplete, for the caller to delete.
+     */
+    void abort() throws IOException {
+        try {
+            file.close();
+        } finally {
+            memoryManager.unregister(writer);
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (!metered && flushEvents == null) {
+            writer.close();
+            return;
+        }
+        long written = file.bytesWritten;
+        long start = System.nanoTime();
+        beginFlushEvent();
+        writer.close();
+        endFlushEvent();
+        if (metered) {
+            metrics.rowGroupFlushed(file.bytesWritten - written, System.nanoTime() - start);
+            reportRecords();
+        }
+        if (flushEvents != null) {
+            commitFlushEvents();
+        }
+    }
+
+    /**
+     * An output file that counts the bytes written to it, and keeps its stream so that the file can be closed without
+     * the parquet writer.
+     */
+    private static class CountingOutputFile implements OutputFile {
+
+        private final OutputFile delegate;
+        private PositionOutputStream stream;
+        private long bytesWritten;
+
+        private CountingOutputFile(OutputFile delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) throws IOException {
+            return counting(delegate.create(blockSizeHint));
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+            return counting(delegate.createOrOverwrite(blockSizeHint));
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return delegate.supportsBlockSize();
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return delegate.defaultBlockSize();
+        }
+
+        private void close() throws IOException {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        private PositionOutputStream counting(PositionOutputStream out) {
+            stream = out;
+            return new PositionOutputStream() {
+                @Override
+                public long getPos() throws IOException {
+                    return out.getPos();
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    bytesWritten++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    bytesWritten += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+    }
+}
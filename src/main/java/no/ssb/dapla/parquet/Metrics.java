@@ -0,0 +1,85 @@
+package no.ssb.dapla.parquet;
+
+/**
+ * Metrics receives measurements from the read and write paths of this library, e.g. to feed a metrics library or a
+ * dashboard. All methods default to doing nothing, so implementations only override what they are interested in.
+ * <p></p>
+ * Methods are called on the hot path, often once per record or value, and from every thread that reads or writes.
+ * Implementations must be thread safe and cheap, e.g. by adding to a {@link java.util.concurrent.atomic.LongAdder}.
+ * Nothing is measured when the no-op instance from {@link #noOp()} is used, which is the default everywhere.
+ */
+public interface Metrics {
+
+    /**
+     * Bytes read from a parquet file, including footers, indexes and pages of columns that aren't projected.
+     */
+    default void bytesRead(long bytes) {
+    }
+
+    /**
+     * A row group was read from a parquet file.
+     */
+    default void rowGroupRead(long rows) {
+    }
+
+    /**
+     * A row group was skipped without being read, e.g. when seeking.
+     */
+    default void rowGroupSkipped(long rows) {
+    }
+
+    /**
+     * A page was decompressed.
+     */
+    default void pageDecompressed(long compressedBytes, long uncompressedBytes, long nanos) {
+    }
+
+    /**
+     * A record was decoded from its column values. This includes decompressing the pages the values are read from.
+     */
+    default void recordDecoded(long nanos) {
+    }
+
+    /**
+     * A record was normalized into plain java maps and lists. This includes intercepting its values.
+     */
+    default void recordNormalized(long nanos) {
+    }
+
+    /**
+     * Values were intercepted by a {@link FieldInterceptor} or a {@link ColumnInterceptor}.
+     */
+    default void valuesIntercepted(long values, long nanos) {
+    }
+
+    /**
+     * Records were handed to a parquet writer.
+     */
+    default void recordsWritten(long records) {
+    }
+
+    /**
+     * A row group was flushed to a parquet file. The last row group is flushed together with the footer when the
+     * writer is closed.
+     */
+    default void rowGroupFlushed(long bytes, long nanos) {
+    }
+
+    static Metrics noOp() {
+        return NoOpMetrics.INSTANCE;
+    }
+
+    /**
+     * @return true if the metrics are not the no-op instance, and measurements should be taken
+     */
+    static boolean isEnabled(Metrics metrics) {
+        return metrics != NoOpMetrics.INSTANCE;
+    }
+}
+
+final class NoOpMetrics implements Metrics {
+    static final Metrics INSTANCE = new NoOpMetrics();
+
+    private NoOpMetrics() {
+    }
+}
@@ -0,0 +1,123 @@
+package no.ssb.dapla.parquet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * NdjsonLines reads the lines of a newline-delimited json file that belong to a byte range of that file.
+ * <p></p>
+ * A line belongs to the range [start, end) if its first byte is within the range. A range that starts in the middle
+ * of a line skips ahead to the next line, and the last line of a range is read to its end even if that is past the
+ * end of the range. This way a file can be split at arbitrary byte offsets, and every line is read by exactly one of
+ * the splits.
+ */
+class NdjsonLines {
+
+    private final InputStream input;
+    private final long end;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private long position;
+
+    NdjsonLines(SeekableByteChannel channel, long start, long end) throws IOException {
+        this.end = end;
+        this.position = start;
+        if (start > 0) {
+            channel.position(start - 1);
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            channel.read(previous);
+            if (previous.get(0) != '\n') {
+                this.input = new BufferedInputStream(Channels.newInputStream(channel));
+                skipLine();
+                return;
+            }
+        } else {
+            channel.position(0);
+        }
+        this.input = new BufferedInputStream(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Read the next non-blank line in the range.
+     *
+     * @return the next line without its line terminator, or null if there are no more lines in the range.
+     */
+    String next() throws IOException {
+        while (position < end) {
+            line.reset();
+            int b;
+            while ((b = input.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    break;
+                }
+                line.write(b);
+            }
+            if (line.size() == 0 && b == -1) {
+                return null;
+            }
+            String s = line.toString(StandardCharsets.UTF_8).strip();
+            if (!s.isEmpty()) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private void skipLine() throws IOException {
+        int b;
+        while ((b = input.read()) != -1) {
+            position++;
+            if (b == '\n') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Find offsets that split a newline-delimited json file into the given number of ranges of roughly equal size.
+     * Each offset is moved forward to the start of a line.
+     *
+     * @return the offsets, starting with 0 and ending with the size of the file. Empty ranges are left out.
+     */
+    static List<Long> split(SeekableByteChannel channel, int splits) throws IOException {
+        if (splits < 1) {
+            throw new IllegalArgumentException("Number of splits must be positive. Got: " + splits);
+        }
+        long size = channel.size();
+        List<Long> offsets = new ArrayList<>();
+        offsets.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for (int i = 1; i < splits; i++) {
+            long offset = Math.max(size * i / splits, offsets.get(offsets.size() - 1));
+            channel.position(offset);
+            offset = size;
+            buffer.clear();
+            long bufferStart = channel.position();
+            search:
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    if (buffer.get() == '\n') {
+                        offset = bufferStart + buffer.position();
+                        break search;
+                    }
+                }
+                bufferStart += buffer.limit();
+                buffer.clear();
+            }
+            if (offset > offsets.get(offsets.size() - 1) && offset < size) {
+                offsets.add(offset);
+            }
+        }
+        offsets.add(size);
+        return offsets;
+    }
+}
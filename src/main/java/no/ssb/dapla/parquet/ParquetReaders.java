@@ -0,0 +1,70 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.io.InputFile;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * ParquetReaders opens {@link ParquetFileReader}s without going through Hadoop.
+ * <p></p>
+ * {@link ParquetFileReader#open(InputFile)} builds its options from a fresh Hadoop Configuration, which parses the
+ * Hadoop default resources and instantiates Hadoop compression codecs on first use. Readers opened here are configured
+ * with plain {@link ParquetReadOptions} and a {@link StandaloneCodecFactory} instead.
+ */
+class ParquetReaders {
+
+    private ParquetReaders() {
+    }
+
+    static ParquetReadOptions.Builder readOptions() {
+        return readOptions(Metrics.noOp());
+    }
+
+    static ParquetReadOptions.Builder readOptions(Metrics metrics) {
+        return ParquetReadOptions.builder().withCodecFactory(new StandaloneCodecFactory(metrics));
+    }
+
+    static ParquetFileReader open(SeekableByteChannel file) throws IOException {
+        return open(file, Metrics.noOp());
+    }
+
+    /**
+     * Open a reader that reports the bytes it reads and the pages it decompresses to the given metrics.
+     */
+    static ParquetFileReader open(SeekableByteChannel file, Metrics metrics) throws IOException {
+        return open(file, metrics, null);
+    }
+
+    /**
+     * Open a reader that reports to the given metrics, and allocates the buffers of column chunks with the given
+     * allocator, unless it is null. The reader never releases the buffers, see {@link RowGroupBuffers}.
+     */
+    static ParquetFileReader open(SeekableByteChannel file, Metrics metrics, ByteBufferAllocator allocator) throws IOException {
+        if (Metrics.isEnabled(metrics)) {
+            file = new MeteredChannel(file, metrics);
+        }
+        ParquetReadOptions.Builder options = readOptions(metrics);
+        if (allocator != null) {
+            options.withAllocator(allocator);
+        }
+        return open(new SeekableByteChannelInputFile(file), options.build());
+    }
+
+    static ParquetFileReader open(InputFile file, ParquetReadOptions options) throws IOException {
+        return ParquetFileReader.open(file, options);
+    }
+
+    /**
+     * @return the number of values of the column in the row group, counting nulls and every element of repeated
+     * fields, i.e. the number of times a column reader of the row group can be consumed
+     */
+    static long valueCount(PageReadStore rowGroup, ColumnDescriptor column) {
+        return rowGroup.getPageReader(column).getTotalValueCount();
+    }
+}
@@ -0,0 +1,109 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.bytes.ByteBufferAllocator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PooledByteBufferAllocator hands out direct byte buffers for the column chunks of the row groups that are read, and
+ * reuses them once they are released. The same allocator can be shared by any number of streams, also streams that
+ * are read in parallel. See {@link RecordStream.Builder#withAllocator(ByteBufferAllocator)} and
+ * {@link File#readColumn(java.nio.channels.SeekableByteChannel, String, Metrics, ByteBufferAllocator)}.
+ * <p></p>
+ * Buffers are pooled by capacity, in powers of two from 4KB, so a buffer can be reused for any request up to its
+ * capacity. At most the given maximum number of bytes are kept in the pool. Buffers that are released while the pool
+ * is full are left to the garbage collector, and so are buffers larger than the maximum.
+ */
+public class PooledByteBufferAllocator implements ByteBufferAllocator {
+
+    private static final int MINIMUM_CAPACITY_SHIFT = 12;
+
+    private final List<Queue<ByteBuffer>> pools;
+    private final long maximumPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+
+    /**
+     * @param maximumPooledBytes the maximum number of bytes kept in the pool while not in use
+     */
+    public PooledByteBufferAllocator(long maximumPooledBytes) {
+        if (maximumPooledBytes < 0) {
+            throw new IllegalArgumentException("Maximum pooled bytes must not be negative. Got: " + maximumPooledBytes);
+        }
+        this.maximumPooledBytes = maximumPooledBytes;
+        this.pools = new ArrayList<>(Integer.SIZE - MINIMUM_CAPACITY_SHIFT);
+        for (int i = MINIMUM_CAPACITY_SHIFT; i < Integer.SIZE; i++) {
+            pools.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    @Override
+    public ByteBuffer allocate(int size) {
+        int pool = poolOf(size);
+        ByteBuffer buffer = pools.get(pool).poll();
+        if (buffer != null) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            reuses.increment();
+        } else {
+            long capacity = 1L << (pool + MINIMUM_CAPACITY_SHIFT);
+            buffer = ByteBuffer.allocateDirect((int) Math.min(capacity, Integer.MAX_VALUE));
+            allocations.increment();
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || Integer.bitCount(capacity) != 1 || capacity < 1 << MINIMUM_CAPACITY_SHIFT) {
+            return; //Not one of ours
+        }
+        if (pooledBytes.addAndGet(capacity) > maximumPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        pools.get(poolOf(capacity)).offer(buffer);
+    }
+
+    @Override
+    public boolean isDirect() {
+        return true;
+    }
+
+    /**
+     * @return the index of the pool of the smallest capacity that holds the given size
+     */
+    private static int poolOf(int size) {
+        int shift = size <= 1 << MINIMUM_CAPACITY_SHIFT ? MINIMUM_CAPACITY_SHIFT : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        return shift - MINIMUM_CAPACITY_SHIFT;
+    }
+
+    /**
+     * @return the number of bytes in the pool that aren't in use
+     */
+    public long pooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @return the number of buffers that have been allocated because the pool didn't have one to reuse
+     */
+    public long allocationCount() {
+        return allocations.sum();
+    }
+
+    /**
+     * @return the number of buffers that have been reused from the pool
+     */
+    public long reuseCount() {
+        return reuses.sum();
+    }
+}
@@ -0,0 +1,43 @@
+package no.ssb.dapla.parquet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * PositionalReader reads from a given position of a file without using or changing the position of its channel, like
+ * {@link FileChannel#read(ByteBuffer, long)}. Positional reads are safe to make from several threads at once, so any
+ * number of streams can share the same channel.
+ */
+interface PositionalReader {
+
+    /**
+     * @return the number of bytes read, or -1 if the position is at or past the end of the file
+     */
+    int read(ByteBuffer dst, long position) throws IOException;
+
+    /**
+     * @return a positional reader of the channel, or null if the channel can only be read from its position
+     */
+    static PositionalReader of(SeekableByteChannel channel) {
+        if (channel instanceof FileChannel) {
+            return ((FileChannel) channel)::read;
+        }
+        if (channel instanceof Source) {
+            return ((Source) channel).positionalReader();
+        }
+        return null;
+    }
+
+    /**
+     * A channel that wraps another channel, and supports positional reads if the wrapped channel does.
+     */
+    interface Source {
+
+        /**
+         * @return a positional reader of the channel, or null if the wrapped channel doesn't support positional reads
+         */
+        PositionalReader positionalReader();
+    }
+}
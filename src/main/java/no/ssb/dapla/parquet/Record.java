@@ -2,12 +2,9 @@ package no.ssb.dapla.parquet;
 
 import org.apache.parquet.example.data.Group;
 import org.apache.parquet.schema.GroupType;
-import org.apache.parquet.schema.PrimitiveType;
-import org.apache.parquet.schema.Type;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -31,43 +28,7 @@ public class Record {
     }
 
     static Map<String, Object> normalize(Group group, FieldInterceptor fieldInterceptor) {
-        return (Map<String, Object>) processGroup(Objects.requireNonNull(group), fieldInterceptor, "");
-    }
-
-    private static Object processGroup(Group group, FieldInterceptor fieldInterceptor, String parentPath) {
-
-        GroupType type = group.getType();
-
-        //Assume always a single field named 'array' when we encounter an array
-        if ("array".equals(type.getFields().get(0).getName())) {
-            Type arrayType = type.getType("array");
-            int arraySize = group.getFieldRepetitionCount("array");
-            List<Object> array = new ArrayList<>(arraySize);
-            for (int i = 0; i < arraySize; i++) {
-                if (arrayType instanceof GroupType) {
-                    array.add(processGroup(group.getGroup("array", i), fieldInterceptor, parentPath));
-                } else {
-                    array.add(fieldInterceptor.intercept(parentPath, group.getString("array", i)));
-                }
-            }
-            return array;
-        } else {
-            Map<String, Object> map = new HashMap<>();
-            for (Type fieldType : type.getFields()) {
-                String fieldName = fieldType.getName();
-                if (group.getFieldRepetitionCount(fieldName) < 1) {
-                    continue;
-                }
-                String fieldPath = "%s/%s".formatted(parentPath, fieldName);
-                if (fieldType instanceof GroupType) {
-                    //Assume it's safe to always use index=0 here
-                    map.put(fieldName, processGroup(group.getGroup(fieldName, 0), fieldInterceptor, fieldPath));
-                } else if (fieldType instanceof PrimitiveType) {
-                    String s = group.getValueToString(group.getType().getFieldIndex(fieldName), 0);
-                    map.put(fieldName, fieldInterceptor.intercept(fieldPath, s));
-                }
-            }
-            return map;
-        }
+        Objects.requireNonNull(group);
+        return new RecordNormalizer(group.getType(), fieldInterceptor, null).normalize(group);
     }
 }
@@ -0,0 +1,101 @@
+package no.ssb.dapla.parquet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RecordBatch is a reusable container for up to {@link #capacity()} records, filled by
+ * {@link RecordStream#readBatch(RecordBatch)}.
+ * <p></p>
+ * The batch keeps both its list of records and the top level record maps between reads, so reading into the same
+ * batch again reuses their capacity. This also means that the records of a batch are only valid until the batch is
+ * read into again. Copy any record that should outlive the batch.
+ */
+public class RecordBatch implements Iterable<Map<String, Object>> {
+
+    private final int capacity;
+    private final List<Map<String, Object>> records;
+    private int size;
+
+    public RecordBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be positive. Got: " + capacity);
+        }
+        this.capacity = capacity;
+        this.records = new ArrayList<>(capacity);
+    }
+
+    /**
+     * @return the maximum number of records in this batch
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of records in this batch
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Map<String, Object> get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return records.get(index);
+    }
+
+    /**
+     * @return an unmodifiable view of the records in this batch
+     */
+    public List<Map<String, Object>> records() {
+        return Collections.unmodifiableList(records.subList(0, size));
+    }
+
+    @Override
+    public Iterator<Map<String, Object>> iterator() {
+        return records().iterator();
+    }
+
+    int remaining() {
+        return capacity - size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Claim the next record slot of this batch. The returned map is either a fresh map or a map from a previous read
+     * that the caller is expected to clear and fill.
+     */
+    Map<String, Object> add() {
+        if (size == records.size()) {
+            records.add(new HashMap<>());
+        } else if (!(records.get(size) instanceof HashMap)) { //Slot held a read-only record, e.g. a LazyRecord
+            records.set(size, new HashMap<>());
+        }
+        return records.get(size++);
+    }
+
+    /**
+     * Put a record in the next slot of this batch, replacing whatever map the slot held before.
+     */
+    void add(Map<String, Object> record) {
+        if (size == records.size()) {
+            records.add(record);
+        } else {
+            records.set(size, record);
+        }
+        size++;
+    }
+}
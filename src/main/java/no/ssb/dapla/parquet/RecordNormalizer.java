@@ -0,0 +1,299 @@
+package no.ssb.dapla.parquet;
+
+import no.ssb.dapla.parquet.ColumnInterceptor.ColumnTransform;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RecordNormalizer re-constructs parquet records using plain java constructs, see {@link Record#normalize(Group)}.
+ * <p></p>
+ * The schema is resolved into a tree of fields up front, so field paths are computed and columns are resolved against
+ * the {@link ColumnInterceptor} once, rather than for every field of every record. Values of columns that have a
+ * {@link ColumnTransform} are collected across records and only transformed when {@link #flush()} is called. Records
+ * normalized since the last flush hold null in place of those values until then.
+ * <p></p>
+ * With UTF-8 views, see {@link #setUtf8Views(boolean, boolean)}, binary values are put into records as
+ * {@link Utf8String}s rather than Strings, and are neither decoded nor intercepted.
+ */
+class RecordNormalizer {
+
+    private final Node root;
+    private final FieldInterceptor fieldInterceptor;
+    private final List<ColumnBuffer> buffers = new ArrayList<>();
+    private final Map<List<String>, Node> columns = new HashMap<>();
+    private boolean utf8Views;
+    private boolean copyUtf8Views;
+
+    RecordNormalizer(GroupType schema, FieldInterceptor fieldInterceptor, ColumnInterceptor columnInterceptor) {
+        this.fieldInterceptor = fieldInterceptor;
+        this.root = node(schema, -1, "", new ArrayList<>(), columnInterceptor);
+    }
+
+    Map<String, Object> normalize(Group group) {
+        return normalize(group, new HashMap<>());
+    }
+
+    /**
+     * Normalize a record into an existing map. The map is cleared first.
+     */
+    Map<String, Object> normalize(Group group, Map<String, Object> target) {
+        target.clear();
+        processFields(group, root, target);
+        return target;
+    }
+
+    /**
+     * Put binary values into records as {@link Utf8String}s.
+     *
+     * @param copy whether the views copy their bytes, rather than sharing them with the page they were read from
+     */
+    void setUtf8Views(boolean utf8Views, boolean copy) {
+        this.utf8Views = utf8Views;
+        this.copyUtf8Views = copy;
+    }
+
+    /**
+     * @return true if records normalized by this normalizer must be flushed before they are complete
+     */
+    boolean isBuffering() {
+        return !buffers.isEmpty();
+    }
+
+    /**
+     * Transform all values collected since the last flush, and put them into the records they belong to.
+     *
+     * @return the number of values transformed
+     */
+    int flush() {
+        int values = 0;
+        for (ColumnBuffer buffer : buffers) {
+            values += buffer.flush();
+        }
+        return values;
+    }
+
+    private Object processGroup(Group group, Node node) {
+        if (node.element != null) {
+            Node element = node.element;
+            int arraySize = group.getFieldRepetitionCount(0);
+            List<Object> array = new ArrayList<>(arraySize);
+            for (int i = 0; i < arraySize; i++) {
+                if (element.isGroup()) {
+                    array.add(processGroup(group.getGroup(0, i), element));
+                } else if (utf8Views && element.binary) {
+                    array.add(Utf8String.of(group.getBinary(0, i), copyUtf8Views));
+                } else {
+                    array.add(null);
+                    processValue(element, group.getValueToString(0, i), array, null, i);
+                }
+            }
+            return array;
+        } else {
+            Map<String, Object> map = new HashMap<>();
+            processFields(group, node, map);
+            return map;
+        }
+    }
+
+    private void processFields(Group group, Node node, Map<String, Object> map) {
+        for (Node field : node.fields) {
+            if (group.getFieldRepetitionCount(field.index) < 1) {
+                continue;
+            }
+            if (field.isGroup()) {
+                //Assume it's safe to always use index=0 here
+                map.put(field.name, processGroup(group.getGroup(field.index, 0), field));
+            } else if (utf8Views && field.binary) {
+                map.put(field.name, Utf8String.of(group.getBinary(field.index, 0), copyUtf8Views));
+            } else {
+                processValue(field, group.getValueToString(field.index, 0), map, field.name, 0);
+            }
+        }
+    }
+
+    /**
+     * Intercept the entries of a column's dictionary, using both the field interceptor and the column transform of
+     * the column, and stop intercepting the values of that column until {@link #resetDictionaries()}. Values of the
+     * column are then assumed to already be intercepted, i.e. read through the intercepted dictionary.
+     *
+     * @param columnPath the path of the column, as in {@link org.apache.parquet.column.ColumnDescriptor#getPath()}
+     * @param values     the dictionary entries, intercepted in place
+     */
+    void interceptDictionary(String[] columnPath, String[] values) {
+        Node node = column(columnPath);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = fieldInterceptor.intercept(node.path, values[i]);
+        }
+        if (node.buffer != null) {
+            node.buffer.transform.intercept(values, values.length);
+        }
+        node.intercepted = true;
+    }
+
+    /**
+     * Resume intercepting the values of a column.
+     */
+    void resetDictionary(String[] columnPath) {
+        column(columnPath).intercepted = false;
+    }
+
+    /**
+     * Resume intercepting the values of all columns, e.g. when moving on to a new row group with other dictionaries.
+     */
+    void resetDictionaries() {
+        for (Node node : columns.values()) {
+            node.intercepted = false;
+        }
+    }
+
+    private Node column(String[] columnPath) {
+        Node node = columns.get(Arrays.asList(columnPath));
+        if (node == null) {
+            throw new IllegalArgumentException("Unknown column: " + String.join(".", columnPath));
+        }
+        return node;
+    }
+
+    private void processValue(Node node, String value, Object container, String key, int index) {
+        if (node.intercepted) {
+            put(container, key, index, value);
+            return;
+        }
+        String intercepted = fieldInterceptor.intercept(node.path, value);
+        if (node.buffer != null) {
+            node.buffer.add(intercepted, container, key, index);
+        } else {
+            put(container, key, index, intercepted);
+        }
+    }
+
+    private static void put(Object container, String key, int index, Object value) {
+        if (key != null) {
+            ((Map<String, Object>) container).put(key, value);
+        } else {
+            ((List<Object>) container).set(index, value);
+        }
+    }
+
+    private Node node(Type type, int index, String path, List<String> columnPath, ColumnInterceptor columnInterceptor) {
+        if (type.isPrimitive()) {
+            ColumnBuffer buffer = null;
+            if (columnInterceptor != null) {
+                ColumnTransform transform = columnInterceptor.resolve(path);
+                if (transform != null) {
+                    buffer = new ColumnBuffer(transform);
+                    buffers.add(buffer);
+                }
+            }
+            Node node = new Node(type.getName(), index, path, null, null, buffer);
+            node.binary = isBinary(type);
+            columns.put(List.copyOf(columnPath), node);
+            return node;
+        }
+        GroupType groupType = type.asGroupType();
+        //Assume always a single field named 'array' when we encounter an array. The 'array' is not part of the path.
+        if ("array".equals(groupType.getFields().get(0).getName())) {
+            Node element = node(groupType.getType(0), 0, path, with(columnPath, "array"), columnInterceptor);
+            return new Node(type.getName(), index, path, new Node[0], element, null);
+        }
+        Node[] fields = new Node[groupType.getFieldCount()];
+        for (int i = 0; i < fields.length; i++) {
+            Type field = groupType.getType(i);
+            fields[i] = node(field, i, "%s/%s".formatted(path, field.getName()), with(columnPath, field.getName()), columnInterceptor);
+        }
+        return new Node(type.getName(), index, path, fields, null, null);
+    }
+
+    /**
+     * @return true if values of the primitive type are binary, and decoded as UTF-8 unless read as UTF-8 views
+     */
+    static boolean isBinary(Type type) {
+        PrimitiveTypeName typeName = type.asPrimitiveType().getPrimitiveTypeName();
+        return typeName == PrimitiveTypeName.BINARY || typeName == PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY;
+    }
+
+    private static List<String> with(List<String> list, String element) {
+        List<String> copy = new ArrayList<>(list);
+        copy.add(element);
+        return copy;
+    }
+
+    private static class Node {
+        private final String name;
+        private final int index;
+        private final String path;
+        private final Node[] fields;
+        private final Node element;
+        private final ColumnBuffer buffer;
+        private boolean binary;
+        private boolean intercepted;
+
+        private Node(String name, int index, String path, Node[] fields, Node element, ColumnBuffer buffer) {
+            this.name = name;
+            this.index = index;
+            this.path = path;
+            this.fields = fields;
+            this.element = element;
+            this.buffer = buffer;
+        }
+
+        private boolean isGroup() {
+            return fields != null;
+        }
+    }
+
+    /**
+     * The pending values of a single column, and where to put each of them once they have been transformed.
+     */
+    private static class ColumnBuffer {
+        private final ColumnTransform transform;
+        private String[] values = new String[64];
+        private Object[] containers = new Object[64];
+        private String[] keys = new String[64];
+        private int[] indexes = new int[64];
+        private int size;
+
+        private ColumnBuffer(ColumnTransform transform) {
+            this.transform = transform;
+        }
+
+        private void add(String value, Object container, String key, int index) {
+            if (size == values.length) {
+                int capacity = size * 2;
+                values = Arrays.copyOf(values, capacity);
+                containers = Arrays.copyOf(containers, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                indexes = Arrays.copyOf(indexes, capacity);
+            }
+            values[size] = value;
+            containers[size] = container;
+            keys[size] = key;
+            indexes[size] = index;
+            size++;
+        }
+
+        private int flush() {
+            if (size == 0) {
+                return 0;
+            }
+            transform.intercept(values, size);
+            for (int i = 0; i < size; i++) {
+                put(containers[i], keys[i], indexes[i], values[i]);
+            }
+            Arrays.fill(values, 0, size, null);
+            Arrays.fill(containers, 0, size, null);
+            Arrays.fill(keys, 0, size, null);
+            int flushed = size;
+            size = 0;
+            return flushed;
+        }
+    }
+}
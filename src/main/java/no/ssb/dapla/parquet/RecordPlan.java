@@ -0,0 +1,92 @@
+package no.ssb.dapla.parquet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * RecordPlan describes how to write objects of a type as parquet records, by giving an accessor for every field of the
+ * record. Accessors are plain functions, typically method references, so objects are written without reflection and
+ * without being converted to maps first. See {@link RecordWriter#builder(java.nio.file.Path,
+ * org.apache.parquet.schema.MessageType, RecordPlan)}.
+ * <p></p>
+ * Fields are matched with the schema by name when a writer is created. Fields of the schema that aren't in the plan
+ * are left out of every record, and so are fields whose accessor returns null. An accessor without a plan of its own
+ * may return anything a {@link RecordWriter} of maps accepts, including maps and lists.
+ *
+ * @param <T> the type of objects written
+ */
+public class RecordPlan<T> {
+
+    private final List<Field> fields;
+
+    private RecordPlan(List<Field> fields) {
+        this.fields = List.copyOf(fields);
+    }
+
+    List<Field> fields() {
+        return fields;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    public static class Builder<T> {
+        private final List<Field> fields = new ArrayList<>();
+        private final Set<String> names = new HashSet<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Add a field whose value is written as is, like the value of a map entry.
+         */
+        public Builder<T> field(String name, Function<? super T, ?> accessor) {
+            return add(name, accessor, null);
+        }
+
+        /**
+         * Add a group field whose value is written with a plan of its own.
+         */
+        public <U> Builder<T> group(String name, Function<? super T, ? extends U> accessor, RecordPlan<U> plan) {
+            return add(name, accessor, Objects.requireNonNull(plan));
+        }
+
+        /**
+         * Add a list field whose elements are written with a plan of their own.
+         */
+        public <U> Builder<T> list(String name, Function<? super T, ? extends Collection<? extends U>> accessor, RecordPlan<U> plan) {
+            return add(name, accessor, Objects.requireNonNull(plan));
+        }
+
+        @SuppressWarnings("unchecked")
+        private Builder<T> add(String name, Function<? super T, ?> accessor, RecordPlan<?> plan) {
+            if (!names.add(name)) {
+                throw new IllegalArgumentException("Field is already in the plan: " + name);
+            }
+            fields.add(new Field(name, (Function<Object, ?>) Objects.requireNonNull(accessor), plan));
+            return this;
+        }
+
+        public RecordPlan<T> build() {
+            return new RecordPlan<>(fields);
+        }
+    }
+
+    static class Field {
+        final String name;
+        final Function<Object, ?> accessor;
+        final RecordPlan<?> plan;
+
+        private Field(String name, Function<Object, ?> accessor, RecordPlan<?> plan) {
+            this.name = name;
+            this.accessor = accessor;
+            this.plan = plan;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package no.ssb.dapla.parquet;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RecordPublisher publishes the records of a {@link RecordStream}, or the batches of a {@link ColumnarReader}, to a
+ * {@link Flow.Subscriber}, reading only as far as the subscriber has asked for.
+ * <p></p>
+ * Every subscription opens a stream of its own when the subscriber first requests items, and reads it on the given
+ * executor, so no thread is held while the subscriber has no outstanding demand. Row groups are read and decoded as
+ * the items are requested. A subscription that has unbounded demand hands its thread back to the executor after a
+ * number of items, which lets a bounded pool serve many subscriptions fairly.
+ * <p></p>
+ * The stream is closed when it has been read to its end, when reading fails, and when the subscription is cancelled.
+ * A cancelled subscription closes the stream right away, unless an item is being read, in which case the stream is
+ * closed as soon as that read returns. A subscriber that throws from {@link Flow.Subscriber#onNext(Object)} is treated
+ * as having cancelled its subscription.
+ *
+ * @param <T> the type of the items published
+ */
+public class RecordPublisher<T> implements Flow.Publisher<T> {
+
+    private static final int RECORDS_PER_RUN = 1024;
+
+    private final Callable<? extends Source<T>> opener;
+    private final Executor executor;
+    private final int itemsPerRun;
+
+    private RecordPublisher(Callable<? extends Source<T>> opener, Executor executor, int itemsPerRun) {
+        this.opener = Objects.requireNonNull(opener);
+        this.executor = Objects.requireNonNull(executor);
+        this.itemsPerRun = itemsPerRun;
+    }
+
+    /**
+     * Publish the records of the streams opened by the opener, one record per item, see {@link RecordStream#read()}.
+     *
+     * @param opener   opens a new stream for every subscription, e.g.
+     *                 {@code () -> RecordStream.builder(FileChannel.open(path)).build()}
+     * @param executor the executor the streams are read on
+     */
+    public static RecordPublisher<Map<String, Object>> records(Callable<RecordStream> opener, Executor executor) {
+        Objects.requireNonNull(opener);
+        return new RecordPublisher<>(() -> {
+            RecordStream stream = opener.call();
+            return Source.of(stream::read, stream::close);
+        }, executor, RECORDS_PER_RUN);
+    }
+
+    /**
+     * Publish the records of the streams opened by the opener in batches, see {@link RecordStream#readBatch(int)}.
+     * Every batch is a new batch, which the subscriber is free to keep.
+     *
+     * @param opener    opens a new stream for every subscription
+     * @param batchSize the maximum number of records in a batch
+     * @param executor  the executor the streams are read on
+     */
+    public static RecordPublisher<RecordBatch> batches(Callable<RecordStream> opener, int batchSize, Executor executor) {
+        Objects.requireNonNull(opener);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive. Got: " + batchSize);
+        }
+        return new RecordPublisher<>(() -> {
+            RecordStream stream = opener.call();
+            return Source.of(() -> {
+                RecordBatch batch = stream.readBatch(batchSize);
+                return batch.isEmpty() ? null : batch;
+            }, stream::close);
+        }, executor, 1);
+    }
+
+    /**
+     * Publish the batches of the columnar readers opened by the opener, see {@link ColumnarReader#readBatch()}. Every
+     * batch is a new batch, which the subscriber is free to keep.
+     *
+     * @param opener   opens a new reader for every subscription
+     * @param executor the executor the readers are read on
+     */
+    public static RecordPublisher<ColumnarBatch> columnarBatches(Callable<ColumnarReader> opener, Executor executor) {
+        Objects.requireNonNull(opener);
+        return new RecordPublisher<>(() -> {
+            ColumnarReader reader = opener.call();
+            return Source.of(() -> {
+                ColumnarBatch batch = reader.readBatch();
+                return batch.isEmpty() ? null : batch;
+            }, reader::close);
+        }, executor, 1);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    /**
+     * Where the items of a subscription are read from. Sources are only used by one thread at a time.
+     */
+    private static class Source<T> implements AutoCloseable {
+        private final Callable<T> next;
+        private final Runnable closer;
+
+        private Source(Callable<T> next, Runnable closer) {
+            this.next = next;
+            this.closer = closer;
+        }
+
+        /**
+         * @param closer closes the stream or reader, which only throws unchecked exceptions
+         */
+        static <T> Source<T> of(Callable<T> next, Runnable closer) {
+            return new Source<>(next, closer);
+        }
+
+        /**
+         * @return the next item, or null if there are no more items
+         */
+        T next() throws Exception {
+            return next.call();
+        }
+
+        @Override
+        public void close() {
+            closer.run();
+        }
+    }
+
+    /**
+     * The items of a subscription are read and published by at most one thread at a time, the one that takes the
+     * work counter from zero. Requests and cancellations made while it runs bump the counter, so that it goes another
+     * round before it stops.
+     */
+    private class Subscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+        private Source<T> source;
+        private boolean done;
+
+        private Subscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Request must be positive. Got: " + n);
+            } else {
+                demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            }
+            if (work.getAndIncrement() == 0) {
+                execute();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            //Nothing is being read, so the stream is closed right away rather than by the executor
+            if (work.getAndIncrement() == 0) {
+                run();
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                if (!done) {
+                    finish();
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                if (!done && drain()) {
+                    //There is more demand, but other subscriptions get their turn first. The counter is still
+                    //positive, so no other thread starts reading in the meantime.
+                    execute();
+                    return;
+                }
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Publish items while there is demand, up to the items per run.
+         *
+         * @return true if there is demand left
+         */
+        private boolean drain() {
+            if (cancelled) {
+                finish();
+                return false;
+            }
+            if (invalidRequest != null) {
+                finish();
+                subscriber.onError(invalidRequest);
+                return false;
+            }
+            int published = 0;
+            while (demand.get() > 0) {
+                if (published == itemsPerRun) {
+                    return true;
+                }
+                T item;
+                try {
+                    if (source == null) {
+                        source = opener.call();
+                    }
+                    item = source.next();
+                } catch (Exception e) {
+                    finish();
+                    subscriber.onError(e);
+                    return false;
+                }
+                if (cancelled) {
+                    finish();
+                    return false;
+                }
+                if (item == null) {
+                    finish();
+                    subscriber.onComplete();
+                    return false;
+                }
+                demand.decrementAndGet();
+                published++;
+                try {
+                    subscriber.onNext(item);
+                } catch (RuntimeException e) {
+                    cancelled = true;
+                    finish();
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Close the source, if it has been opened. No more items are read.
+         */
+        private void finish() {
+            done = true;
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (RuntimeException e) {
+                    //The subscriber is told about the error that ended the subscription, if any, rather than this one
+                }
+                source = null;
+            }
+        }
+    }
+}
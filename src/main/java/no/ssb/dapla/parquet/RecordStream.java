@@ -1,9 +1,15 @@
 package no.ssb.dapla.parquet;
 
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
 import org.apache.parquet.column.page.PageReadStore;
 import org.apache.parquet.example.data.Group;
 import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
 import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
 import org.apache.parquet.io.ColumnIOFactory;
 import org.apache.parquet.io.MessageColumnIO;
 import org.apache.parquet.io.RecordReader;
@@ -11,9 +17,15 @@ import org.apache.parquet.schema.MessageType;
 
 import java.io.IOException;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
 
 /**
  * This class represents a continuous stream of records from a parquet file.
@@ -22,31 +34,193 @@ public class RecordStream implements AutoCloseable {
 
     private final DataStreamRowGroupReader rowGroupReader;
     private final FieldInterceptor fieldInterceptor;
+    private final RecordNormalizer normalizer;
+    private final Metrics metrics;
+    private final boolean metered;
+    private final boolean lazyRecords;
+    private final boolean utf8Views;
+    private final int columnBatchSize;
+    private final List<Map<String, Object>> buffered = new ArrayList<>();
+    private int bufferedPosition;
 
-    private RecordStream(SeekableByteChannel file, Set<String> fieldSelectors, FieldInterceptor fieldInterceptor) throws IOException {
-        this.rowGroupReader = new DataStreamRowGroupReader(file, fieldSelectors);
+    private RecordStream(Builder builder) throws IOException {
+        this.metrics = builder.metrics;
+        this.metered = Metrics.isEnabled(metrics);
+        this.rowGroupReader = new DataStreamRowGroupReader(builder.file, builder.fileName, builder.fieldSelectors, metrics, builder.allocator);
+        rowGroupReader.setConcurrentChunkReads(builder.concurrentChunkReads);
+        FieldInterceptor fieldInterceptor = builder.fieldInterceptor != null ? builder.fieldInterceptor : FieldInterceptor.noOp();
+        if (builder.fieldInterceptorCache != null) {
+            fieldInterceptor = builder.fieldInterceptorCache.wrap(fieldInterceptor);
+        }
+        if (metered) {
+            fieldInterceptor = metered(fieldInterceptor, metrics);
+        }
         this.fieldInterceptor = fieldInterceptor;
+        this.normalizer = new RecordNormalizer(rowGroupReader.schema, fieldInterceptor, builder.columnInterceptor);
+        this.lazyRecords = builder.lazyRecords;
+        this.utf8Views = builder.utf8Views;
+        normalizer.setUtf8Views(utf8Views, builder.allocator != null);
+        this.columnBatchSize = builder.columnBatchSize;
+        if (builder.dictionaryInterception) {
+            rowGroupReader.setDictionaryInterceptor(new DictionaryInterceptor(normalizer, rowGroupReader.schema));
+        }
+        if (builder.rowFilter != null) {
+            rowGroupReader.setRowFilter(new RowFilter(rowGroupReader.fileSchema(), builder.rowFilterColumn, builder.rowFilter));
+        }
+        rowGroupReader.setEnd(builder.rowRangeTo);
+        if (builder.rowRangeFrom > 0) {
+            rowGroupReader.seek(builder.rowRangeFrom);
+        }
     }
 
     /**
-     * Read the next record from this stream of records.
+     * Position the stream so that the next record read is the record at the given row index, counting from the start
+     * of the file. Row groups before the row are skipped without being read, and so are pages before the row when the
+     * file has offset indexes. Records read ahead are discarded. If the stream was built with a row range, it still
+     * ends at the end of that range.
+     *
+     * @param rowIndex the index of the next record to read. The stream is at its end if the index is past the last row.
+     * @throws IOException if an error occurs while reading.
+     */
+    public void seek(long rowIndex) throws IOException {
+        buffered.clear();
+        bufferedPosition = 0;
+        rowGroupReader.seek(rowIndex);
+    }
+
+    /**
+     * Read the next record from this stream of records. If the stream was built with
+     * {@link Builder#withLazyRecords(boolean)} the record is a {@link LazyRecord}.
      *
      * @return the next record in the stream, or null if the end of the stream has been reached.
      * @throws IOException if an error occurs while reading.
      */
     public Map<String, Object> read() throws IOException {
-        Group next = rowGroupReader.next();
-        if (next == null) {
+        if (normalizer.isBuffering()) {
+            if (bufferedPosition == buffered.size() && !fillBuffer()) {
+                return null;
+            }
+            return buffered.set(bufferedPosition++, null);
+        }
+        if (rowGroupReader.available() < 1) {
             return null;
         }
-        return Record.normalize(next, fieldInterceptor);
+        Group next = decode();
+        if (lazyRecords) {
+            return new LazyRecord(next, fieldInterceptor, utf8Views);
+        }
+        return normalize(next, new HashMap<>());
+    }
+
+    private Group decode() {
+        if (!metered) {
+            return rowGroupReader.read();
+        }
+        long start = System.nanoTime();
+        Group group = rowGroupReader.read();
+        metrics.recordDecoded(System.nanoTime() - start);
+        return group;
+    }
+
+    private Map<String, Object> normalize(Group group, Map<String, Object> target) {
+        if (!metered) {
+            return normalizer.normalize(group, target);
+        }
+        long start = System.nanoTime();
+        normalizer.normalize(group, target);
+        metrics.recordNormalized(System.nanoTime() - start);
+        return target;
+    }
+
+    /**
+     * Transform the column values of the records normalized since the last flush.
+     */
+    private void flush() {
+        if (!metered) {
+            normalizer.flush();
+            return;
+        }
+        long start = System.nanoTime();
+        int values = normalizer.flush();
+        if (values > 0) {
+            metrics.valuesIntercepted(values, System.nanoTime() - start);
+        }
+    }
+
+    private static FieldInterceptor metered(FieldInterceptor fieldInterceptor, Metrics metrics) {
+        return (field, value) -> {
+            long start = System.nanoTime();
+            String intercepted = fieldInterceptor.intercept(field, value);
+            metrics.valuesIntercepted(1, System.nanoTime() - start);
+            return intercepted;
+        };
+    }
+
+    /**
+     * Read up to n records from this stream of records into a new batch.
+     *
+     * @param n the maximum number of records to read
+     * @return a batch holding the records read, which is empty if the end of the stream has been reached.
+     * @throws IOException if an error occurs while reading.
+     */
+    public RecordBatch readBatch(int n) throws IOException {
+        return readBatch(new RecordBatch(n));
+    }
+
+    /**
+     * Read records from this stream of records into an existing batch, replacing its current content. At most
+     * {@link RecordBatch#capacity()} records are read. The list and the top level record maps of the batch are reused,
+     * except when the stream returns lazy records.
+     *
+     * @param batch the batch to read records into
+     * @return the given batch, which is empty if the end of the stream has been reached.
+     * @throws IOException if an error occurs while reading.
+     */
+    public RecordBatch readBatch(RecordBatch batch) throws IOException {
+        batch.clear();
+        while (batch.remaining() > 0 && bufferedPosition < buffered.size()) {
+            batch.add(buffered.set(bufferedPosition++, null));
+        }
+        long available;
+        while (batch.remaining() > 0 && (available = rowGroupReader.available()) > 0) {
+            long n = Math.min(available, batch.remaining());
+            for (long i = 0; i < n; i++) {
+                if (lazyRecords) {
+                    batch.add(new LazyRecord(decode(), fieldInterceptor, utf8Views));
+                } else {
+                    normalize(decode(), batch.add());
+                }
+            }
+        }
+        flush();
+        return batch;
+    }
+
+    /**
+     * Read the next batch of records into the buffer that {@link #read()} serves records from when column values are
+     * transformed in batches.
+     *
+     * @return false if the end of the stream has been reached
+     */
+    private boolean fillBuffer() throws IOException {
+        buffered.clear();
+        bufferedPosition = 0;
+        long available;
+        while (buffered.size() < columnBatchSize && (available = rowGroupReader.available()) > 0) {
+            long n = Math.min(available, columnBatchSize - buffered.size());
+            for (long i = 0; i < n; i++) {
+                buffered.add(normalize(decode(), new HashMap<>()));
+            }
+        }
+        flush();
+        return !buffered.isEmpty();
     }
 
     @Override
     public void close() {
         try {
             rowGroupReader.close();
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new RuntimeException("Error when closing RecordStream reader", e);
         }
     }
@@ -56,14 +230,37 @@ public class RecordStream implements AutoCloseable {
     }
 
     public static class Builder {
-        private FieldInterceptor fieldInterceptor = FieldInterceptor.noOp();
+        private FieldInterceptor fieldInterceptor;
+        private FieldInterceptorCache fieldInterceptorCache;
+        private ColumnInterceptor columnInterceptor;
+        private int columnBatchSize = 1024;
         private Set<String> fieldSelectors = new HashSet<>();
+        private boolean lazyRecords = false;
+        private boolean utf8Views = false;
+        private boolean dictionaryInterception = false;
+        private long rowRangeFrom = 0;
+        private long rowRangeTo = Long.MAX_VALUE;
+        private String rowFilterColumn;
+        private Predicate<String> rowFilter;
+        private Metrics metrics = Metrics.noOp();
+        private ByteBufferAllocator allocator;
+        private boolean concurrentChunkReads = false;
         private final SeekableByteChannel file;
+        private String fileName;
 
         public Builder(SeekableByteChannel file) {
             this.file = file;
         }
 
+        /**
+         * The name of the file, e.g. its path, which identifies it in the JFR events of the stream. Left empty if not
+         * given.
+         */
+        public Builder withFileName(String fileName) {
+            this.fileName = fileName;
+            return this;
+        }
+
         public Builder withFieldSelectors(Set<String> globPatterns) {
             this.fieldSelectors = globPatterns;
             return this;
@@ -74,55 +271,465 @@ public class RecordStream implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Memoize the results of the field interceptor in the given cache. The same cache can be passed to several
+         * streams, also streams that are read in parallel, as long as they use the same field interceptor. Use the
+         * cache to inspect its hit rate.
+         */
+        public Builder withFieldInterceptorCache(FieldInterceptorCache fieldInterceptorCache) {
+            this.fieldInterceptorCache = fieldInterceptorCache;
+            return this;
+        }
+
+        /**
+         * Transform column values in batches. The column interceptor is applied after the field interceptor, and is
+         * resolved once per column when the stream is built. {@link RecordStream#read()} reads ahead up to
+         * {@link #withColumnBatchSize(int)} records to fill the batches, while {@link RecordStream#readBatch(RecordBatch)}
+         * transforms the values of each batch it reads.
+         */
+        public Builder withColumnInterceptor(ColumnInterceptor columnInterceptor) {
+            this.columnInterceptor = columnInterceptor;
+            return this;
+        }
+
+        /**
+         * The number of records {@link RecordStream#read()} reads ahead when a column interceptor is used. Defaults to
+         * 1024.
+         */
+        public Builder withColumnBatchSize(int columnBatchSize) {
+            if (columnBatchSize < 1) {
+                throw new IllegalArgumentException("Column batch size must be positive. Got: " + columnBatchSize);
+            }
+            this.columnBatchSize = columnBatchSize;
+            return this;
+        }
+
+        /**
+         * Return records as {@link LazyRecord} views that only decode and intercept the fields that are accessed. Use
+         * {@link LazyRecord#materialize()} to get a plain copy of a record. Can't be combined with a column interceptor.
+         */
+        public Builder withLazyRecords(boolean lazyRecords) {
+            this.lazyRecords = lazyRecords;
+            return this;
+        }
+
+        /**
+         * Return binary values as {@link Utf8String} views of their bytes, rather than decoding every value to a
+         * String. Views that are only written or hashed are never decoded. The views share their bytes with the page
+         * they were read from, unless an allocator is set, in which case they hold a copy.
+         * <p></p>
+         * Interceptors work on decoded strings, so views can't be combined with a field interceptor, a column
+         * interceptor or dictionary interception.
+         */
+        public Builder withUtf8Views(boolean utf8Views) {
+            this.utf8Views = utf8Views;
+            return this;
+        }
+
+        /**
+         * Intercept dictionary-encoded string columns once per distinct value rather than once per value. For every row
+         * group, the field interceptor and column interceptor are applied to the dictionary of each column chunk whose
+         * data pages are all dictionary-encoded, and records are assembled from the intercepted dictionaries. Other
+         * column chunks are intercepted value by value as usual.
+         * <p></p>
+         * Interceptors must be pure functions of their input for this to be transparent, since a value is intercepted
+         * once per row group it occurs in rather than once per occurrence. Can't be combined with lazy records.
+         */
+        public Builder withDictionaryInterception(boolean dictionaryInterception) {
+            this.dictionaryInterception = dictionaryInterception;
+            return this;
+        }
+
+        /**
+         * Report bytes read, row groups read and skipped, pages decompressed, and time spent decoding, normalizing and
+         * intercepting records to the given metrics. Nothing is measured by default.
+         */
+        public Builder withMetrics(Metrics metrics) {
+            this.metrics = Objects.requireNonNull(metrics);
+            return this;
+        }
+
+        /**
+         * Allocate the buffers that column chunks are read into with the given allocator, e.g. a shared
+         * {@link PooledByteBufferAllocator}. The buffers of a row group are released when the stream moves on to the
+         * next row group, and when it is closed. Can't be combined with lazy records, as they refer to the buffers of
+         * their row group. By default, every column chunk is read into a new heap buffer.
+         */
+        public Builder withAllocator(ByteBufferAllocator allocator) {
+            this.allocator = allocator;
+            return this;
+        }
+
+        /**
+         * Read the column chunks of each row group concurrently, rather than one after the other, which pays off when
+         * many columns are read from storage with high latency. Requires a channel that can be read at a position
+         * without moving it, like a {@link java.nio.channels.FileChannel}, and is ignored for other channels.
+         * <p></p>
+         * Streams over such channels keep a position of their own regardless of this option, so any number of streams
+         * can share the same channel and be read in parallel.
+         */
+        public Builder withConcurrentChunkReads(boolean concurrentChunkReads) {
+            this.concurrentChunkReads = concurrentChunkReads;
+            return this;
+        }
+
+        /**
+         * Only read the records from row index from (inclusive) to row index to (exclusive), see
+         * {@link RecordStream#seek(long)}. E.g. withRowRange(4_000_000, 4_000_100) reads 100 records.
+         */
+        public Builder withRowRange(long from, long to) {
+            if (from < 0 || to < from) {
+                throw new IllegalArgumentException("Invalid row range. Got: [" + from + ", " + to + ")");
+            }
+            this.rowRangeFrom = from;
+            this.rowRangeTo = to;
+            return this;
+        }
+
+        /**
+         * Only read the records whose value in the column that the glob matches satisfies the predicate. The column
+         * is decoded first, on its own, and the other columns are then only decoded for the matching rows. Pages that
+         * don't hold any matching row are dropped without being decoded when the file has offset indexes, and row
+         * groups without any matching row are not assembled at all. This pays off for selective predicates over wide
+         * projections.
+         * <p></p>
+         * The column doesn't have to be one of the selected fields. Values are tested as the strings records hold them,
+         * and missing values are tested as null. A row of a repeated column matches if any of its values does.
+         * {@link RecordStream#seek(long)} and {@link #withRowRange(long, long)} still count all rows of the file.
+         */
+        public Builder withRowFilter(String columnGlobPattern, Predicate<String> predicate) {
+            this.rowFilterColumn = Objects.requireNonNull(columnGlobPattern);
+            this.rowFilter = Objects.requireNonNull(predicate);
+            return this;
+        }
+
         public RecordStream build() throws IOException {
-            return new RecordStream(file, fieldSelectors, fieldInterceptor);
+            if (lazyRecords && columnInterceptor != null) {
+                throw new IllegalStateException("Lazy records can't be combined with a column interceptor");
+            }
+            if (lazyRecords && dictionaryInterception) {
+                throw new IllegalStateException("Lazy records can't be combined with dictionary interception");
+            }
+            if (lazyRecords && allocator != null) {
+                throw new IllegalStateException("Lazy records can't be combined with an allocator");
+            }
+            if (utf8Views && (fieldInterceptor != null || fieldInterceptorCache != null)) {
+                throw new IllegalStateException("UTF-8 views can't be combined with a field interceptor");
+            }
+            if (utf8Views && columnInterceptor != null) {
+                throw new IllegalStateException("UTF-8 views can't be combined with a column interceptor");
+            }
+            if (utf8Views && dictionaryInterception) {
+                throw new IllegalStateException("UTF-8 views can't be combined with dictionary interception");
+            }
+            return new RecordStream(this);
         }
     }
 
     static class DataStreamRowGroupReader implements AutoCloseable {
 
-        private final ParquetFileReader fileReader;
+        private final SeekableByteChannel file;
+        private final SeekableByteChannel input;
+        private final String fileName;
+        private final Metrics metrics;
+        private final ByteBufferAllocator allocator;
+        private final List<BlockMetaData> blocks;
+        private final long[] firstRows;
+        private final long rowCount;
         private final MessageColumnIO columnIO;
+        private final MessageType fileSchema;
+        private final Set<String> fieldSelectors;
         private final MessageType schema;
+        private MessageType readSchema;
+        private Set<ColumnPath> columnPaths;
+        private SeekableByteChannelInputFile inputFile;
+        private ParquetFileReader fileReader;
+        private RowGroupBuffers buffers;
+        private boolean concurrentChunkReads;
+        private DictionaryInterceptor dictionaryInterceptor;
+        private RowFilter rowFilter;
+        private long[] selectedRows;
+        private int selectedIndex;
+        private long groupRow;
         private RecordReader<Group> groupReader;
+        private RowGroupReadEvent event;
         private long groupsRemaining;
+        private int rowGroupIndex;
+        private long position;
+        private long end = Long.MAX_VALUE;
 
-        DataStreamRowGroupReader(SeekableByteChannel file, Set<String> fieldSelectors) throws IOException {
-            this.fileReader = ParquetFileReader.open(new SeekableByteChannelInputFile(file));
-            PageReadStore rowGroup = this.fileReader.readNextRowGroup();
-            if (rowGroup == null) {
+        DataStreamRowGroupReader(SeekableByteChannel file, String fileName, Set<String> fieldSelectors, Metrics metrics, ByteBufferAllocator allocator) throws IOException {
+            this.file = file;
+            this.fileName = fileName != null ? fileName : "";
+            this.input = Metrics.isEnabled(metrics) ? new MeteredChannel(file, metrics) : file;
+            this.metrics = metrics;
+            this.allocator = allocator;
+            this.fileReader = open();
+            if (this.fileReader.getRowGroups().isEmpty()) {
                 throw new RuntimeException("No row groups found in file");
             }
-            MessageType schema = this.fileReader.getFileMetaData().getSchema();
+            this.blocks = fileReader.getRowGroups();
+            this.firstRows = new long[blocks.size()];
+            long rows = 0;
+            for (int i = 0; i < blocks.size(); i++) {
+                firstRows[i] = rows;
+                rows += blocks.get(i).getRowCount();
+            }
+            this.rowCount = rows;
+            this.fileSchema = this.fileReader.getFileMetaData().getSchema();
+            this.fieldSelectors = fieldSelectors;
+            MessageType schema = fileSchema;
             if (!fieldSelectors.isEmpty()) {
                 schema = Schema.createProjection(schema, fieldSelectors);
             }
             this.schema = schema;
+            this.readSchema = schema;
+            this.fileReader.setRequestedSchema(schema);
+            this.columnPaths = RowGroupReadEvent.columnPaths(schema);
             this.columnIO = new ColumnIOFactory().getColumnIO(schema);
-            this.groupReader = columnIO.getRecordReader(rowGroup, new GroupRecordConverter(schema));
-            this.groupsRemaining = rowGroup.getRowCount();
         }
 
-        Group next() throws IOException {
-            if (groupsRemaining < 1) {
+        /**
+         * The channel is left open when the reader is closed, so the file can be opened again when seeking backwards.
+         */
+        private ParquetFileReader open() throws IOException {
+            ParquetReadOptions.Builder options = ParquetReaders.readOptions(metrics);
+            if (allocator != null) {
+                buffers = new RowGroupBuffers(allocator);
+                options.withAllocator(buffers);
+            }
+            inputFile = new SeekableByteChannelInputFile(input, false);
+            return ParquetReaders.open(inputFile, options.build());
+        }
+
+        /**
+         * Release the buffers of the current row group, if they were allocated by the allocator of the stream.
+         */
+        private void releaseBuffers() {
+            if (buffers != null) {
+                buffers.releaseAll();
+            }
+        }
+
+        /**
+         * Intercept the dictionaries of the row groups read from now on, see {@link DictionaryInterceptor}.
+         */
+        void setDictionaryInterceptor(DictionaryInterceptor dictionaryInterceptor) {
+            this.dictionaryInterceptor = dictionaryInterceptor;
+        }
+
+        MessageType fileSchema() {
+            return fileSchema;
+        }
+
+        /**
+         * Only read the rows that match the filter from now on. The filter column is read along with the projection,
+         * whether or not it is part of it.
+         */
+        void setRowFilter(RowFilter rowFilter) {
+            this.rowFilter = rowFilter;
+            if (!fieldSelectors.isEmpty()) {
+                Set<String> patterns = new HashSet<>(fieldSelectors);
+                patterns.add(rowFilter.columnGlobPattern());
+                this.readSchema = Schema.createProjection(fileSchema, patterns);
+                this.fileReader.setRequestedSchema(readSchema);
+                this.columnPaths = RowGroupReadEvent.columnPaths(readSchema);
+            }
+        }
+
+        void setConcurrentChunkReads(boolean concurrentChunkReads) {
+            this.concurrentChunkReads = concurrentChunkReads;
+        }
+
+        /**
+         * Stop reading before the given row.
+         */
+        void setEnd(long end) {
+            this.end = end;
+        }
+
+        /**
+         * Position the reader so that the next record read is the given row. Row groups before the row are skipped
+         * using the row counts in the footer, and the row group holding the row is read from the first page that holds
+         * it. Seeking backwards opens the file again.
+         */
+        void seek(long row) throws IOException {
+            if (row < 0) {
+                throw new IllegalArgumentException("Row index must not be negative. Got: " + row);
+            }
+            position = Math.min(row, rowCount);
+            groupsRemaining = 0;
+            groupReader = null;
+            selectedRows = null;
+            finishEvent();
+            if (position == rowCount) {
+                return;
+            }
+            int block = blockOf(position);
+            if (block < rowGroupIndex) {
+                fileReader.close();
+                releaseBuffers();
+                fileReader = open();
+                fileReader.setRequestedSchema(readSchema);
+                rowGroupIndex = 0;
+            }
+            while (rowGroupIndex < block) {
+                fileReader.skipNextRowGroup();
+                metrics.rowGroupSkipped(blocks.get(rowGroupIndex++).getRowCount());
+            }
+        }
+
+        private int blockOf(long row) {
+            int block = Arrays.binarySearch(firstRows, row);
+            if (block < 0) {
+                return -block - 2;
+            }
+            //Skip past empty row groups starting at the same row
+            while (block + 1 < firstRows.length && firstRows[block + 1] == row) {
+                block++;
+            }
+            return block;
+        }
+
+        /**
+         * Move on to the next non-empty row group if the current one is exhausted.
+         *
+         * @return the number of records left in the current row group, or 0 if there are no more records.
+         */
+        long available() throws IOException {
+            while (groupsRemaining < 1) {
+                finishEvent();
+                if (position >= Math.min(end, rowCount)) {
+                    return 0;
+                }
+                RowGroupReadEvent event = RowGroupReadEvent.start();
+                releaseBuffers();
+                if (concurrentChunkReads && rowGroupIndex < blocks.size()) {
+                    prefetch(blocks.get(rowGroupIndex));
+                }
                 PageReadStore rowGroup = fileReader.readNextRowGroup();
                 if (rowGroup == null) {
-                    return null;
+                    if (event != null) {
+                        event.notFound(fileName, rowGroupIndex);
+                    }
+                    return 0;
+                }
+                BlockMetaData block = blocks.get(rowGroupIndex);
+                metrics.rowGroupRead(block.getRowCount());
+                long from = position - firstRows[rowGroupIndex];
+                long to = Math.min(end - firstRows[rowGroupIndex], block.getRowCount());
+                int index = rowGroupIndex++;
+
+                long skip = 0;
+                selectedRows = null;
+                if (rowFilter != null) {
+                    RowFilter.BufferedPageReadStore buffered = rowFilter.buffer(rowGroup);
+                    long[] rows = rowFilter.matchingRows(buffered, fileReader.getFooter().getFileMetaData().getCreatedBy(), from, to);
+                    //Records are read from the matching rows only, so the position moves past the range at once
+                    position = firstRows[index] + to;
+                    if (rows.length == 0) {
+                        //The row group was read to evaluate the filter, but no records are decoded from it
+                        if (event != null) {
+                            event.opened(fileName, index, block, columnPaths);
+                            event.finish();
+                        }
+                        continue;
+                    }
+                    PageReadStore rowSet = RowSetPageReadStore.create(fileReader, block, buffered, schema, rows);
+                    if (rowSet != null) {
+                        rowGroup = rowSet;
+                    } else { //Without offset indexes, the rows between the matching rows have to be read and thrown away
+                        rowGroup = buffered;
+                        selectedRows = rows;
+                        selectedIndex = 0;
+                        groupRow = 0;
+                    }
+                    from = 0;
+                    to = rows.length;
+                } else if (from > 0) {
+                    PageReadStore rowRange = RowRangePageReadStore.create(fileReader, block, rowGroup, schema, from, to);
+                    if (rowRange != null) {
+                        rowGroup = rowRange;
+                    } else { //Without offset indexes, the rows before the range have to be read and thrown away
+                        skip = from;
+                    }
+                }
+                if (dictionaryInterceptor != null) {
+                    rowGroup = dictionaryInterceptor.intercept(block, rowGroup);
                 }
                 groupReader = columnIO.getRecordReader(rowGroup, new GroupRecordConverter(schema));
-                groupsRemaining = rowGroup.getRowCount();
-                if (groupsRemaining < 1) {
-                    return null;
+                for (long i = 0; i < skip; i++) {
+                    groupReader.read();
+                }
+                groupsRemaining = to - from;
+                if (event != null) {
+                    event.opened(fileName, index, block, columnPaths);
+                    this.event = event;
                 }
             }
-            Group next = groupReader.read();
+            return groupsRemaining;
+        }
+
+        /**
+         * Read the projected column chunks of the row group concurrently, before the file reader reads them one by one.
+         */
+        private void prefetch(BlockMetaData block) throws IOException {
+            List<ColumnChunkMetaData> chunks = new ArrayList<>();
+            for (ColumnChunkMetaData chunk : block.getColumns()) {
+                if (columnPaths.contains(chunk.getPath())) {
+                    chunks.add(chunk);
+                }
+            }
+            //A single chunk is read as fast by the file reader itself
+            inputFile.prefetch(chunks.size() > 1 ? chunks : List.of(), buffers != null ? buffers : new HeapByteBufferAllocator());
+        }
+
+        /**
+         * Commit the event of the current row group, if any, when it has been read or is abandoned.
+         */
+        private void finishEvent() {
+            if (event != null) {
+                event.finish();
+                event = null;
+            }
+        }
+
+        /**
+         * Read the next record of the current row group. Callers must make sure that {@link #available()} is positive.
+         */
+        Group read() {
             groupsRemaining--;
-            return next;
+            if (rowFilter == null) {
+                position++;
+            }
+            if (event == null) {
+                return readRecord();
+            }
+            long start = System.nanoTime();
+            Group group = readRecord();
+            event.decoded(System.nanoTime() - start);
+            return group;
+        }
+
+        private Group readRecord() {
+            if (selectedRows != null) {
+                for (long row = selectedRows[selectedIndex++]; groupRow < row; groupRow++) {
+                    groupReader.read();
+                }
+                groupRow++;
+            }
+            return groupReader.read();
         }
 
         @Override
-        public void close() throws Exception {
-            this.fileReader.close();
+        public void close() throws IOException {
+            finishEvent();
+            try {
+                this.fileReader.close();
+            } finally {
+                releaseBuffers();
+                this.file.close();
+            }
         }
     }
 }
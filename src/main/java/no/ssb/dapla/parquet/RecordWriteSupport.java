@@ -0,0 +1,285 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * RecordWriteSupport writes records held in memory to parquet, without going through json. Records are either maps in
+ * the shape that {@link Record#normalize(org.apache.parquet.example.data.Group)} produces, or objects that are read
+ * through a {@link RecordPlan}.
+ * <p></p>
+ * Records are written in schema order, so the order of map entries doesn't matter. Lists are {@link Collection}s, and
+ * the values of primitive fields are converted to the physical type of the field: numbers and booleans are written as
+ * is, and strings are parsed, as normalized records hold all values as strings. Binary fields take strings,
+ * {@link Utf8String}s and byte arrays.
+ */
+class RecordWriteSupport<T> extends WriteSupport<T> {
+
+    private final MessageType schema;
+    private final GroupWriter root;
+    private RecordConsumer recordConsumer;
+
+    /**
+     * @param plan the plan of the records, or null if the records are maps
+     */
+    RecordWriteSupport(MessageType schema, RecordPlan<T> plan) {
+        this.schema = schema;
+        this.root = groupWriter(schema, plan);
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+        return new WriteContext(schema, new HashMap<>());
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        this.recordConsumer = recordConsumer;
+    }
+
+    @Override
+    public void write(T record) {
+        recordConsumer.startMessage();
+        root.writeFields(recordConsumer, record);
+        recordConsumer.endMessage();
+    }
+
+    /**
+     * Create a builder for a writer of records to any {@link OutputFile}, configured like
+     * {@link JsonParquetWriter#builder(OutputFile, MessageType)}.
+     */
+    static <T> Builder<T> builder(OutputFile file, MessageType schema, RecordPlan<T> plan) {
+        return new Builder<>(file, schema, plan)
+                .withCompressionCodec(CompressionCodecName.SNAPPY)
+                .withDictionaryEncoding(true)
+                .withValidation(true);
+    }
+
+    static class Builder<T> extends ParquetWriter.Builder<T, Builder<T>> {
+        private final MessageType schema;
+        private final RecordPlan<T> plan;
+
+        private Builder(OutputFile file, MessageType schema, RecordPlan<T> plan) {
+            super(file);
+            this.schema = schema;
+            this.plan = plan;
+        }
+
+        @Override
+        protected Builder<T> self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<T> getWriteSupport(Configuration conf) {
+            return new RecordWriteSupport<>(schema, plan);
+        }
+    }
+
+    private static GroupWriter groupWriter(GroupType type, RecordPlan<?> plan) {
+        return plan != null ? new PlanWriter(type, plan) : new MapWriter(type);
+    }
+
+    /**
+     * Writes the fields of a group, i.e. the content between the start and the end of the group.
+     */
+    private interface GroupWriter {
+        void writeFields(RecordConsumer recordConsumer, Object group);
+    }
+
+    /**
+     * Writes a group from a map keyed on field name.
+     */
+    private static class MapWriter implements GroupWriter {
+        private final GroupType type;
+        private final FieldWriter[] fields;
+
+        private MapWriter(GroupType type) {
+            this.type = type;
+            this.fields = new FieldWriter[type.getFieldCount()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = new FieldWriter(type, i, null);
+            }
+        }
+
+        @Override
+        public void writeFields(RecordConsumer recordConsumer, Object group) {
+            if (!(group instanceof Map)) {
+                throw new IllegalArgumentException("Expected a map for group %s. Got: %s".formatted(type.getName(), group.getClass().getName()));
+            }
+            Map<?, ?> map = (Map<?, ?>) group;
+            for (FieldWriter field : fields) {
+                field.write(recordConsumer, map.get(field.name));
+            }
+        }
+    }
+
+    /**
+     * Writes a group from an object, through the accessors of a plan. The fields of the plan are resolved against the
+     * schema once, and sorted in schema order.
+     */
+    private static class PlanWriter implements GroupWriter {
+        private final FieldWriter[] fields;
+        private final List<Function<Object, ?>> accessors;
+
+        private PlanWriter(GroupType type, RecordPlan<?> plan) {
+            RecordPlan.Field[] sorted = plan.fields().toArray(new RecordPlan.Field[0]);
+            for (RecordPlan.Field field : sorted) {
+                if (!type.containsField(field.name)) {
+                    throw new IllegalArgumentException("Field %s of the plan isn't in group %s".formatted(field.name, type.getName()));
+                }
+            }
+            Arrays.sort(sorted, Comparator.comparingInt(field -> type.getFieldIndex(field.name)));
+            this.fields = new FieldWriter[sorted.length];
+            this.accessors = new ArrayList<>(sorted.length);
+            for (int i = 0; i < sorted.length; i++) {
+                fields[i] = new FieldWriter(type, type.getFieldIndex(sorted[i].name), sorted[i].plan);
+                accessors.add(sorted[i].accessor);
+            }
+        }
+
+        @Override
+        public void writeFields(RecordConsumer recordConsumer, Object group) {
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].write(recordConsumer, accessors.get(i).apply(group));
+            }
+        }
+    }
+
+    /**
+     * Writes a field of a group. Lists are groups with a single repeated field named 'array', like in
+     * {@link RecordNormalizer}.
+     */
+    private static class FieldWriter {
+        private final String name;
+        private final int index;
+        private final boolean list;
+        private final boolean repeated;
+        private final Type valueType;
+        private final GroupWriter groupWriter;
+
+        private FieldWriter(GroupType parent, int index, RecordPlan<?> plan) {
+            Type type = parent.getType(index);
+            this.name = type.getName();
+            this.index = index;
+            this.list = !type.isPrimitive() && "array".equals(type.asGroupType().getFields().get(0).getName());
+            this.valueType = list ? type.asGroupType().getType(0) : type;
+            this.repeated = !list && type.isRepetition(Type.Repetition.REPEATED);
+            if (valueType.isPrimitive() && plan != null) {
+                throw new IllegalArgumentException("Field %s is primitive, and can't be written with a plan".formatted(name));
+            }
+            this.groupWriter = valueType.isPrimitive() ? null : groupWriter(valueType.asGroupType(), plan);
+        }
+
+        private void write(RecordConsumer recordConsumer, Object value) {
+            if (value == null || repeated && elements(value).isEmpty()) {
+                return;
+            }
+            recordConsumer.startField(name, index);
+            if (list) {
+                recordConsumer.startGroup();
+                Collection<?> elements = elements(value);
+                //An empty list is a list group without the 'array' field
+                if (!elements.isEmpty()) {
+                    recordConsumer.startField("array", 0);
+                    for (Object element : elements) {
+                        writeValue(recordConsumer, element);
+                    }
+                    recordConsumer.endField("array", 0);
+                }
+                recordConsumer.endGroup();
+            } else if (repeated) {
+                for (Object element : elements(value)) {
+                    writeValue(recordConsumer, element);
+                }
+            } else {
+                writeValue(recordConsumer, value);
+            }
+            recordConsumer.endField(name, index);
+        }
+
+        private Collection<?> elements(Object value) {
+            if (!(value instanceof Collection)) {
+                throw new IllegalArgumentException("Expected a collection for field %s. Got: %s".formatted(name, value.getClass().getName()));
+            }
+            return (Collection<?>) value;
+        }
+
+        private void writeValue(RecordConsumer recordConsumer, Object value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Elements of field %s can't be null".formatted(name));
+            }
+            if (groupWriter != null) {
+                recordConsumer.startGroup();
+                groupWriter.writeFields(recordConsumer, value);
+                recordConsumer.endGroup();
+                return;
+            }
+            PrimitiveType type = valueType.asPrimitiveType();
+            switch (type.getPrimitiveTypeName()) {
+                case BOOLEAN -> recordConsumer.addBoolean(value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString()));
+                case INT32 -> recordConsumer.addInteger(intValue(value));
+                case INT64 -> recordConsumer.addLong(longValue(value));
+                case FLOAT -> recordConsumer.addFloat(value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString()));
+                case DOUBLE -> recordConsumer.addDouble(value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString()));
+                default -> recordConsumer.addBinary(binary(value));
+            }
+        }
+
+        private int intValue(Object value) {
+            long longValue = longValue(value);
+            if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Value of field %s is out of range for INT32. Got: %s".formatted(name, value));
+            }
+            return (int) longValue;
+        }
+
+        /**
+         * Integral values are written as they are, while values that have a fraction, or that don't fit in a long,
+         * fail rather than being truncated.
+         */
+        private long longValue(Object value) {
+            try {
+                if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    return ((Number) value).longValue();
+                } else if (value instanceof Number) {
+                    return new BigDecimal(value.toString()).longValueExact();
+                }
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException("Value of field %s is not an integer in range for %s. Got: %s".formatted(name, valueType.asPrimitiveType().getPrimitiveTypeName(), value), e);
+            }
+        }
+    }
+
+    private static Binary binary(Object value) {
+        if (value instanceof byte[]) {
+            //The array belongs to the caller, who may reuse it, so dictionaries must copy it
+            return Binary.fromReusedByteArray((byte[]) value);
+        } else if (value instanceof Utf8String) {
+            return ((Utf8String) value).toBinary();
+        } else if (value instanceof Binary) {
+            return (Binary) value;
+        }
+        return Binary.fromString(value.toString());
+    }
+}
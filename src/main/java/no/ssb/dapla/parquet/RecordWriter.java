@@ -0,0 +1,96 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * RecordWriter writes records that are already in memory to a parquet file, without serializing them to json first.
+ * <p></p>
+ * Records are either maps in the shape that {@link RecordStream} returns, i.e. nested maps and lists of values, or
+ * objects of any type that are written through a {@link RecordPlan}. See {@link RecordWriteSupport} for how values
+ * are converted to the types of the schema. Like the json writers of {@link File}, the writer is registered with a
+ * {@link WriterMemoryManager} while it is open.
+ *
+ * @param <T> the type of records written
+ */
+public class RecordWriter<T> implements AutoCloseable {
+
+    private final MeteredWriter<T> writer;
+
+    private RecordWriter(Builder<T> builder) throws IOException {
+        this.writer = new MeteredWriter<>(builder.path, file -> RecordWriteSupport.builder(file, builder.schema, builder.plan),
+                builder.metrics, builder.memoryManager);
+    }
+
+    /**
+     * @throws IOException if an error occurs while flushing a row group to the file.
+     */
+    public void write(T record) throws IOException {
+        writer.write(Objects.requireNonNull(record));
+    }
+
+    /**
+     * Flush the last row group and write the footer of the file.
+     *
+     * @throws IOException if an error occurs while writing to the file.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Create a builder for a writer of records as maps keyed on field name.
+     */
+    public static Builder<Map<String, Object>> builder(Path path, MessageType schema) {
+        return new Builder<>(path, schema, null);
+    }
+
+    /**
+     * Create a builder for a writer of objects that are read through the given plan.
+     */
+    public static <T> Builder<T> builder(Path path, MessageType schema, RecordPlan<T> plan) {
+        return new Builder<>(path, schema, Objects.requireNonNull(plan));
+    }
+
+    public static class Builder<T> {
+        private final Path path;
+        private final MessageType schema;
+        private final RecordPlan<T> plan;
+        private Metrics metrics = Metrics.noOp();
+        private WriterMemoryManager memoryManager = WriterMemoryManager.global();
+
+        private Builder(Path path, MessageType schema, RecordPlan<T> plan) {
+            this.path = Objects.requireNonNull(path);
+            this.schema = Objects.requireNonNull(schema);
+            this.plan = plan;
+        }
+
+        /**
+         * Report the records written and the row groups flushed to the given metrics. Nothing is measured by default.
+         */
+        public Builder<T> withMetrics(Metrics metrics) {
+            this.metrics = Objects.requireNonNull(metrics);
+            return this;
+        }
+
+        /**
+         * Share the given memory budget with other writers, rather than the global one.
+         */
+        public Builder<T> withMemoryManager(WriterMemoryManager memoryManager) {
+            this.memoryManager = Objects.requireNonNull(memoryManager);
+            return this;
+        }
+
+        /**
+         * @throws IOException if the file can't be created.
+         */
+        public RecordWriter<T> build() throws IOException {
+            return new RecordWriter<>(this);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.page.DataPage;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageReader;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+
+/**
+ * A row group whose page readers return the given dictionary pages instead of their own. Used when a dictionary page
+ * has been taken from a page reader, which only hands it out once, or has been replaced.
+ */
+class ReplacedDictionaryPageReadStore implements PageReadStore {
+
+    private final PageReadStore delegate;
+    private final Map<ColumnDescriptor, DictionaryPage> dictionaries;
+
+    ReplacedDictionaryPageReadStore(PageReadStore delegate, Map<ColumnDescriptor, DictionaryPage> dictionaries) {
+        this.delegate = delegate;
+        this.dictionaries = dictionaries;
+    }
+
+    @Override
+    public PageReader getPageReader(ColumnDescriptor descriptor) {
+        PageReader pageReader = delegate.getPageReader(descriptor);
+        DictionaryPage dictionary = dictionaries.get(descriptor);
+        if (dictionary == null) {
+            return pageReader;
+        }
+        return new PageReader() {
+            @Override
+            public DictionaryPage readDictionaryPage() {
+                return dictionary;
+            }
+
+            @Override
+            public long getTotalValueCount() {
+                return pageReader.getTotalValueCount();
+            }
+
+            @Override
+            public DataPage readPage() {
+                return pageReader.readPage();
+            }
+        };
+    }
+
+    @Override
+    public long getRowCount() {
+        return delegate.getRowCount();
+    }
+
+    @Override
+    public Optional<PrimitiveIterator.OfLong> getRowIndexes() {
+        return delegate.getRowIndexes();
+    }
+}
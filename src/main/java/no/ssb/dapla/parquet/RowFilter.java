@@ -0,0 +1,237 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.DataPage;
+import org.apache.parquet.column.page.DataPageV1;
+import org.apache.parquet.column.page.DataPageV2;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageReader;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.function.Predicate;
+
+/**
+ * RowFilter finds the rows of a row group whose value in a single column matches a predicate, by decoding only that
+ * column, see {@link RecordStream.Builder#withRowFilter(String, Predicate)}.
+ * <p></p>
+ * Values are tested as the strings records hold, and null values, including empty lists, are tested as null. A row of
+ * a repeated column matches if any of its values does.
+ */
+class RowFilter {
+
+    private final String columnGlobPattern;
+    private final MessageType schema;
+    private final ColumnDescriptor column;
+    private final GroupConverter converter;
+    private final Predicate<String> predicate;
+
+    /**
+     * @param schema the schema of the file
+     */
+    RowFilter(MessageType schema, String columnGlobPattern, Predicate<String> predicate) {
+        this.columnGlobPattern = columnGlobPattern;
+        this.schema = File.columnProjection(schema, columnGlobPattern);
+        this.column = this.schema.getColumns().get(0);
+        this.converter = new File.DiscardingConverter(this.schema);
+        this.predicate = predicate;
+    }
+
+    String columnGlobPattern() {
+        return columnGlobPattern;
+    }
+
+    ColumnDescriptor column() {
+        return column;
+    }
+
+    /**
+     * Buffer the pages of the filter column, so that they can be read both to filter the rows and to assemble
+     * records. The pages are decompressed once.
+     *
+     * @return a row group that reads the filter column from the buffered pages
+     */
+    BufferedPageReadStore buffer(PageReadStore rowGroup) throws IOException {
+        PageReader pageReader = rowGroup.getPageReader(column);
+        DictionaryPage dictionaryPage = pageReader.readDictionaryPage();
+        if (dictionaryPage != null) {
+            dictionaryPage = dictionaryPage.copy();
+        }
+        List<DataPage> pages = new ArrayList<>();
+        DataPage page;
+        while ((page = pageReader.readPage()) != null) {
+            pages.add(copy(page));
+        }
+        return new BufferedPageReadStore(rowGroup, column, dictionaryPage, pages, pageReader.getTotalValueCount());
+    }
+
+    /**
+     * The bytes of the pages handed out by page readers can only be relied on to be read once.
+     */
+    private static DataPage copy(DataPage page) {
+        return page.accept(new DataPage.Visitor<DataPage>() {
+            @Override
+            public DataPage visit(DataPageV1 page) {
+                try {
+                    return new DataPageV1(BytesInput.copy(page.getBytes()), page.getValueCount(), page.getUncompressedSize(),
+                            page.getStatistics(), page.getRlEncoding(), page.getDlEncoding(), page.getValueEncoding());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public DataPage visit(DataPageV2 page) {
+                try {
+                    return DataPageV2.uncompressed(page.getRowCount(), page.getNullCount(), page.getValueCount(),
+                            BytesInput.copy(page.getRepetitionLevels()), BytesInput.copy(page.getDefinitionLevels()),
+                            page.getDataEncoding(), BytesInput.copy(page.getData()), page.getStatistics());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Find the rows in [from, to) that match the predicate.
+     *
+     * @param rowGroup  a row group with buffered pages of the filter column
+     * @param createdBy the writer of the file
+     * @return the indexes of the matching rows, relative to the start of the row group, in ascending order
+     */
+    long[] matchingRows(BufferedPageReadStore rowGroup, String createdBy, long from, long to) {
+        PageReadStore filterColumn = new PageReadStore() {
+            @Override
+            public PageReader getPageReader(ColumnDescriptor descriptor) {
+                return rowGroup.newPageReader();
+            }
+
+            @Override
+            public long getRowCount() {
+                return rowGroup.getRowCount();
+            }
+        };
+        ColumnReader columnReader = new ColumnReadStoreImpl(filterColumn, converter, schema, createdBy).getColumnReader(column);
+        int maxDefinitionLevel = column.getMaxDefinitionLevel();
+        long[] rows = new long[16];
+        int size = 0;
+        long row = -1;
+        boolean matched = false;
+        long values = ParquetReaders.valueCount(filterColumn, column);
+        for (long i = 0; i < values; i++) {
+            if (columnReader.getCurrentRepetitionLevel() == 0) {
+                row++;
+                matched = false;
+                if (row >= to) {
+                    break;
+                }
+            }
+            boolean defined = columnReader.getCurrentDefinitionLevel() == maxDefinitionLevel;
+            if (row >= from && !matched) {
+                String value = defined ? value(columnReader) : null;
+                if (predicate.test(value)) {
+                    matched = true;
+                    if (size == rows.length) {
+                        rows = Arrays.copyOf(rows, size * 2);
+                    }
+                    rows[size++] = row;
+                }
+            } else if (defined) {
+                //Values that aren't read must be skipped, or the next value read is the one that wasn't
+                columnReader.skip();
+            }
+            columnReader.consume();
+        }
+        return Arrays.copyOf(rows, size);
+    }
+
+    /**
+     * The value as a string, like {@link org.apache.parquet.example.data.Group#getValueToString(int, int)}.
+     */
+    private String value(ColumnReader columnReader) {
+        return switch (column.getPrimitiveType().getPrimitiveTypeName()) {
+            case BOOLEAN -> String.valueOf(columnReader.getBoolean());
+            case INT32 -> String.valueOf(columnReader.getInteger());
+            case INT64 -> String.valueOf(columnReader.getLong());
+            case FLOAT -> String.valueOf(columnReader.getFloat());
+            case DOUBLE -> String.valueOf(columnReader.getDouble());
+            default -> columnReader.getBinary().toStringUsingUTF8();
+        };
+    }
+
+    /**
+     * A row group whose page reader of one column serves buffered pages. Every call to {@link #newPageReader()} reads
+     * the pages from the start, while {@link #getPageReader(ColumnDescriptor)} hands out the same reader every time.
+     */
+    static class BufferedPageReadStore implements PageReadStore {
+
+        private final PageReadStore delegate;
+        private final ColumnDescriptor column;
+        private final DictionaryPage dictionaryPage;
+        private final List<DataPage> pages;
+        private final long totalValueCount;
+        private PageReader pageReader;
+
+        private BufferedPageReadStore(PageReadStore delegate, ColumnDescriptor column, DictionaryPage dictionaryPage, List<DataPage> pages, long totalValueCount) {
+            this.delegate = delegate;
+            this.column = column;
+            this.dictionaryPage = dictionaryPage;
+            this.pages = pages;
+            this.totalValueCount = totalValueCount;
+        }
+
+        PageReader newPageReader() {
+            return new PageReader() {
+                private int next;
+
+                @Override
+                public DictionaryPage readDictionaryPage() {
+                    return dictionaryPage;
+                }
+
+                @Override
+                public long getTotalValueCount() {
+                    return totalValueCount;
+                }
+
+                @Override
+                public DataPage readPage() {
+                    return next < pages.size() ? pages.get(next++) : null;
+                }
+            };
+        }
+
+        @Override
+        public PageReader getPageReader(ColumnDescriptor descriptor) {
+            if (!descriptor.equals(column)) {
+                return delegate.getPageReader(descriptor);
+            }
+            if (pageReader == null) {
+                pageReader = newPageReader();
+            }
+            return pageReader;
+        }
+
+        @Override
+        public long getRowCount() {
+            return delegate.getRowCount();
+        }
+
+        @Override
+        public Optional<PrimitiveIterator.OfLong> getRowIndexes() {
+            return delegate.getRowIndexes();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.bytes.ByteBufferAllocator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RowGroupBuffers keeps track of the buffers a {@link org.apache.parquet.hadoop.ParquetFileReader} allocates for the
+ * column chunks of a row group, as the reader never releases them. They are released to the underlying allocator when
+ * the reader moves on to the next row group or is closed, which is safe as long as no values of the row group are
+ * referenced by then. Values that are normalized into records are copies, but the values of lazy records aren't.
+ */
+class RowGroupBuffers implements ByteBufferAllocator {
+
+    private final ByteBufferAllocator allocator;
+    private final List<ByteBuffer> allocated = new ArrayList<>();
+
+    RowGroupBuffers(ByteBufferAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    @Override
+    public ByteBuffer allocate(int size) {
+        ByteBuffer buffer = allocator.allocate(size);
+        allocated.add(buffer);
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        //Buffers are compared by identity, as ByteBuffer.equals compares their content
+        for (int i = 0; i < allocated.size(); i++) {
+            if (allocated.get(i) == buffer) {
+                allocated.remove(i);
+                allocator.release(buffer);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Release all buffers allocated so far.
+     */
+    void releaseAll() {
+        for (ByteBuffer buffer : allocated) {
+            allocator.release(buffer);
+        }
+        allocated.clear();
+    }
+
+    @Override
+    public boolean isDirect() {
+        return allocator.isDirect();
+    }
+}
@@ -0,0 +1,288 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageWriter;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.compression.CompressionCodecFactory.BytesInputCompressor;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * RowGroupEncoder decodes the values of one or more row groups and encodes them again into a single row group, which
+ * is held in memory until it is written with a {@link ParquetFileWriter}. Values are moved from column readers to
+ * column writers one column at a time, without being assembled into records.
+ * <p></p>
+ * Pages are compressed as they are encoded. The dictionary page of a column, which column writers write last, is
+ * written before the data pages, as readers expect.
+ */
+class RowGroupEncoder {
+
+    private static final ParquetProperties PROPERTIES = ParquetProperties.builder().withDictionaryEncoding(true).build();
+
+    private final MessageType schema;
+    private final List<ColumnDescriptor> columns;
+    private final Map<ColumnDescriptor, BufferedPageWriter> pageWriters = new HashMap<>();
+    private final ColumnWriteStore writeStore;
+    private final ColumnWriter[] columnWriters;
+    private final String[] interceptedPaths;
+    private final FieldInterceptor fieldInterceptor;
+    private final GroupConverter converter;
+    private long rowCount;
+    private boolean flushed;
+
+    /**
+     * @param schema           the schema of the row groups, which may be a projection of the schema of a file
+     * @param codecFactory     the factory of the compressors of the pages
+     * @param codecs           the codec of each column
+     * @param intercepted      the binary columns whose values are passed through the field interceptor
+     * @param fieldInterceptor the interceptor of the values of the intercepted columns, which must not return null
+     */
+    RowGroupEncoder(MessageType schema, CompressionCodecFactory codecFactory, Function<ColumnDescriptor, CompressionCodecName> codecs,
+                    Set<ColumnDescriptor> intercepted, FieldInterceptor fieldInterceptor) {
+        this.schema = schema;
+        this.columns = schema.getColumns();
+        for (ColumnDescriptor column : columns) {
+            CompressionCodecName codec = codecs.apply(column);
+            pageWriters.put(column, new BufferedPageWriter(codec, codecFactory.getCompressor(codec)));
+        }
+        this.writeStore = PROPERTIES.newColumnWriteStore(schema, pageWriters::get);
+        this.columnWriters = new ColumnWriter[columns.size()];
+        this.interceptedPaths = new String[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            columnWriters[i] = writeStore.getColumnWriter(columns.get(i));
+            interceptedPaths[i] = intercepted.contains(columns.get(i)) ? File.columnPath(schema, columns.get(i)) : null;
+        }
+        this.fieldInterceptor = fieldInterceptor;
+        this.converter = new File.DiscardingConverter(schema);
+    }
+
+    /**
+     * Encode all rows of a row group, after the rows already encoded.
+     *
+     * @param rowGroup  a row group read with the schema of the encoder
+     * @param createdBy the writer of the file the row group was read from
+     */
+    void append(PageReadStore rowGroup, String createdBy) {
+        if (flushed) {
+            throw new IllegalStateException("Row group has been flushed");
+        }
+        ColumnReadStoreImpl readStore = new ColumnReadStoreImpl(rowGroup, converter, schema, createdBy);
+        ColumnReader[] columnReaders = new ColumnReader[columns.size()];
+        long[] valuesLeft = new long[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            columnReaders[i] = readStore.getColumnReader(columns.get(i));
+            valuesLeft[i] = ParquetReaders.valueCount(rowGroup, columns.get(i));
+        }
+        for (long row = 0; row < rowGroup.getRowCount(); row++) {
+            for (int i = 0; i < columns.size(); i++) {
+                valuesLeft[i] = encodeRow(columns.get(i), columnReaders[i], columnWriters[i], interceptedPaths[i], valuesLeft[i]);
+            }
+            writeStore.endRecord();
+        }
+        rowCount += rowGroup.getRowCount();
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of bytes held by the encoder, compressed pages as well as values that are still encoded
+     */
+    long bufferedSize() {
+        return writeStore.getBufferedSize();
+    }
+
+    /**
+     * Encode the last pages of every column. No more rows can be appended.
+     */
+    void flush() {
+        if (!flushed) {
+            writeStore.flush();
+            writeStore.close();
+            flushed = true;
+        }
+    }
+
+    /**
+     * Write the encoded rows as a row group of its own.
+     */
+    void writeRowGroup(ParquetFileWriter writer) throws IOException {
+        flush();
+        writer.startBlock(rowCount);
+        for (ColumnDescriptor column : columns) {
+            writeColumn(writer, column);
+        }
+        writer.endBlock();
+    }
+
+    /**
+     * Write the encoded values of a column as a column chunk of the current row group of the writer, e.g. among column
+     * chunks that are copied from another file.
+     */
+    void writeColumn(ParquetFileWriter writer, ColumnDescriptor column) throws IOException {
+        flush();
+        pageWriters.get(column).writeTo(writer, column);
+    }
+
+    /**
+     * Encode the values of a column that belong to the current row, i.e. values up to the next value with repetition
+     * level 0.
+     *
+     * @return the number of values left in the column chunk
+     */
+    private long encodeRow(ColumnDescriptor column, ColumnReader columnReader, ColumnWriter columnWriter, String interceptedPath, long valuesLeft) {
+        int maxDefinitionLevel = column.getMaxDefinitionLevel();
+        do {
+            int repetitionLevel = columnReader.getCurrentRepetitionLevel();
+            int definitionLevel = columnReader.getCurrentDefinitionLevel();
+            if (definitionLevel < maxDefinitionLevel) {
+                columnWriter.writeNull(repetitionLevel, definitionLevel);
+            } else {
+                switch (column.getPrimitiveType().getPrimitiveTypeName()) {
+                    case BOOLEAN -> columnWriter.write(columnReader.getBoolean(), repetitionLevel, definitionLevel);
+                    case INT32 -> columnWriter.write(columnReader.getInteger(), repetitionLevel, definitionLevel);
+                    case INT64 -> columnWriter.write(columnReader.getLong(), repetitionLevel, definitionLevel);
+                    case FLOAT -> columnWriter.write(columnReader.getFloat(), repetitionLevel, definitionLevel);
+                    case DOUBLE -> columnWriter.write(columnReader.getDouble(), repetitionLevel, definitionLevel);
+                    default -> columnWriter.write(intercept(interceptedPath, columnReader.getBinary()), repetitionLevel, definitionLevel);
+                }
+            }
+            columnReader.consume();
+            valuesLeft--;
+        } while (valuesLeft > 0 && columnReader.getCurrentRepetitionLevel() > 0);
+        return valuesLeft;
+    }
+
+    private Binary intercept(String path, Binary value) {
+        if (path == null) {
+            return value;
+        }
+        String intercepted = fieldInterceptor.intercept(path, value.toStringUsingUTF8());
+        return Binary.fromString(Objects.requireNonNull(intercepted, () -> "Field interceptor returned null. Column: " + path));
+    }
+
+    /**
+     * A {@link PageWriter} that compresses pages and holds them in memory, so that the dictionary page can be written
+     * before the data pages.
+     */
+    private static class BufferedPageWriter implements PageWriter {
+        private final CompressionCodecName codec;
+        private final BytesInputCompressor compressor;
+        private final List<DataPage> dataPages = new ArrayList<>();
+        private DictionaryPage dictionaryPage;
+        private long valueCount;
+        private long memSize;
+
+        private BufferedPageWriter(CompressionCodecName codec, BytesInputCompressor compressor) {
+            this.codec = codec;
+            this.compressor = compressor;
+        }
+
+        @Override
+        @Deprecated
+        public void writePage(BytesInput bytesInput, int valueCount, Statistics<?> statistics, Encoding rlEncoding, Encoding dlEncoding, Encoding valuesEncoding) throws IOException {
+            writePage(bytesInput, valueCount, -1, statistics, rlEncoding, dlEncoding, valuesEncoding);
+        }
+
+        @Override
+        public void writePage(BytesInput bytesInput, int valueCount, int rowCount, Statistics<?> statistics, Encoding rlEncoding, Encoding dlEncoding, Encoding valuesEncoding) throws IOException {
+            //The compressor and the column writer both reuse their buffers, so the compressed bytes are copied
+            BytesInput compressed = BytesInput.copy(compressor.compress(bytesInput));
+            dataPages.add(new DataPage(compressed, (int) bytesInput.size(), valueCount, rowCount, statistics, rlEncoding, dlEncoding, valuesEncoding));
+            this.valueCount += valueCount;
+            this.memSize += compressed.size();
+        }
+
+        @Override
+        public void writePageV2(int rowCount, int nullCount, int valueCount, BytesInput repetitionLevels, BytesInput definitionLevels, Encoding dataEncoding, BytesInput data, Statistics<?> statistics) {
+            throw new UnsupportedOperationException("Pages are written with version 1");
+        }
+
+        @Override
+        public void writeDictionaryPage(DictionaryPage dictionaryPage) throws IOException {
+            BytesInput compressed = BytesInput.copy(compressor.compress(dictionaryPage.getBytes()));
+            this.dictionaryPage = new DictionaryPage(compressed, dictionaryPage.getUncompressedSize(), dictionaryPage.getDictionarySize(), dictionaryPage.getEncoding());
+            this.memSize += compressed.size();
+        }
+
+        @Override
+        public long getMemSize() {
+            return memSize;
+        }
+
+        @Override
+        public long allocatedSize() {
+            return memSize;
+        }
+
+        @Override
+        public String memUsageString(String prefix) {
+            return prefix + " BufferedPageWriter " + memSize + " bytes";
+        }
+
+        //Pages without a row count can only be written without one
+        @SuppressWarnings("deprecation")
+        private void writeTo(ParquetFileWriter writer, ColumnDescriptor column) throws IOException {
+            writer.startColumn(column, valueCount, codec);
+            if (dictionaryPage != null) {
+                writer.writeDictionaryPage(dictionaryPage);
+            }
+            for (DataPage page : dataPages) {
+                if (page.rowCount >= 0) {
+                    writer.writeDataPage(page.valueCount, page.uncompressedSize, page.bytes, page.statistics, page.rowCount,
+                            page.rlEncoding, page.dlEncoding, page.valuesEncoding);
+                } else {
+                    writer.writeDataPage(page.valueCount, page.uncompressedSize, page.bytes, page.statistics,
+                            page.rlEncoding, page.dlEncoding, page.valuesEncoding);
+                }
+            }
+            writer.endColumn();
+        }
+    }
+
+    private static class DataPage {
+        private final BytesInput bytes;
+        private final int uncompressedSize;
+        private final int valueCount;
+        private final int rowCount;
+        private final Statistics<?> statistics;
+        private final Encoding rlEncoding;
+        private final Encoding dlEncoding;
+        private final Encoding valuesEncoding;
+
+        private DataPage(BytesInput bytes, int uncompressedSize, int valueCount, int rowCount, Statistics<?> statistics,
+                         Encoding rlEncoding, Encoding dlEncoding, Encoding valuesEncoding) {
+            this.bytes = bytes;
+            this.uncompressedSize = uncompressedSize;
+            this.valueCount = valueCount;
+            this.rowCount = rowCount;
+            this.statistics = statistics;
+            this.rlEncoding = rlEncoding;
+            this.dlEncoding = dlEncoding;
+            this.valuesEncoding = valuesEncoding;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package no.ssb.dapla.parquet;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.DataAmount;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+
+import java.util.List;
+
+import static no.ssb.dapla.parquet.JfrEvent.Type.field;
+
+/**
+ * A JFR event, no.ssb.dapla.parquet.RowGroupFlush, for a row group flushed to a parquet file by
+ * {@link MeteredWriter}.
+ * <p></p>
+ * The duration of the event is the time it took to flush the row group. The sizes of a row group are only known from
+ * the footer of the file, so the events of a writer are committed when it is closed. The last row group is flushed
+ * together with the footer.
+ */
+class RowGroupFlushEvent {
+
+    private static final JfrEvent.Type TYPE = new JfrEvent.Type("no.ssb.dapla.parquet.RowGroupFlush",
+            "Parquet Row Group Flush", "A row group flushed to a parquet file", List.of(
+            field(String.class, "file", "File", "The file the row group was written to"),
+            field(int.class, "rowGroup", "Row Group", "The index of the row group in the file"),
+            field(long.class, "rows", "Rows", "The number of rows in the row group"),
+            field(long.class, "compressedSize", "Compressed Size", "The compressed size of the column chunks of the row group",
+                    new AnnotationElement(DataAmount.class, DataAmount.BYTES)),
+            field(long.class, "uncompressedSize", "Uncompressed Size", "The uncompressed size of the column chunks of the row group",
+                    new AnnotationElement(DataAmount.class, DataAmount.BYTES))));
+
+    private final JfrEvent event;
+
+    private RowGroupFlushEvent(JfrEvent event) {
+        this.event = event;
+    }
+
+    static boolean isEnabled() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * @return a new event that has begun, or null if the event type isn't enabled
+     */
+    static RowGroupFlushEvent start() {
+        JfrEvent event = TYPE.begin();
+        return event == null ? null : new RowGroupFlushEvent(event);
+    }
+
+    /**
+     * Begin the event again, e.g. as a writer doesn't know that a write flushes until it has.
+     */
+    void begin() {
+        event.begin();
+    }
+
+    void end() {
+        event.end();
+    }
+
+    /**
+     * Describe the row group from the footer of the file, and commit the event.
+     */
+    void flushed(String file, int rowGroup, BlockMetaData block) {
+        event.set(0, file);
+        event.set(1, rowGroup);
+        event.set(2, block.getRowCount());
+        event.set(3, block.getCompressedSize());
+        event.set(4, block.getTotalByteSize());
+        event.commit();
+    }
+}
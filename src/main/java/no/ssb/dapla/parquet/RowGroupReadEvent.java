@@ -0,0 +1,115 @@
+package no.ssb.dapla.parquet;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Timespan;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.schema.MessageType;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static no.ssb.dapla.parquet.JfrEvent.Type.field;
+
+/**
+ * A JFR event, no.ssb.dapla.parquet.RowGroupRead, for a row group read by a {@link RecordStream} or by
+ * {@link File#readColumn}.
+ * <p></p>
+ * The duration of the event is the time it took to open the row group, i.e. to read its projected column chunks. The
+ * time spent decoding records from the row group is added up in the decodeTime field, as decoding is interleaved with
+ * the work of the caller. The event is committed when the row group has been read, or abandoned by a seek or close,
+ * and at once when none of its rows match the row filter of a {@link RecordStream}.
+ * <p></p>
+ * Events are only created when the event type is enabled in a running recording, so reading costs a null check per
+ * record when JFR is disabled.
+ */
+class RowGroupReadEvent {
+
+    private static final JfrEvent.Type TYPE = new JfrEvent.Type("no.ssb.dapla.parquet.RowGroupRead",
+            "Parquet Row Group Read", "A row group read from a parquet file", List.of(
+            field(String.class, "file", "File", "The file the row group was read from"),
+            field(int.class, "rowGroup", "Row Group", "The index of the row group in the file"),
+            field(long.class, "rows", "Rows", "The number of rows in the row group"),
+            field(long.class, "recordsDecoded", "Records Decoded", null),
+            field(int.class, "columns", "Columns", "The number of columns read"),
+            field(long.class, "compressedSize", "Compressed Size", "The compressed size of the column chunks read",
+                    new AnnotationElement(DataAmount.class, DataAmount.BYTES)),
+            field(long.class, "uncompressedSize", "Uncompressed Size", "The uncompressed size of the column chunks read",
+                    new AnnotationElement(DataAmount.class, DataAmount.BYTES)),
+            field(long.class, "decodeTime", "Decode Time", "The time spent decoding records from the row group",
+                    new AnnotationElement(Timespan.class, Timespan.NANOSECONDS))));
+
+    private final JfrEvent event;
+    private long recordsDecoded;
+    private long decodeTime;
+
+    private RowGroupReadEvent(JfrEvent event) {
+        this.event = event;
+    }
+
+    /**
+     * @return a new event that has begun, or null if the event type isn't enabled
+     */
+    static RowGroupReadEvent start() {
+        JfrEvent event = TYPE.begin();
+        return event == null ? null : new RowGroupReadEvent(event);
+    }
+
+    /**
+     * @return the paths of the columns that are read with the given schema
+     */
+    static Set<ColumnPath> columnPaths(MessageType schema) {
+        Set<ColumnPath> paths = new HashSet<>();
+        for (String[] path : schema.getPaths()) {
+            paths.add(ColumnPath.get(path));
+        }
+        return paths;
+    }
+
+    /**
+     * End the event when the row group has been opened, and describe the column chunks that were read.
+     */
+    void opened(String file, int rowGroup, BlockMetaData block, Set<ColumnPath> columns) {
+        event.end();
+        int columnCount = 0;
+        long compressedSize = 0;
+        long uncompressedSize = 0;
+        for (ColumnChunkMetaData chunk : block.getColumns()) {
+            if (columns.contains(chunk.getPath())) {
+                columnCount++;
+                compressedSize += chunk.getTotalSize();
+                uncompressedSize += chunk.getTotalUncompressedSize();
+            }
+        }
+        event.set(0, file);
+        event.set(1, rowGroup);
+        event.set(2, block.getRowCount());
+        event.set(4, columnCount);
+        event.set(5, compressedSize);
+        event.set(6, uncompressedSize);
+    }
+
+    /**
+     * End and commit the event when the file has no more row groups to read, even though rows were expected.
+     */
+    void notFound(String file, int rowGroup) {
+        event.end();
+        event.set(0, file);
+        event.set(1, rowGroup);
+        event.commit();
+    }
+
+    void decoded(long nanos) {
+        recordsDecoded++;
+        decodeTime += nanos;
+    }
+
+    void finish() {
+        event.set(3, recordsDecoded);
+        event.set(7, decodeTime);
+        event.commit();
+    }
+}
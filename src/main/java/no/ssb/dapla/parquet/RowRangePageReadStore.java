@@ -0,0 +1,174 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.page.DataPage;
+import org.apache.parquet.column.page.DataPageV1;
+import org.apache.parquet.column.page.DataPageV2;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageReader;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.internal.column.columnindex.OffsetIndex;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.stream.LongStream;
+
+/**
+ * RowRangePageReadStore restricts a row group to a range of its rows.
+ * <p></p>
+ * The offset index of every column chunk tells which rows each data page holds, so pages that end before the range
+ * are dropped without being decoded. The remaining pages are tagged with their first row index, and the row indexes
+ * of the range are exposed through {@link #getRowIndexes()}, which makes the column readers skip the rows before the
+ * range within the first page of each column. Rows after the range are never reached, as the caller only reads as
+ * many records as there are rows in the range.
+ */
+class RowRangePageReadStore implements PageReadStore {
+
+    private final PageReadStore delegate;
+    private final Map<ColumnDescriptor, OffsetIndex> offsetIndexes;
+    private final Map<ColumnDescriptor, PageReader> pageReaders = new HashMap<>();
+    private final long rowGroupRowCount;
+    private final long from;
+    private final long to;
+
+    private RowRangePageReadStore(PageReadStore delegate, Map<ColumnDescriptor, OffsetIndex> offsetIndexes, long from, long to) {
+        this.delegate = delegate;
+        this.offsetIndexes = offsetIndexes;
+        this.rowGroupRowCount = delegate.getRowCount();
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param from the index of the first row to read, relative to the start of the row group
+     * @param to   the index after the last row to read, relative to the start of the row group
+     * @return the restricted row group, or null if some column chunk of the schema doesn't have an offset index
+     */
+    static PageReadStore create(ParquetFileReader fileReader, BlockMetaData block, PageReadStore rowGroup, MessageType schema, long from, long to) throws IOException {
+        Map<ColumnDescriptor, OffsetIndex> offsetIndexes = offsetIndexes(fileReader, block, schema);
+        return offsetIndexes != null ? new RowRangePageReadStore(rowGroup, offsetIndexes, from, to) : null;
+    }
+
+    /**
+     * @return the offset index of every column chunk of the schema, or null if some column chunk doesn't have one
+     */
+    static Map<ColumnDescriptor, OffsetIndex> offsetIndexes(ParquetFileReader fileReader, BlockMetaData block, MessageType schema) throws IOException {
+        Map<ColumnPath, ColumnChunkMetaData> chunks = new HashMap<>();
+        for (ColumnChunkMetaData chunk : block.getColumns()) {
+            chunks.put(chunk.getPath(), chunk);
+        }
+        Map<ColumnDescriptor, OffsetIndex> offsetIndexes = new HashMap<>();
+        for (ColumnDescriptor column : schema.getColumns()) {
+            ColumnChunkMetaData chunk = chunks.get(ColumnPath.get(column.getPath()));
+            OffsetIndex offsetIndex = chunk == null ? null : fileReader.readOffsetIndex(chunk);
+            if (offsetIndex == null) {
+                return null;
+            }
+            offsetIndexes.put(column, offsetIndex);
+        }
+        return offsetIndexes;
+    }
+
+    /**
+     * Tag a data page with the rows it holds, which lets column readers that skip rows tell where the page starts.
+     */
+    static DataPage withRowIndexes(DataPage page, long firstRowIndex, int rowCount) {
+        return page.accept(new DataPage.Visitor<DataPage>() {
+            @Override
+            public DataPage visit(DataPageV1 page) {
+                return new DataPageV1(page.getBytes(), page.getValueCount(), page.getUncompressedSize(),
+                        firstRowIndex, rowCount, page.getStatistics(),
+                        page.getRlEncoding(), page.getDlEncoding(), page.getValueEncoding());
+            }
+
+            @Override
+            public DataPage visit(DataPageV2 page) {
+                return DataPageV2.uncompressed(page.getRowCount(), page.getNullCount(), page.getValueCount(),
+                        firstRowIndex, page.getRepetitionLevels(), page.getDefinitionLevels(),
+                        page.getDataEncoding(), page.getData(), page.getStatistics());
+            }
+        });
+    }
+
+    @Override
+    public PageReader getPageReader(ColumnDescriptor descriptor) {
+        //Page readers are stateful, so the same one must be handed out every time a column is asked for
+        return pageReaders.computeIfAbsent(descriptor, column -> new RowRangePageReader(delegate.getPageReader(column), offsetIndexes.get(column)));
+    }
+
+    @Override
+    public long getRowCount() {
+        return to - from;
+    }
+
+    @Override
+    public Optional<PrimitiveIterator.OfLong> getRowIndexes() {
+        return Optional.of(LongStream.range(from, to).iterator());
+    }
+
+    private class RowRangePageReader implements PageReader {
+
+        private final PageReader delegate;
+        private final OffsetIndex offsetIndex;
+        private long totalValueCount = -1;
+        private int pageIndex;
+        private DataPage next;
+
+        private RowRangePageReader(PageReader delegate, OffsetIndex offsetIndex) {
+            this.delegate = delegate;
+            this.offsetIndex = offsetIndex;
+        }
+
+        /**
+         * Drop the pages that end before the range, and stop counting their values.
+         */
+        private void skipPages() {
+            if (totalValueCount >= 0) {
+                return;
+            }
+            totalValueCount = delegate.getTotalValueCount();
+            DataPage page;
+            while ((page = delegate.readPage()) != null) {
+                if (offsetIndex.getLastRowIndex(pageIndex, rowGroupRowCount) >= from) {
+                    next = page;
+                    break;
+                }
+                totalValueCount -= page.getValueCount();
+                pageIndex++;
+            }
+        }
+
+        @Override
+        public DictionaryPage readDictionaryPage() {
+            return delegate.readDictionaryPage();
+        }
+
+        @Override
+        public long getTotalValueCount() {
+            skipPages();
+            return totalValueCount;
+        }
+
+        @Override
+        public DataPage readPage() {
+            skipPages();
+            DataPage page = next != null ? next : delegate.readPage();
+            next = null;
+            if (page == null) {
+                return null;
+            }
+            long firstRowIndex = offsetIndex.getFirstRowIndex(pageIndex);
+            int rowCount = (int) (offsetIndex.getLastRowIndex(pageIndex, rowGroupRowCount) - firstRowIndex + 1);
+            pageIndex++;
+            return withRowIndexes(page, firstRowIndex, rowCount);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.page.DataPage;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageReader;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.internal.column.columnindex.OffsetIndex;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+
+/**
+ * RowSetPageReadStore restricts a row group to a set of its rows, e.g. the rows that match a {@link RowFilter}.
+ * <p></p>
+ * It works like {@link RowRangePageReadStore}, except that any page that doesn't hold a row of the set is dropped,
+ * not just the pages before the first row. The pages of a column are taken from the row group when the column is first
+ * asked for, as the column readers need to know up front how many values the remaining pages hold. Dropped pages are
+ * never decoded.
+ */
+class RowSetPageReadStore implements PageReadStore {
+
+    private final PageReadStore delegate;
+    private final Map<ColumnDescriptor, OffsetIndex> offsetIndexes;
+    private final Map<ColumnDescriptor, RowSetPageReader> pageReaders = new HashMap<>();
+    private final long rowGroupRowCount;
+    private final long[] rows;
+    private RowSetPageReader lastPageReader;
+
+    private RowSetPageReadStore(PageReadStore delegate, Map<ColumnDescriptor, OffsetIndex> offsetIndexes, long[] rows) {
+        this.delegate = delegate;
+        this.offsetIndexes = offsetIndexes;
+        this.rowGroupRowCount = delegate.getRowCount();
+        this.rows = rows;
+    }
+
+    /**
+     * @param rows the indexes of the rows to read, relative to the start of the row group, in ascending order
+     * @return the restricted row group, or null if some column chunk of the schema doesn't have an offset index
+     */
+    static PageReadStore create(ParquetFileReader fileReader, BlockMetaData block, PageReadStore rowGroup, MessageType schema, long[] rows) throws IOException {
+        Map<ColumnDescriptor, OffsetIndex> offsetIndexes = RowRangePageReadStore.offsetIndexes(fileReader, block, schema);
+        return offsetIndexes != null ? new RowSetPageReadStore(rowGroup, offsetIndexes, rows) : null;
+    }
+
+    @Override
+    public PageReader getPageReader(ColumnDescriptor descriptor) {
+        //Page readers are stateful, so the same one must be handed out every time a column is asked for
+        lastPageReader = pageReaders.computeIfAbsent(descriptor, column -> new RowSetPageReader(delegate.getPageReader(column), offsetIndexes.get(column)));
+        return lastPageReader;
+    }
+
+    @Override
+    public long getRowCount() {
+        return rows.length;
+    }
+
+    /**
+     * Column readers ask for the row indexes right after asking for the page reader of their column, and take the
+     * end of the row indexes as the end of the column. When they take the last row, they may still have to read pages
+     * to reach it, so the row indexes of a column only end when the last row has been taken and all pages of the column
+     * have been read.
+     */
+    @Override
+    public Optional<PrimitiveIterator.OfLong> getRowIndexes() {
+        RowSetPageReader pageReader = lastPageReader;
+        return Optional.of(new PrimitiveIterator.OfLong() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows.length || !pageReader.pages.isEmpty();
+            }
+
+            @Override
+            public long nextLong() {
+                return next < rows.length ? rows[next++] : Long.MAX_VALUE;
+            }
+        });
+    }
+
+    private class RowSetPageReader implements PageReader {
+
+        private final PageReader delegate;
+        private final Queue<DataPage> pages = new ArrayDeque<>();
+        private final long totalValueCount;
+
+        private RowSetPageReader(PageReader delegate, OffsetIndex offsetIndex) {
+            this.delegate = delegate;
+            long totalValueCount = 0;
+            int row = 0;
+            DataPage page;
+            for (int pageIndex = 0; (page = delegate.readPage()) != null; pageIndex++) {
+                long firstRowIndex = offsetIndex.getFirstRowIndex(pageIndex);
+                long lastRowIndex = offsetIndex.getLastRowIndex(pageIndex, rowGroupRowCount);
+                while (row < rows.length && rows[row] < firstRowIndex) {
+                    row++;
+                }
+                if (row < rows.length && rows[row] <= lastRowIndex) {
+                    pages.add(RowRangePageReadStore.withRowIndexes(page, firstRowIndex, (int) (lastRowIndex - firstRowIndex + 1)));
+                    totalValueCount += page.getValueCount();
+                }
+            }
+            this.totalValueCount = totalValueCount;
+        }
+
+        @Override
+        public DictionaryPage readDictionaryPage() {
+            return delegate.readDictionaryPage();
+        }
+
+        @Override
+        public long getTotalValueCount() {
+            return totalValueCount;
+        }
+
+        @Override
+        public DataPage readPage() {
+            return pages.poll();
+        }
+    }
+}
@@ -1,20 +1,57 @@
 package no.ssb.dapla.parquet;
 
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
 import org.apache.parquet.io.DelegatingSeekableInputStream;
 import org.apache.parquet.io.InputFile;
 import org.apache.parquet.io.SeekableInputStream;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * An {@link InputFile} of a channel. If the channel supports positional reads, see {@link PositionalReader}, every
+ * stream of the file keeps its own position, so that streams, and readers of other files sharing the channel, can be
+ * read from different threads at the same time. Otherwise, streams share the position of the channel.
+ * <p></p>
+ * Channels with positional reads can also prefetch the column chunks of a row group concurrently, see
+ * {@link #prefetch(List, ByteBufferAllocator)}, so that a row group costs a single round of parallel reads rather than
+ * one read per column chunk.
+ */
 class SeekableByteChannelInputFile implements InputFile {
 
     private final SeekableByteChannel input;
+    private final PositionalReader positionalReader;
+    private final boolean closeInput;
+    private NavigableMap<Long, ByteBuffer> prefetched = Collections.emptyNavigableMap();
 
     SeekableByteChannelInputFile(SeekableByteChannel input) {
+        this(input, true);
+    }
+
+    /**
+     * @param closeInput whether closing a stream of this file closes the channel. Leave the channel open to be able to
+     *                   open it again, e.g. for a new reader.
+     */
+    SeekableByteChannelInputFile(SeekableByteChannel input, boolean closeInput) {
         this.input = Objects.requireNonNull(input);
+        this.positionalReader = PositionalReader.of(input);
+        this.closeInput = closeInput;
     }
 
     @Override
@@ -24,6 +61,9 @@ class SeekableByteChannelInputFile implements InputFile {
 
     @Override
     public SeekableInputStream newStream() {
+        if (positionalReader != null) {
+            return new PositionalInputStream();
+        }
         return new DelegatingSeekableInputStream(Channels.newInputStream(input)) {
             @Override
             public long getPos() throws IOException {
@@ -34,6 +74,185 @@ class SeekableByteChannelInputFile implements InputFile {
             public void seek(long newPos) throws IOException {
                 input.position(newPos);
             }
+
+            /**
+             * Read straight from the channel, rather than through a temporary array as the stream does for direct
+             * buffers.
+             */
+            @Override
+            public int read(ByteBuffer buf) throws IOException {
+                return input.read(buf);
+            }
+
+            @Override
+            public void readFully(ByteBuffer buf) throws IOException {
+                while (buf.hasRemaining()) {
+                    if (input.read(buf) < 0) {
+                        throw new EOFException("Reached the end of the file with " + buf.remaining() + " bytes left to read");
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closeInput) {
+                    super.close();
+                }
+            }
         };
     }
+
+    /**
+     * @return true if the channel supports positional reads, and column chunks can be prefetched
+     */
+    boolean isPositional() {
+        return positionalReader != null;
+    }
+
+    /**
+     * Read the given column chunks concurrently, replacing the chunks prefetched before. Streams of this file serve
+     * reads of the prefetched chunks from memory until the next prefetch. Does nothing if the channel doesn't support
+     * positional reads.
+     *
+     * @param allocator allocates the buffers the chunks are read into. The caller releases them after the next
+     *                  prefetch.
+     */
+    void prefetch(List<ColumnChunkMetaData> chunks, ByteBufferAllocator allocator) throws IOException {
+        prefetched = Collections.emptyNavigableMap();
+        if (positionalReader == null) {
+            return;
+        }
+        NavigableMap<Long, ByteBuffer> buffers = new TreeMap<>();
+        List<Future<?>> reads = new ArrayList<>();
+        for (ColumnChunkMetaData chunk : chunks) {
+            long position = chunk.getStartingPos();
+            ByteBuffer buffer = allocator.allocate(Math.toIntExact(chunk.getTotalSize()));
+            buffers.put(position, buffer);
+            reads.add(IoThreads.EXECUTOR.submit(() -> {
+                readFully(buffer, position);
+                buffer.flip();
+                return null;
+            }));
+        }
+        //Wait for all reads, also when one fails, so that no read is left writing to a buffer after it is released
+        IOException exception = null;
+        for (Future<?> read : reads) {
+            try {
+                read.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while prefetching column chunks", e);
+            } catch (ExecutionException e) {
+                if (exception == null) {
+                    exception = new IOException("Error while prefetching column chunks", e.getCause());
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        prefetched = buffers;
+    }
+
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int read = positionalReader.read(dst, position);
+            if (read < 0) {
+                throw new EOFException("Reached the end of the file with " + dst.remaining() + " bytes left to read");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Threads that read column chunks. Reads block on I/O, so they are kept off the common pool.
+     */
+    private static class IoThreads {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Math.max(8, 2 * Runtime.getRuntime().availableProcessors()), runnable -> {
+                    Thread thread = new Thread(runnable, "parquet-chunk-reader-" + THREADS.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * A stream with a position of its own, that reads from prefetched column chunks where it can.
+     */
+    private class PositionalInputStream extends SeekableInputStream {
+
+        private long position;
+
+        @Override
+        public long getPos() {
+            return position;
+        }
+
+        @Override
+        public void seek(long newPos) {
+            position = newPos;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            Map.Entry<Long, ByteBuffer> chunk = prefetched.floorEntry(position);
+            if (chunk != null && position < chunk.getKey() + chunk.getValue().limit()) {
+                ByteBuffer src = chunk.getValue().duplicate();
+                src.position((int) (position - chunk.getKey()));
+                if (src.remaining() > dst.remaining()) {
+                    src.limit(src.position() + dst.remaining());
+                }
+                int read = src.remaining();
+                dst.put(src);
+                position += read;
+                return read;
+            }
+            int read = positionalReader.read(dst, position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void readFully(ByteBuffer dst) throws IOException {
+            while (dst.hasRemaining()) {
+                if (read(dst) < 0) {
+                    throw new EOFException("Reached the end of the file with " + dst.remaining() + " bytes left to read");
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer dst = ByteBuffer.allocate(1);
+            return read(dst) < 1 ? -1 : dst.get(0) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            return read(ByteBuffer.wrap(bytes, off, len));
+        }
+
+        @Override
+        public void readFully(byte[] bytes) throws IOException {
+            readFully(ByteBuffer.wrap(bytes));
+        }
+
+        @Override
+        public void readFully(byte[] bytes, int start, int len) throws IOException {
+            readFully(ByteBuffer.wrap(bytes, start, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closeInput) {
+                input.close();
+            }
+        }
+    }
 }
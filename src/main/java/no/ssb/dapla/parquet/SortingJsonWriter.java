@@ -0,0 +1,291 @@
+package no.ssb.dapla.parquet;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * SortingJsonWriter writes json records to a parquet file sorted on one or more key paths, so that the row group
+ * statistics of the keys cover narrow, mostly disjoint ranges that readers can skip on. See
+ * {@link File#writeNdjsonSorted(java.io.InputStream, Path, MessageType, List, long)}.
+ * <p></p>
+ * Records are held in memory until they exceed the memory budget, and are then sorted and spilled as a run of
+ * newline-delimited json to a temporary directory next to the file. When the writer is finished, the runs are merged
+ * and written to the file. At most {@value #MAX_FAN_IN} runs are open at a time, so more runs than that are first
+ * merged in passes into fewer, longer runs. Input that fits within the budget is never spilled. The file is only
+ * written by {@link #finish()}, so input that fails partway through leaves no file behind, and closing the writer
+ * only deletes the runs.
+ * <p></p>
+ * The sort is stable, and records without a key sort before records with one. The json writer writes every value as
+ * a string, so the sort paths must be binary, and the keys are compared by their UTF-8 bytes, like parquet compares
+ * them for statistics.
+ * <p></p>
+ * The sort paths are recorded in the key-value metadata of the file, see {@link File#sortOrder}.
+ */
+class SortingJsonWriter implements AutoCloseable {
+
+    static final String SORT_ORDER_KEY = "no.ssb.dapla.parquet.sortOrder";
+
+    private static final int MAX_FAN_IN = 64;
+
+    private final Path path;
+    private final MessageType schema;
+    private final List<String> sortPaths;
+    private final String[][] keyNames;
+    private final long memoryBudget;
+    private final Metrics metrics;
+    private final List<SortEntry> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private long bufferedBytes;
+    private Path spillDirectory;
+
+    /**
+     * @param sortPaths    paths of binary fields that aren't in a list, in the notation of
+     *                     {@link Schema#createProjection(MessageType, java.util.Set)}
+     * @param memoryBudget the approximate number of bytes of records to hold in memory before spilling them, at least 1
+     */
+    SortingJsonWriter(Path path, MessageType schema, List<String> sortPaths, long memoryBudget, Metrics metrics) {
+        if (sortPaths.isEmpty()) {
+            throw new IllegalArgumentException("At least one sort path is required");
+        }
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException("Memory budget must be positive. Got: " + memoryBudget);
+        }
+        this.path = path;
+        this.schema = schema;
+        this.sortPaths = List.copyOf(sortPaths);
+        this.keyNames = new String[sortPaths.size()][];
+        for (int i = 0; i < keyNames.length; i++) {
+            keyNames[i] = sortPaths.get(i).replaceFirst("^/", "").split("/");
+            if (!RecordNormalizer.isBinary(keyType(schema, sortPaths.get(i), keyNames[i]))) {
+                throw new IllegalArgumentException("Sort path is not binary, and the json writer only writes strings: " + sortPaths.get(i));
+            }
+        }
+        this.memoryBudget = memoryBudget;
+        this.metrics = metrics;
+    }
+
+    private static PrimitiveType keyType(MessageType schema, String sortPath, String[] names) {
+        Type type = schema;
+        for (String name : names) {
+            if (type.isPrimitive() || !type.asGroupType().containsField(name)) {
+                throw new IllegalArgumentException("Sort path isn't in the schema: " + sortPath);
+            }
+            type = type.asGroupType().getType(name);
+            if (type.isRepetition(Type.Repetition.REPEATED) || !type.isPrimitive() && type.asGroupType().getFieldCount() == 1
+                    && type.asGroupType().getType(0).isRepetition(Type.Repetition.REPEATED)) {
+                throw new IllegalArgumentException("Sort path is in a list: " + sortPath);
+            }
+        }
+        if (!type.isPrimitive()) {
+            throw new IllegalArgumentException("Sort path isn't a primitive field: " + sortPath);
+        }
+        return type.asPrimitiveType();
+    }
+
+    /**
+     * @param json a single json object, on a single line
+     */
+    void write(String json) throws IOException {
+        SortEntry entry = entry(json);
+        buffer.add(entry);
+        //Strings take two bytes per char, and the entry, its keys and the list some more
+        bufferedBytes += json.length() * 4L + 64;
+        if (bufferedBytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    SortEntry entry(String json) {
+        JsonElement record = JsonParser.parseString(json);
+        Utf8String[] keys = new Utf8String[keyNames.length];
+        for (int i = 0; i < keys.length; i++) {
+            JsonElement value = record;
+            for (String name : keyNames[i]) {
+                value = value != null && value.isJsonObject() ? value.getAsJsonObject().get(name) : null;
+            }
+            if (value == null || value.isJsonNull()) {
+                continue;
+            }
+            if (!value.isJsonPrimitive()) {
+                throw new RuntimeException(String.format("Sort key isn't a primitive value. Key: %s, Record: %s", sortPaths.get(i), json));
+            }
+            keys[i] = Utf8String.of(value.getAsString());
+        }
+        return new SortEntry(keys, json);
+    }
+
+    /**
+     * Sort the buffered records and write them as a run of their own.
+     */
+    private void spill() throws IOException {
+        if (spillDirectory == null) {
+            spillDirectory = Files.createTempDirectory(path.toAbsolutePath().getParent(), ".sort-");
+        }
+        Path run = spillDirectory.resolve("run-%d.ndjson".formatted(runs.size()));
+        runs.add(run);
+        buffer.sort(SortEntry.ORDER);
+        try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (SortEntry entry : buffer) {
+                writeLine(writer, entry.json);
+            }
+        }
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    private static void writeLine(BufferedWriter writer, String json) throws IOException {
+        writer.write(json);
+        writer.write('\n');
+    }
+
+    /**
+     * Merge the runs and write the records to the file. The writer must still be closed, to delete the runs.
+     */
+    void finish() throws IOException {
+        try (MeteredWriter<String> writer = MeteredWriter.json(path, schema, Map.of(SORT_ORDER_KEY, String.join(",", sortPaths)), metrics)) {
+            if (runs.isEmpty()) {
+                buffer.sort(SortEntry.ORDER);
+                for (SortEntry entry : buffer) {
+                    writer.write(entry.json);
+                }
+            } else {
+                if (!buffer.isEmpty()) {
+                    spill();
+                }
+                for (int pass = 0; runs.size() > MAX_FAN_IN; pass++) {
+                    mergePass(pass);
+                }
+                merge(runs, writer::write);
+            }
+        }
+    }
+
+    /**
+     * Delete the runs, without writing the file unless {@link #finish()} has been called.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.clear();
+        deleteRuns();
+    }
+
+    /**
+     * Merge each group of {@value #MAX_FAN_IN} consecutive runs into a single run. The merged runs hold the records in
+     * the same order as the runs they were merged from, so the sort stays stable.
+     */
+    private void mergePass(int pass) throws IOException {
+        List<Path> merged = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                Path run = spillDirectory.resolve("merged-%d-%d.ndjson".formatted(pass, merged.size()));
+                merged.add(run);
+                try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+                    merge(runs.subList(i, Math.min(i + MAX_FAN_IN, runs.size())), json -> writeLine(writer, json));
+                }
+            }
+            for (Path run : runs) {
+                Files.delete(run);
+            }
+            runs.clear();
+        } finally {
+            //The runs that are left are deleted along with the ones that were merged
+            runs.addAll(merged);
+        }
+    }
+
+    private void merge(List<Path> inputs, JsonSink sink) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            //Ties are broken on run index, as the runs hold the records in input order
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator.<RunReader, SortEntry>comparing(reader -> reader.current, SortEntry.ORDER)
+                    .thenComparingInt(reader -> reader.index));
+            for (Path run : inputs) {
+                RunReader reader = new RunReader(readers.size(), Files.newBufferedReader(run, StandardCharsets.UTF_8));
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            RunReader reader;
+            while ((reader = queue.poll()) != null) {
+                sink.write(reader.current.json);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.lines.close();
+            }
+        }
+    }
+
+    private void deleteRuns() throws IOException {
+        if (spillDirectory != null) {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            Files.deleteIfExists(spillDirectory);
+            runs.clear();
+            spillDirectory = null;
+        }
+    }
+
+    private interface JsonSink {
+        void write(String json) throws IOException;
+    }
+
+    private class RunReader {
+        private final int index;
+        private final BufferedReader lines;
+        private SortEntry current;
+
+        private RunReader(int index, BufferedReader lines) {
+            this.index = index;
+            this.lines = lines;
+        }
+
+        private boolean next() throws IOException {
+            String line = lines.readLine();
+            current = line != null ? entry(line) : null;
+            return current != null;
+        }
+    }
+
+    static class SortEntry {
+        static final Comparator<SortEntry> ORDER = (a, b) -> {
+            for (int i = 0; i < a.keys.length; i++) {
+                Utf8String x = a.keys[i];
+                Utf8String y = b.keys[i];
+                int c = x == null ? (y == null ? 0 : -1) : (y == null ? 1 : x.compareTo(y));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        };
+
+        private final Utf8String[] keys;
+        final String json;
+
+        private SortEntry(Utf8String[] keys, String json) {
+            this.keys = keys;
+            this.json = json;
+        }
+    }
+}
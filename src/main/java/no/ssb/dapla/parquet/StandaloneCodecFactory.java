@@ -0,0 +1,155 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopCodecs;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * StandaloneCodecFactory decompresses the codecs written by this library (UNCOMPRESSED, SNAPPY and GZIP) using plain
+ * java and snappy-java, so that reading a file never has to instantiate the Hadoop codec machinery or parse any Hadoop
+ * configuration resources. Other codecs are delegated to a Hadoop backed codec factory that is created on first use.
+ * <p></p>
+ * Decompression is reported to {@link Metrics#pageDecompressed(long, long, long)} when metrics are enabled.
+ */
+class StandaloneCodecFactory implements CompressionCodecFactory {
+
+    private final Metrics metrics;
+    private CompressionCodecFactory fallback;
+
+    StandaloneCodecFactory() {
+        this(Metrics.noOp());
+    }
+
+    StandaloneCodecFactory(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public BytesInputCompressor getCompressor(CompressionCodecName codecName) {
+        return fallback().getCompressor(codecName);
+    }
+
+    @Override
+    public BytesInputDecompressor getDecompressor(CompressionCodecName codecName) {
+        BytesInputDecompressor decompressor = decompressor(codecName);
+        return Metrics.isEnabled(metrics) ? new MeteredDecompressor(decompressor, metrics) : decompressor;
+    }
+
+    private BytesInputDecompressor decompressor(CompressionCodecName codecName) {
+        switch (codecName) {
+            case UNCOMPRESSED:
+                return UNCOMPRESSED;
+            case SNAPPY:
+                return SNAPPY;
+            case GZIP:
+                return GZIP;
+            default:
+                return fallback().getDecompressor(codecName);
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        if (fallback != null) {
+            fallback.release();
+            fallback = null;
+        }
+    }
+
+    private synchronized CompressionCodecFactory fallback() {
+        if (fallback == null) {
+            fallback = HadoopCodecs.newFactory(0);
+        }
+        return fallback;
+    }
+
+    private static final BytesInputDecompressor UNCOMPRESSED = new Decompressor() {
+        @Override
+        byte[] decompress(byte[] input, int uncompressedSize) {
+            return input;
+        }
+    };
+
+    private static final BytesInputDecompressor SNAPPY = new Decompressor() {
+        @Override
+        byte[] decompress(byte[] input, int uncompressedSize) throws IOException {
+            byte[] output = new byte[uncompressedSize];
+            Snappy.uncompress(input, 0, input.length, output, 0);
+            return output;
+        }
+    };
+
+    private static final BytesInputDecompressor GZIP = new Decompressor() {
+        @Override
+        byte[] decompress(byte[] input, int uncompressedSize) throws IOException {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(input))) {
+                return in.readNBytes(uncompressedSize);
+            }
+        }
+    };
+
+    /**
+     * Base class for the stateless decompressors above. Both the {@link BytesInput} and the {@link ByteBuffer} variants
+     * are implemented in terms of byte arrays, which is what the page readers hand us for heap allocated pages anyway.
+     */
+    private abstract static class Decompressor implements BytesInputDecompressor {
+
+        abstract byte[] decompress(byte[] input, int uncompressedSize) throws IOException;
+
+        @Override
+        public BytesInput decompress(BytesInput bytes, int uncompressedSize) throws IOException {
+            return BytesInput.from(decompress(bytes.toByteArray(), uncompressedSize));
+        }
+
+        @Override
+        public void decompress(ByteBuffer input, int compressedSize, ByteBuffer output, int uncompressedSize) throws IOException {
+            byte[] compressed = new byte[compressedSize];
+            input.get(compressed);
+            output.put(decompress(compressed, uncompressedSize), 0, uncompressedSize);
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private static class MeteredDecompressor implements BytesInputDecompressor {
+
+        private final BytesInputDecompressor delegate;
+        private final Metrics metrics;
+
+        private MeteredDecompressor(BytesInputDecompressor delegate, Metrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public BytesInput decompress(BytesInput bytes, int uncompressedSize) throws IOException {
+            long compressedSize = bytes.size();
+            long start = System.nanoTime();
+            BytesInput decompressed = delegate.decompress(bytes, uncompressedSize);
+            metrics.pageDecompressed(compressedSize, uncompressedSize, System.nanoTime() - start);
+            return decompressed;
+        }
+
+        @Override
+        public void decompress(ByteBuffer input, int compressedSize, ByteBuffer output, int uncompressedSize) throws IOException {
+            long start = System.nanoTime();
+            delegate.decompress(input, compressedSize, output, uncompressedSize);
+            metrics.pageDecompressed(compressedSize, uncompressedSize, System.nanoTime() - start);
+        }
+
+        @Override
+        public void release() {
+            delegate.release();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package no.ssb.dapla.parquet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A channel that ignores being closed, so that it can be handed to readers that close their input when they are done,
+ * and still be read again. The owner closes the underlying channel.
+ */
+class UnclosableChannel implements SeekableByteChannel, PositionalReader.Source {
+
+    private final SeekableByteChannel delegate;
+
+    UnclosableChannel(SeekableByteChannel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return delegate.read(dst);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return delegate.write(src);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return delegate.position();
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        delegate.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return delegate.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        delegate.truncate(size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public PositionalReader positionalReader() {
+        return PositionalReader.of(delegate);
+    }
+}
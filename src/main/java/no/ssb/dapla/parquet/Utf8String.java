@@ -0,0 +1,167 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.io.api.Binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Utf8String is a binary value that is decoded from UTF-8 only when it is used as text, see
+ * {@link RecordStream.Builder#withUtf8Views(boolean)}.
+ * <p></p>
+ * The bytes can be written or hashed without decoding them, and equality, hash code and ordering are all computed on
+ * the bytes. Ordering by bytes is the same as ordering by code points. A Utf8String is never equal to a {@link String},
+ * so compare it to {@link #toString()} or to {@link #of(String)} instead. The {@link CharSequence} methods decode the
+ * value, once.
+ * <p></p>
+ * A Utf8String usually shares its bytes with the page the value was read from, which stays in memory for as long as
+ * any value of the page does. Use {@link #copy()} to hold on to a few values of many pages.
+ */
+public final class Utf8String implements CharSequence, Comparable<Utf8String> {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private String string;
+    private int hash;
+
+    private Utf8String(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static Utf8String of(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        Utf8String utf8String = new Utf8String(bytes, 0, bytes.length);
+        utf8String.string = value;
+        return utf8String;
+    }
+
+    /**
+     * @param copy whether to copy the bytes of the value, e.g. when they are in a buffer that will be reused. Bytes
+     *             that aren't in a heap buffer are always copied.
+     */
+    static Utf8String of(Binary value, boolean copy) {
+        ByteBuffer buffer = value.toByteBuffer();
+        if (!copy && buffer.hasArray()) {
+            return new Utf8String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new Utf8String(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return the number of bytes of the value
+     */
+    public int byteLength() {
+        return length;
+    }
+
+    /**
+     * @return a copy of the bytes of the value
+     */
+    public byte[] getBytes() {
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    /**
+     * @return a read-only buffer of the bytes of the value
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the value as a parquet binary, sharing the bytes of the value
+     */
+    Binary toBinary() {
+        return Binary.fromConstantByteArray(bytes, offset, length);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, offset, length);
+    }
+
+    /**
+     * @return a value with its own copy of the bytes, which doesn't keep the page it was read from in memory
+     */
+    public Utf8String copy() {
+        Utf8String copy = new Utf8String(getBytes(), 0, length);
+        copy.string = string;
+        copy.hash = hash;
+        return copy;
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * @return the value decoded from UTF-8. The value is only decoded the first time.
+     */
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+
+    @Override
+    public int compareTo(Utf8String o) {
+        return Arrays.compareUnsigned(bytes, offset, offset + length, o.bytes, o.offset, o.offset + o.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Utf8String)) {
+            return false;
+        }
+        Utf8String that = (Utf8String) o;
+        return Arrays.equals(bytes, offset, offset + length, that.bytes, that.offset, that.offset + that.length);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 1;
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Compare the value to a string without decoding it, if it hasn't been decoded already.
+     */
+    public boolean contentEquals(String value) {
+        Objects.requireNonNull(value);
+        if (string != null) {
+            return string.equals(value);
+        }
+        return equals(of(value));
+    }
+}
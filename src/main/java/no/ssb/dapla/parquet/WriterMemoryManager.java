@@ -0,0 +1,168 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.hadoop.ParquetWriter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * WriterMemoryManager shares a memory budget between parquet writers that are open at the same time.
+ * <p></p>
+ * A parquet writer buffers a whole row group in memory before flushing it to the file, so every open writer can hold
+ * up to its row group size, 128MB by default, in the heap. The manager tracks the row group sizes requested by all
+ * registered writers, and when their sum exceeds the budget, every writer is given the same share of its requested
+ * size, so that the sum fits the budget. No writer is given less than the minimum row group size. Writers that are
+ * already buffering a row group flush it early if it has outgrown their new share. When writers are closed, the
+ * remaining writers are given a larger share again, from their next row group.
+ * <p></p>
+ * The writers of {@link File#writeJson} and {@link File#writeNdjson} are registered with the {@link #global()}
+ * manager, which has a budget of half the maximum heap size.
+ */
+public class WriterMemoryManager {
+
+    public static final double DEFAULT_MEMORY_RATIO = 0.5;
+    public static final long DEFAULT_MINIMUM_ROW_GROUP_SIZE = 1024 * 1024;
+
+    private static final WriterMemoryManager GLOBAL = new WriterMemoryManager(
+            (long) (Runtime.getRuntime().maxMemory() * DEFAULT_MEMORY_RATIO), DEFAULT_MINIMUM_ROW_GROUP_SIZE);
+
+    /**
+     * The row group size of a writer is held by its internal record writer, which parquet only lets its own memory
+     * manager change. Parquet's memory manager can't be used directly, as it only manages writers of the hadoop output
+     * format.
+     */
+    private static final MethodHandle INTERNAL_WRITER;
+    private static final VarHandle ROW_GROUP_SIZE_THRESHOLD;
+    private static final VarHandle NEXT_ROW_GROUP_SIZE;
+
+    static {
+        try {
+            Class<?> internalWriter = Class.forName("org.apache.parquet.hadoop.InternalParquetRecordWriter");
+            INTERNAL_WRITER = MethodHandles.privateLookupIn(ParquetWriter.class, MethodHandles.lookup())
+                    .findGetter(ParquetWriter.class, "writer", internalWriter);
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(internalWriter, MethodHandles.lookup());
+            ROW_GROUP_SIZE_THRESHOLD = lookup.findVarHandle(internalWriter, "rowGroupSizeThreshold", long.class);
+            NEXT_ROW_GROUP_SIZE = lookup.findVarHandle(internalWriter, "nextRowGroupSize", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<ParquetWriter<?>, Long> writers = new LinkedHashMap<>();
+    private final long minimumRowGroupSize;
+    private long budget;
+    private double scale = 1.0;
+
+    /**
+     * @param budget              the number of bytes all registered writers may buffer together
+     * @param minimumRowGroupSize the smallest row group size a writer is given, regardless of the budget
+     */
+    public WriterMemoryManager(long budget, long minimumRowGroupSize) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("Budget must be positive. Got: " + budget);
+        }
+        if (minimumRowGroupSize < 1) {
+            throw new IllegalArgumentException("Minimum row group size must be positive. Got: " + minimumRowGroupSize);
+        }
+        this.budget = budget;
+        this.minimumRowGroupSize = minimumRowGroupSize;
+    }
+
+    /**
+     * @return the process-wide manager of the writers of {@link File}
+     */
+    public static WriterMemoryManager global() {
+        return GLOBAL;
+    }
+
+    public synchronized long budget() {
+        return budget;
+    }
+
+    /**
+     * Change the budget, and rebalance the row group sizes of the registered writers.
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("Budget must be positive. Got: " + budget);
+        }
+        this.budget = budget;
+        rebalance();
+    }
+
+    public synchronized int writerCount() {
+        return writers.size();
+    }
+
+    /**
+     * @return the share of its requested row group size that every writer is given, 1.0 when within budget
+     */
+    public synchronized double scale() {
+        return scale;
+    }
+
+    /**
+     * @return the sum of the row group sizes the registered writers are given
+     */
+    public synchronized long allocatedBytes() {
+        long allocated = 0;
+        for (long rowGroupSize : writers.values()) {
+            allocated += rowGroupSize(rowGroupSize);
+        }
+        return allocated;
+    }
+
+    /**
+     * Manage the row group size of a writer until it is unregistered.
+     *
+     * @param rowGroupSize the row group size the writer was built with
+     */
+    synchronized void register(ParquetWriter<?> writer, long rowGroupSize) {
+        writers.put(writer, rowGroupSize);
+        rebalance();
+    }
+
+    /**
+     * Stop managing a writer, e.g. when it is closed, and give its share to the remaining writers.
+     */
+    synchronized void unregister(ParquetWriter<?> writer) {
+        if (writers.remove(writer) != null) {
+            rebalance();
+        }
+    }
+
+    private long rowGroupSize(long requested) {
+        return Math.min(requested, Math.max(minimumRowGroupSize, (long) (requested * scale)));
+    }
+
+    private void rebalance() {
+        long requested = 0;
+        for (long rowGroupSize : writers.values()) {
+            requested += rowGroupSize;
+        }
+        scale = requested > budget ? (double) budget / requested : 1.0;
+        for (Map.Entry<ParquetWriter<?>, Long> entry : writers.entrySet()) {
+            setRowGroupSize(entry.getKey(), rowGroupSize(entry.getValue()));
+        }
+    }
+
+    /**
+     * Set the row group size of the next row groups of the writer. The row group being buffered is cut short if it is
+     * larger than the new size, but isn't extended if it is smaller.
+     */
+    private static void setRowGroupSize(ParquetWriter<?> writer, long rowGroupSize) {
+        Object internalWriter;
+        try {
+            internalWriter = INTERNAL_WRITER.invoke(writer);
+        } catch (Throwable e) {
+            throw new RuntimeException("Error when getting the record writer of a parquet writer", e);
+        }
+        ROW_GROUP_SIZE_THRESHOLD.setVolatile(internalWriter, rowGroupSize);
+        if ((long) NEXT_ROW_GROUP_SIZE.getVolatile(internalWriter) > rowGroupSize) {
+            NEXT_ROW_GROUP_SIZE.setVolatile(internalWriter, rowGroupSize);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ColumnarReaderTest {
+
+    private Path testDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testDir = Files.createTempDirectory("DataTest");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    @Test
+    void thatReadBatchWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                       optional binary income (STRING);
+                       optional binary name (STRING);
+                   }
+                   optional group addresses (LIST) {
+                       repeated group array {
+                           required binary streetName (STRING);
+                       }
+                   }
+                }
+                """);
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            String name = i % 3 == 0 ? "" : ", \"name\": \"Name %d\"".formatted(i);
+            StringBuilder addresses = new StringBuilder();
+            for (int a = 0; a < i % 3; a++) {
+                addresses.append(a == 0 ? ", \"addresses\": [" : ", ").append("{\"streetName\": \"Street %d-%d\"}".formatted(i, a));
+            }
+            if (addresses.length() > 0) {
+                addresses.append("]");
+            }
+            ndjson.append("{\"person\": {\"id\": \"%d\", \"income\": \"%d\"%s}%s}\n".formatted(i, i, name, addresses));
+        }
+        Path path = testDir.resolve(Path.of("thatReadBatchWorks.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema);
+
+        List<Integer> rowCounts = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<Object> names = new ArrayList<>();
+        List<List<Object>> streetNames = new ArrayList<>();
+        try (
+                ColumnarReader reader = ColumnarReader.builder(FileChannel.open(path))
+                        .withFieldSelectors(Set.of("/person/id", "/person/name", "/addresses/**"))
+                        .withBatchSize(3)
+                        .build()
+        ) {
+            ColumnarBatch batch = reader.readBatch();
+            assertThat(batch.columns()).extracting(ColumnVector::path)
+                    .containsExactly("/person/id", "/person/name", "/addresses/streetName");
+            byte[] firstBytes = batch.column("/person/id").bytes();
+            while (!batch.isEmpty()) {
+                rowCounts.add(batch.rowCount());
+                ColumnVector id = batch.column("/person/id");
+                assertThat(id.bytes()).isSameAs(firstBytes); //Arrays are reused between batches
+                for (int i = 0; i < id.size(); i++) {
+                    ids.add(id.getString(i));
+                }
+                ColumnVector name = batch.column("/person/name");
+                for (int i = 0; i < name.size(); i++) {
+                    names.add(name.get(i));
+                }
+                ColumnVector streetName = batch.column("/addresses/streetName");
+                assertThat(streetName.rowCount()).isEqualTo(batch.rowCount());
+                for (int row = 0; row < streetName.rowCount(); row++) {
+                    List<Object> values = new ArrayList<>();
+                    for (int i = streetName.offsets()[row]; i < streetName.offsets()[row + 1]; i++) {
+                        values.add(streetName.get(i));
+                    }
+                    streetNames.add(values);
+                }
+                reader.readBatch(batch);
+            }
+            assertThat(batch.column("/person/income")).isNull();
+        }
+        assertThat(rowCounts).containsExactly(3, 3, 1);
+        assertThat(ids).containsExactly("0", "1", "2", "3", "4", "5", "6");
+        assertThat(names).containsExactly(null, "Name 1", "Name 2", null, "Name 4", "Name 5", null);
+        //A missing list is a single null value
+        assertThat(streetNames).containsExactly(
+                nullList(),
+                List.of("Street 1-0"),
+                List.of("Street 2-0", "Street 2-1"),
+                nullList(),
+                List.of("Street 4-0"),
+                List.of("Street 5-0", "Street 5-1"),
+                nullList()
+        );
+    }
+
+    @Test
+    void thatUnmatchedFieldSelectorsFail() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required binary id (STRING);
+                }
+                """);
+        Path path = testDir.resolve(Path.of("thatUnmatchedFieldSelectorsFail.parquet"));
+        File.writeNdjson(new ByteArrayInputStream("{\"id\": \"1\"}\n".getBytes()), path, schema);
+
+        assertThatThrownBy(() -> ColumnarReader.builder(FileChannel.open(path)).withFieldSelectors(Set.of("/name")).build())
+                .hasMessageContaining("don't match any columns");
+    }
+
+    private static List<Object> nullList() {
+        List<Object> values = new ArrayList<>();
+        values.add(null);
+        return values;
+    }
+}
@@ -0,0 +1,188 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrentRecordWriterTest {
+
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType("""
+            message root {
+               required group person {
+                   required binary thread (STRING);
+                   required binary id (STRING);
+               }
+            }
+            """);
+
+    private Path testDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testDir = Files.createTempDirectory("DataTest");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    @Test
+    void thatConcurrentWritesWork() throws Exception {
+        Path path = testDir.resolve("thatConcurrentWritesWork.parquet");
+        int threads = 8;
+        int recordsPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ConcurrentRecordWriter<String> writer = ConcurrentRecordWriter.jsonBuilder(path, SCHEMA)
+                .withStripes(3)
+                .withBatchSize(100)
+                .build()) {
+            List<Future<?>> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                producers.add(executor.submit(() -> {
+                    //Leave a partial batch in the buffer of every stripe, for close to write
+                    for (int i = 0; i < recordsPerThread + thread; i++) {
+                        writer.write("{\"person\": {\"thread\": \"%d\", \"id\": \"%d\"}}".formatted(thread, i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //The records of every thread are all there, in the order the thread wrote them
+        Map<String, List<Integer>> ids = new HashMap<>();
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+            Map<String, Object> record;
+            while ((record = stream.read()) != null) {
+                Map<String, Object> person = (Map<String, Object>) record.get("person");
+                ids.computeIfAbsent((String) person.get("thread"), thread -> new ArrayList<>()).add(Integer.parseInt((String) person.get("id")));
+            }
+        }
+        assertThat(ids).hasSize(threads);
+        for (int t = 0; t < threads; t++) {
+            List<Integer> threadIds = ids.get(String.valueOf(t));
+            assertThat(threadIds).hasSize(recordsPerThread + t);
+            assertThat(threadIds).isSorted();
+        }
+    }
+
+    @Test
+    void thatBadRecordsFailInTheThreadThatWritesThem() throws Exception {
+        Path path = testDir.resolve("thatBadRecordsFailInTheThreadThatWritesThem.parquet");
+        int threads = 4;
+        List<String> badRecords = List.of(
+                "{\"person\": {\"thread\": \"0\"}}",
+                "{\"person\": {\"thread\": \"1\", \"id\": ",
+                "{\"person\": {\"thread\": \"2\", \"id\": \"1\", \"age\": \"42\"}}"
+        );
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ConcurrentRecordWriter<String> writer = ConcurrentRecordWriter.jsonBuilder(path, SCHEMA)
+                .withStripes(2)
+                .withBatchSize(10)
+                .build()) {
+            List<Future<Integer>> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                producers.add(executor.submit(() -> {
+                    int failures = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        if (i == 500 && thread < badRecords.size()) {
+                            try {
+                                writer.write(badRecords.get(thread));
+                            } catch (RuntimeException e) {
+                                failures++;
+                            }
+                        }
+                        writer.write("{\"person\": {\"thread\": \"%d\", \"id\": \"%d\"}}".formatted(thread, i));
+                    }
+                    return failures;
+                }));
+            }
+            for (int t = 0; t < threads; t++) {
+                assertThat(producers.get(t).get()).isEqualTo(t < badRecords.size() ? 1 : 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //The bad records are left out, and the other records are all there
+        int records = 0;
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+            Map<String, Object> record;
+            while ((record = stream.read()) != null) {
+                assertThat((Map<String, Object>) record.get("person")).containsKeys("thread", "id");
+                records++;
+            }
+        }
+        assertThat(records).isEqualTo(threads * 1000);
+    }
+
+    @Test
+    void thatWritesAfterCloseFail() throws IOException {
+        Path path = testDir.resolve("thatWritesAfterCloseFail.parquet");
+        ConcurrentRecordWriter<Map<String, Object>> writer = ConcurrentRecordWriter.builder(path, SCHEMA).build();
+        writer.write(Map.of("person", Map.of("thread", "main", "id", "1")));
+        writer.flush();
+        writer.write(Map.of("person", Map.of("thread", "main", "id", "2")));
+        writer.close();
+        writer.close();
+        assertThatThrownBy(() -> writer.write(Map.of("person", Map.of("thread", "main", "id", "3"))))
+                .isInstanceOf(IllegalStateException.class);
+
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+            assertThat(stream.read()).isEqualTo(Map.of("person", Map.of("thread", "main", "id", "1")));
+            assertThat(stream.read()).isEqualTo(Map.of("person", Map.of("thread", "main", "id", "2")));
+            assertThat(stream.read()).isNull();
+        }
+    }
+
+    @Test
+    void thatMapRecordsCanBeModifiedAfterTheyAreWritten() throws IOException {
+        Path path = testDir.resolve("thatMapRecordsCanBeModifiedAfterTheyAreWritten.parquet");
+        Map<String, Object> person = new HashMap<>();
+        Map<String, Object> record = new HashMap<>();
+        record.put("person", person);
+        try (ConcurrentRecordWriter<Map<String, Object>> writer = ConcurrentRecordWriter.builder(path, SCHEMA).withBatchSize(10).build()) {
+            //The same maps are reused for every record, while the records are still buffered
+            for (int i = 0; i < 5; i++) {
+                person.put("thread", "main");
+                person.put("id", String.valueOf(i));
+                writer.write(record);
+            }
+            person.remove("id");
+        }
+
+        List<Object> ids = new ArrayList<>();
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+            Map<String, Object> read;
+            while ((read = stream.read()) != null) {
+                ids.add(((Map<String, Object>) read.get("person")).get("id"));
+            }
+        }
+        assertThat(ids).containsExactly("0", "1", "2", "3", "4");
+    }
+}
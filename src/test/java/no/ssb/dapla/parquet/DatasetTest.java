@@ -0,0 +1,122 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DatasetTest {
+
+    private static final Path SIMPLE_PERSON = Path.of("src", "test", "resources", "parquet", "simple-person");
+
+    private Path testDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testDir = Files.createTempDirectory("DataTest");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    @Test
+    void thatReadColumnWorks() throws IOException {
+        try (Dataset dataset = Dataset.builder(SIMPLE_PERSON).withParallelism(2).build()) {
+            assertThat(dataset.fileCount()).isEqualTo(2);
+            assertThat(dataset.rowCount()).isEqualTo(200);
+            List<Object> ids = dataset.readColumn("/person/id");
+            assertThat(ids).hasSize(200);
+            assertThat(ids.subList(0, 100)).isEqualTo(File.readColumn(FileChannel.open(SIMPLE_PERSON.resolve("0-99-people.parquet")), "/person/id"));
+        }
+    }
+
+    @Test
+    void thatRecordsWork() throws IOException {
+        List<Object> ids = new ArrayList<>();
+        try (Dataset dataset = Dataset.builder(SIMPLE_PERSON).build()) {
+            try (DatasetStream stream = dataset.records(builder -> builder.withFieldSelectors(Set.of("/person/id")))) {
+                Map<String, Object> record;
+                while ((record = stream.read()) != null) {
+                    assertThat(record).containsOnlyKeys("person");
+                    ids.add(((Map<String, Object>) record.get("person")).get("id"));
+                }
+            }
+            assertThat(ids).isEqualTo(dataset.readColumn("/person/id"));
+
+            List<Integer> batchSizes = new ArrayList<>();
+            try (DatasetStream stream = dataset.records(builder -> {
+            })) {
+                RecordBatch batch = new RecordBatch(64);
+                while (!stream.readBatch(batch).isEmpty()) {
+                    batchSizes.add(batch.size());
+                }
+            }
+            assertThat(batchSizes).containsExactly(64, 36, 64, 36);
+
+            AtomicInteger count = new AtomicInteger();
+            dataset.forEachRecord(builder -> {
+            }, record -> count.incrementAndGet());
+            assertThat(count.get()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    void thatDatasetCanBeReadAfterStreamIsClosedEarly() throws IOException {
+        try (Dataset dataset = Dataset.builder(SIMPLE_PERSON).withParallelism(2).build()) {
+            for (int i = 0; i < 20; i++) {
+                try (DatasetStream stream = dataset.records(builder -> builder.withFieldSelectors(Set.of("/person/id")))) {
+                    assertThat(stream.read()).isNotNull();
+                }
+                assertThat(dataset.readColumn("/person/id")).hasSize(200);
+            }
+        }
+    }
+
+    @Test
+    void thatSchemasAreValidatedOrMerged() throws IOException {
+        MessageType idSchema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                   }
+                }
+                """);
+        MessageType nameSchema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                       optional binary name (UTF8);
+                   }
+                }
+                """);
+        File.writeNdjson(new ByteArrayInputStream("{\"person\": {\"id\": \"1\"}}\n".getBytes()), testDir.resolve("part-0.parquet"), idSchema);
+        File.writeNdjson(new ByteArrayInputStream("{\"person\": {\"id\": \"2\", \"name\": \"Donald\"}}\n".getBytes()), testDir.resolve("part-1.parquet"), nameSchema);
+
+        assertThatThrownBy(() -> Dataset.builder(testDir).build())
+                .hasMessageStartingWith("Schema of file 1 differs from the schema of file 0");
+
+        try (Dataset dataset = Dataset.builder(testDir).withSchemaMerging(true).build()) {
+            assertThat(dataset.schema()).isEqualTo(nameSchema);
+            assertThat(dataset.readColumn("/person/id")).containsExactly("1", "2");
+            assertThat(dataset.readColumn("/person/name")).containsExactly("Donald");
+        }
+    }
+}
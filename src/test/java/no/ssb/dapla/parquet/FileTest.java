@@ -1,6 +1,13 @@
 package no.ssb.dapla.parquet;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.apache.commons.io.FileUtils;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.MessageTypeParser;
 import org.json.JSONException;
@@ -11,12 +18,26 @@ import org.junit.jupiter.api.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class FileTest {
 
@@ -86,6 +107,510 @@ class FileTest {
         File.writeJson(json, path, schema);
     }
 
+    @Test
+    void thatReadColumnFromFileWorks() throws IOException {
+        SeekableByteChannel fileChannel = FileChannel.open(Path.of("src", "test", "resources", "parquet", "simple-person", "0-99-people.parquet"));
+        List<Object> ids = File.readColumn(fileChannel, "/person/id");
+        assertThat(ids).hasSize(100);
+    }
+
+    @Test
+    void thatReadColumnWorksWithGzip() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                   }
+                }
+                """);
+
+        Path path = testDir.resolve(Path.of("thatReadColumnWorksWithGzip.parquet"));
+        try (JsonParquetWriter writer = new JsonParquetWriter(new org.apache.hadoop.fs.Path(path.toUri()), schema, true, CompressionCodecName.GZIP)) {
+            for (int i = 0; i < 10; i++) {
+                writer.write("{\"person\": {\"id\": \"%d\"}}".formatted(i));
+            }
+        }
+
+        List<Object> ids = File.readColumn(FileChannel.open(path), "/person/id");
+        assertThat(ids).containsExactly("0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+    }
+
+    @Test
+    void thatReadDictionaryColumnWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary municipality (STRING);
+                       optional group aliases (LIST) {
+                            repeated binary array (STRING);
+                       }
+                   }
+                }
+                """);
+
+        List<String> municipalities = List.of("OSLO", "BERGEN", "TROMSØ");
+        for (boolean enableDictionary : List.of(true, false)) {
+            Path path = testDir.resolve(Path.of("thatReadDictionaryColumnWorks-%s.parquet".formatted(enableDictionary)));
+            try (JsonParquetWriter writer = new JsonParquetWriter(new org.apache.hadoop.fs.Path(path.toUri()), schema, enableDictionary, CompressionCodecName.SNAPPY)) {
+                for (int i = 0; i < 1000; i++) {
+                    String aliases = i % 2 == 0 ? "" : ", \"aliases\": [\"a%d\", \"b\"]".formatted(i % 5);
+                    writer.write("{\"person\": {\"municipality\": \"%s\"%s}}".formatted(municipalities.get(i % 3), aliases));
+                }
+            }
+
+            DictionaryColumn column = File.readDictionaryColumn(FileChannel.open(path), "/person/municipality");
+            assertThat(column.dictionary()).containsExactly("OSLO", "BERGEN", "TROMSØ");
+            assertThat(column.size()).isEqualTo(1000);
+            assertThat(column.ids()[0]).isEqualTo(0);
+            assertThat(column.ids()[4]).isEqualTo(1);
+            assertThat(column.get(5)).isEqualTo("TROMSØ");
+            assertThat(column.toList()).isEqualTo(File.readColumn(FileChannel.open(path), "/person/municipality"));
+
+            DictionaryColumn aliases = File.readDictionaryColumn(FileChannel.open(path), "/person/aliases");
+            assertThat(aliases.dictionary()).containsExactlyInAnyOrder("a1", "a3", "a0", "a2", "a4", "b");
+            assertThat(aliases.size()).isEqualTo(1000);
+            assertThat(aliases.toList()).isEqualTo(File.readColumn(FileChannel.open(path), "/person/aliases"));
+        }
+    }
+
+    @Test
+    void thatRowCountAndColumnStatsWork() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                       optional binary birthDate (STRING);
+                       optional group aliases (LIST) {
+                            repeated binary array (STRING);
+                       }
+                   }
+                }
+                """);
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String birthDate = i % 10 == 0 ? "" : ", \"birthDate\": \"19%02d-01-01\"".formatted(i);
+            String aliases = i % 2 == 0 ? "" : ", \"aliases\": [\"a%d\", \"b\"]".formatted(i);
+            ndjson.append("{\"person\": {\"id\": \"%03d\"%s%s}}\n".formatted(i, birthDate, aliases));
+        }
+        Path path = testDir.resolve(Path.of("thatRowCountAndColumnStatsWork.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema);
+
+        assertThat(File.rowCount(FileChannel.open(path))).isEqualTo(100);
+
+        Map<String, ColumnStats> stats = File.columnStats(FileChannel.open(path), "/person/**");
+        assertThat(stats).containsOnlyKeys("/person/id", "/person/birthDate", "/person/aliases");
+        assertThat(stats.get("/person/id")).isEqualTo(new ColumnStats("/person/id", 100, 0, "000", "099", false));
+        assertThat(stats.get("/person/birthDate")).isEqualTo(new ColumnStats("/person/birthDate", 100, 10, "1901-01-01", "1999-01-01", false));
+        assertThat(stats.get("/person/aliases")).isEqualTo(new ColumnStats("/person/aliases", 150, 50, "a1", "b", false));
+
+        Map<String, ColumnStats> scannedStats = File.columnStats(FileChannel.open(path), "/person/**", chunk -> false);
+        assertThat(scannedStats).hasSameSizeAs(stats);
+        for (ColumnStats s : stats.values()) {
+            assertThat(scannedStats.get(s.path())).isEqualTo(new ColumnStats(s.path(), s.valueCount(), s.nullCount(), s.min(), s.max(), true));
+        }
+    }
+
+    @Test
+    void thatRewriteWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                       optional int32 age (INTEGER(32, true));
+                       optional double income;
+                       optional group aliases (LIST) {
+                            repeated binary array (STRING);
+                       }
+                   }
+                   optional binary comment (STRING);
+                }
+                """);
+
+        Path path = testDir.resolve(Path.of("thatRewriteWorks.parquet"));
+        try (RecordWriter<Map<String, Object>> writer = RecordWriter.builder(path, schema).build()) {
+            for (int i = 0; i < 1000; i++) {
+                Map<String, Object> person = new HashMap<>();
+                person.put("id", "%04d".formatted(i));
+                person.put("age", i % 7 == 0 ? null : i % 90);
+                person.put("income", i * 1.5);
+                person.put("aliases", i % 3 == 0 ? null : List.of("a" + i % 5, "b"));
+                Map<String, Object> record = new HashMap<>();
+                record.put("person", person);
+                record.put("comment", "Comment " + i % 10);
+                writer.write(record);
+            }
+        }
+
+        Set<String> intercepted = Set.of("/person/id", "/person/aliases");
+        FieldInterceptor interceptor = (field, value) -> intercepted.contains(field) ? field + ":" + value.toUpperCase() : value;
+        Path rewritten = testDir.resolve(Path.of("rewritten.parquet"));
+        File.rewrite(FileChannel.open(path), rewritten, intercepted, interceptor);
+
+        assertThat(readAll(RecordStream.builder(FileChannel.open(rewritten)).build()))
+                .isEqualTo(readAll(RecordStream.builder(FileChannel.open(path)).withFieldInterceptor(interceptor).build()));
+
+        //Columns that aren't intercepted are copied as they are
+        Map<String, ColumnStats> stats = File.columnStats(FileChannel.open(path), "/**");
+        Map<String, ColumnStats> rewrittenStats = File.columnStats(FileChannel.open(rewritten), "/**");
+        for (String column : List.of("/person/age", "/person/income", "/comment")) {
+            assertThat(rewrittenStats.get(column)).isEqualTo(stats.get(column));
+        }
+        try (ParquetFileReader original = ParquetReaders.open(FileChannel.open(path));
+             ParquetFileReader copy = ParquetReaders.open(FileChannel.open(rewritten))) {
+            List<ColumnChunkMetaData> originalChunks = original.getRowGroups().get(0).getColumns();
+            List<ColumnChunkMetaData> copiedChunks = copy.getRowGroups().get(0).getColumns();
+            for (int c : new int[]{1, 2, 4}) {
+                assertThat(copiedChunks.get(c).getTotalSize()).isEqualTo(originalChunks.get(c).getTotalSize());
+            }
+        }
+        assertThat(rewrittenStats.get("/person/id").min()).isEqualTo("/person/id:0000");
+
+        assertThatThrownBy(() -> File.rewrite(FileChannel.open(path), testDir.resolve("age.parquet"), Set.of("/person/age"), interceptor))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void thatCompactWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required binary id (STRING);
+                   optional int64 amount (INTEGER(64, true));
+                   optional group tags (LIST) {
+                        repeated binary array (STRING);
+                   }
+                }
+                """);
+        MessageType otherSchema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required binary id (STRING);
+                }
+                """);
+
+        //Many small files, one file with a row group that is large enough to be copied, and one file of another schema
+        List<Path> files = new ArrayList<>();
+        List<Map<String, Object>> expected = new ArrayList<>();
+        int[] rowCounts = {3, 5, 1000, 2, 7};
+        int id = 0;
+        for (int f = 0; f < rowCounts.length; f++) {
+            Path file = testDir.resolve("small-%d.parquet".formatted(f));
+            try (RecordWriter<Map<String, Object>> writer = RecordWriter.builder(file, schema).build()) {
+                for (int i = 0; i < rowCounts[f]; i++, id++) {
+                    Map<String, Object> record = id % 4 == 0
+                            ? Map.of("id", "%05d".formatted(id))
+                            : Map.of("id", "%05d".formatted(id), "amount", String.valueOf(id * 10L), "tags", List.of("t" + id % 3, "u"));
+                    writer.write(record);
+                    expected.add(record);
+                }
+            }
+            files.add(file);
+        }
+        Path other = testDir.resolve("other.parquet");
+        try (RecordWriter<Map<String, Object>> writer = RecordWriter.builder(other, otherSchema).build()) {
+            writer.write(Map.of("id", "other"));
+        }
+        files.add(2, other);
+        //Merged row groups keep the codec of their columns
+        Path uncompressed = testDir.resolve("uncompressed.parquet");
+        try (JsonParquetWriter writer = new JsonParquetWriter(new org.apache.hadoop.fs.Path(uncompressed.toUri()), otherSchema, true, CompressionCodecName.UNCOMPRESSED)) {
+            writer.write("{\"id\": \"uncompressed\"}");
+        }
+        files.add(uncompressed);
+
+        //Files that compaction wrote are deleted if it fails, but files that were already there are left alone
+        Path failed = Files.createDirectory(testDir.resolve("failed"));
+        Files.createFile(failed.resolve("part-1.parquet"));
+        assertThatThrownBy(() -> File.compact(files, failed, 1024 * 1024, 4096)).isInstanceOf(RuntimeException.class);
+        assertThat(failed.resolve("part-0.parquet")).doesNotExist();
+        assertThat(failed.resolve("part-1.parquet")).exists();
+
+        Path output = Files.createDirectory(testDir.resolve("compacted"));
+        List<Path> compacted = File.compact(files, output, 1024 * 1024, 4096);
+        assertThat(compacted).containsExactly(output.resolve("part-0.parquet"), output.resolve("part-1.parquet"));
+
+        List<Map<String, Object>> records = readAll(RecordStream.builder(FileChannel.open(compacted.get(0))).build());
+        assertThat(records).containsExactlyInAnyOrderElementsOf(expected);
+        try (ParquetFileReader reader = ParquetReaders.open(FileChannel.open(compacted.get(0)))) {
+            //The large row group is copied, and the small ones are merged into one
+            assertThat(reader.getRowGroups()).extracting(BlockMetaData::getRowCount).containsExactly(1000L, 17L);
+        }
+        assertThat(readAll(RecordStream.builder(FileChannel.open(compacted.get(1))).build())).containsExactly(Map.of("id", "other"), Map.of("id", "uncompressed"));
+        try (ParquetFileReader reader = ParquetReaders.open(FileChannel.open(compacted.get(1)))) {
+            assertThat(reader.getRowGroups()).extracting(block -> block.getColumns().get(0).getCodec())
+                    .containsExactly(CompressionCodecName.SNAPPY, CompressionCodecName.UNCOMPRESSED);
+        }
+    }
+
+    @Test
+    void thatWriteNdjsonSortedWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                       optional binary municipality (STRING);
+                   }
+                }
+                """);
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids, new Random(42));
+        StringBuilder ndjson = new StringBuilder();
+        for (int id : ids) {
+            String municipality = id % 10 == 0 ? "" : ", \"municipality\": \"%04d\"".formatted(id % 7);
+            ndjson.append("{\"person\": {\"id\": \"%04d\"%s}}\n".formatted(id, municipality));
+        }
+
+        //A small memory budget spills many runs
+        Path path = testDir.resolve(Path.of("thatWriteNdjsonSortedWorks.parquet"));
+        List<String> sortPaths = List.of("/person/municipality", "/person/id");
+        File.writeNdjsonSorted(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema, sortPaths, 10_000);
+        assertThat(testDir).isDirectoryContaining(p -> p.equals(path)).isDirectoryNotContaining(p -> p.getFileName().toString().startsWith(".sort-"));
+
+        List<Map<String, Object>> records = readAll(RecordStream.builder(FileChannel.open(path)).build());
+        List<String> keys = new ArrayList<>();
+        for (Map<String, Object> record : records) {
+            Map<?, ?> person = (Map<?, ?>) record.get("person");
+            keys.add(person.get("municipality") + ":" + person.get("id"));
+        }
+        assertThat(keys).hasSize(1000).startsWith("null:0000", "null:0010").endsWith("0006:0986", "0006:0993");
+        assertThat(keys.subList(100, 1000)).isSorted();
+        assertThat(File.sortOrder(FileChannel.open(path))).isEqualTo(sortPaths);
+
+        //The same records sorted in memory
+        Path inMemory = testDir.resolve(Path.of("inMemory.parquet"));
+        File.writeNdjsonSorted(new ByteArrayInputStream(ndjson.toString().getBytes()), inMemory, schema, sortPaths);
+        assertThat(readAll(RecordStream.builder(FileChannel.open(inMemory)).build())).isEqualTo(records);
+
+        assertThatThrownBy(() -> File.writeNdjsonSorted(new ByteArrayInputStream(new byte[0]), testDir.resolve("person.parquet"), schema, List.of("/person")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void thatRewriteDropsSortOrderOfInterceptedColumns() throws IOException {
+        Path path = writeSortedPersons("sorted.parquet");
+        FieldInterceptor interceptor = (field, value) -> value.toUpperCase();
+
+        Path municipality = testDir.resolve("municipality.parquet");
+        File.rewrite(FileChannel.open(path), municipality, Set.of("/person/municipality"), interceptor);
+        assertThat(File.sortOrder(FileChannel.open(municipality))).containsExactly("/person/id");
+
+        Path id = testDir.resolve("id.parquet");
+        File.rewrite(FileChannel.open(path), id, Set.of("/person/id"), interceptor);
+        assertThat(File.sortOrder(FileChannel.open(id))).isEmpty();
+    }
+
+    @Test
+    void thatCompactDropsSortOrder() throws IOException {
+        List<Path> files = List.of(writeSortedPersons("sorted-0.parquet"), writeSortedPersons("sorted-1.parquet"));
+        assertThat(File.sortOrder(FileChannel.open(files.get(0)))).containsExactly("/person/id");
+
+        Path output = Files.createDirectory(testDir.resolve("compacted"));
+        List<Path> compacted = File.compact(files, output, 1024 * 1024, 4096);
+        assertThat(compacted).hasSize(1);
+        assertThat(File.sortOrder(FileChannel.open(compacted.get(0)))).isEmpty();
+    }
+
+    private Path writeSortedPersons(String fileName) {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                       optional binary municipality (STRING);
+                   }
+                }
+                """);
+        String ndjson = """
+                {"person": {"id": "2", "municipality": "b"}}
+                {"person": {"id": "1", "municipality": "a"}}
+                """;
+        Path path = testDir.resolve(fileName);
+        File.writeNdjsonSorted(new ByteArrayInputStream(ndjson.getBytes()), path, schema, List.of("/person/id"));
+        return path;
+    }
+
+    private static List<Map<String, Object>> readAll(RecordStream stream) throws IOException {
+        List<Map<String, Object>> records = new ArrayList<>();
+        try (stream) {
+            Map<String, Object> record;
+            while ((record = stream.read()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void thatWriteMetricsWork() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                   }
+                }
+                """);
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            ndjson.append("{\"person\": {\"id\": \"%d\"}}\n".formatted(i));
+        }
+        List<Long> recordsWritten = new ArrayList<>();
+        List<Long> bytesFlushed = new ArrayList<>();
+        Metrics metrics = new Metrics() {
+            @Override
+            public void recordsWritten(long records) {
+                recordsWritten.add(records);
+            }
+
+            @Override
+            public void rowGroupFlushed(long bytes, long nanos) {
+                bytesFlushed.add(bytes);
+            }
+        };
+
+        Path path = testDir.resolve(Path.of("thatWriteMetricsWork.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema, metrics);
+
+        assertThat(recordsWritten).containsExactly(1000L);
+        //A single row group, flushed together with the footer when the writer is closed. The magic number is written up front.
+        assertThat(bytesFlushed).containsExactly(Files.size(path) - 4);
+        assertThat(File.readColumn(FileChannel.open(path), "/person/id")).hasSize(1000);
+    }
+
+    @Test
+    void thatJfrEventsWork() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                       required binary name (STRING);
+                   }
+                }
+                """);
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            ndjson.append("{\"person\": {\"id\": \"%d\", \"name\": \"donald\"}}\n".formatted(i));
+        }
+        Path path = testDir.resolve(Path.of("thatJfrEventsWork.parquet"));
+        Path dump = testDir.resolve(Path.of("thatJfrEventsWork.jfr"));
+        try (Recording recording = new Recording()) {
+            recording.enable("no.ssb.dapla.parquet.RowGroupRead").withThreshold(Duration.ZERO);
+            recording.enable("no.ssb.dapla.parquet.RowGroupFlush").withThreshold(Duration.ZERO);
+            recording.start();
+            File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema);
+            assertThat(File.readColumn(FileChannel.open(path), "/person/id")).hasSize(1000);
+            try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).withFileName(path.toString()).build()) {
+                while (stream.read() != null) {
+                }
+            }
+            try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).withFileName(path.toString())
+                    .withRowFilter("/person/id", id -> false).build()) {
+                assertThat(stream.read()).isNull();
+            }
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        List<RecordedEvent> flushes = events.stream()
+                .filter(event -> event.getEventType().getName().equals("no.ssb.dapla.parquet.RowGroupFlush"))
+                .collect(Collectors.toList());
+        assertThat(flushes).hasSize(1);
+        assertThat(flushes.get(0).getString("file")).isEqualTo(path.toString());
+        assertThat(flushes.get(0).getLong("rows")).isEqualTo(1000);
+        assertThat(flushes.get(0).getLong("compressedSize")).isPositive();
+        assertThat(flushes.get(0).getLong("uncompressedSize")).isPositive();
+
+        List<RecordedEvent> reads = events.stream()
+                .filter(event -> event.getEventType().getName().equals("no.ssb.dapla.parquet.RowGroupRead"))
+                .collect(Collectors.toList());
+        assertThat(reads).hasSize(3);
+        //readColumn only reads the projected column, and doesn't know the name of the channel
+        assertThat(reads.get(0).getString("file")).isEmpty();
+        assertThat(reads.get(0).getInt("columns")).isEqualTo(1);
+        assertThat(reads.get(0).getLong("recordsDecoded")).isEqualTo(1000);
+        assertThat(reads.get(1).getString("file")).isEqualTo(path.toString());
+        assertThat(reads.get(1).getInt("columns")).isEqualTo(2);
+        assertThat(reads.get(1).getLong("rows")).isEqualTo(1000);
+        assertThat(reads.get(1).getLong("recordsDecoded")).isEqualTo(1000);
+        assertThat(reads.get(1).getLong("compressedSize")).isGreaterThan(reads.get(0).getLong("compressedSize"));
+        //A row group without matching rows is still read to evaluate the filter
+        assertThat(reads.get(2).getLong("rows")).isEqualTo(1000);
+        assertThat(reads.get(2).getLong("recordsDecoded")).isZero();
+    }
+
+    @Test
+    void thatWriteNdjsonInParallelWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                   }
+                }
+                """);
+
+        Path ndjson = testDir.resolve(Path.of("thatWriteNdjsonInParallelWorks.json"));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("{\"person\": {\"id\": \"%d\"}}\n".formatted(i));
+        }
+        Files.writeString(ndjson, sb.toString());
+
+        List<Path> parts = File.writeNdjson(ndjson, testDir, schema, 4);
+        assertThat(parts).hasSize(4);
+
+        List<Object> ids = new ArrayList<>();
+        for (Path part : parts) {
+            ids.addAll(File.readColumn(FileChannel.open(part), "/person/id"));
+        }
+        assertThat(ids).hasSize(100);
+        assertThat(ids).doesNotHaveDuplicates();
+        assertThat(ids).first().isEqualTo("0");
+        assertThat(ids).last().isEqualTo("99");
+    }
+
+    @Test
+    void thatSplitNdjsonAlignsToLines() throws IOException {
+        Path ndjson = testDir.resolve(Path.of("thatSplitNdjsonAlignsToLines.json"));
+        Files.writeString(ndjson, "{\"a\": \"1\"}\n{\"a\": \"22\"}\n{\"a\": \"333\"}\n");
+
+        try (SeekableByteChannel channel = FileChannel.open(ndjson)) {
+            assertThat(File.splitNdjson(channel, 2)).containsExactly(0L, 23L, 36L);
+            assertThat(File.splitNdjson(channel, 10)).containsExactly(0L, 11L, 23L, 36L);
+        }
+    }
+
+    @Test
+    void thatReadNdjsonWorks() throws IOException, JSONException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (STRING);
+                       optional group aliases (LIST) {
+                            repeated binary array (STRING);
+                       }
+                   }
+                }
+                """);
+
+        String first = "{\"person\": {\"id\": \"1\", \"aliases\": [\"Maui Mallard\", \"Frank Duck\"]}}";
+        String second = "{\"person\": {\"id\": \"2\"}}";
+
+        Path path = testDir.resolve(Path.of("thatReadNdjsonWorks.parquet"));
+        File.writeNdjson(new ByteArrayInputStream((first + "\n\n" + second + "\n").getBytes(StandardCharsets.UTF_8)), path, schema);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        File.readNdjson(FileChannel.open(path), out);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().collect(Collectors.toList());
+        assertThat(lines).hasSize(2);
+        JSONAssert.assertEquals(first, lines.get(0), JSONCompareMode.STRICT);
+        JSONAssert.assertEquals(second, lines.get(1), JSONCompareMode.STRICT);
+    }
+
     @Disabled("Method under test isn't implemented yet")
     @Test
     void thatReadJsonWorks() throws IOException, JSONException {
@@ -0,0 +1,147 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.parquet.example.data.simple.SimpleGroup;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LazyRecordTest {
+
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType("""
+            message root {
+               required group person {
+                   required group name {
+                        required binary firstName (STRING);
+                        required binary surname (STRING);
+                        optional int32 age (INTEGER(32, true));
+                   }
+                   optional group addresses (LIST) {
+                       repeated group array {
+                           required binary streetName (STRING);
+                           required binary zipCode (STRING);
+                       }
+                   }
+                   optional group aliases (LIST) {
+                        repeated binary array (STRING);
+                   }
+               }
+               optional binary comment (STRING);
+            }
+            """);
+
+    private static SimpleGroup donald() {
+        GroupType personType = (GroupType) SCHEMA.getType("person");
+        GroupType nameType = (GroupType) personType.getType("name");
+        GroupType addressesType = (GroupType) personType.getType("addresses");
+        GroupType addressesArrayType = (GroupType) addressesType.getType("array");
+        GroupType aliasesType = (GroupType) personType.getType("aliases");
+
+        SimpleGroup name = new SimpleGroup(nameType);
+        name.add("firstName", "Donald");
+        name.add("surname", "Duck");
+        name.add("age", 42);
+
+        SimpleGroup address = new SimpleGroup(addressesArrayType);
+        address.add("streetName", "Duckburg Lane 1");
+        address.add("zipCode", "123");
+
+        SimpleGroup addresses = new SimpleGroup(addressesType);
+        addresses.add("array", address);
+
+        SimpleGroup aliases = new SimpleGroup(aliasesType);
+        aliases.add("array", "Maui Mallard");
+        aliases.add("array", "Frank Duck");
+
+        SimpleGroup person = new SimpleGroup(personType);
+        person.add("name", name);
+        person.add("addresses", addresses);
+        person.add("aliases", aliases);
+
+        SimpleGroup root = new SimpleGroup(SCHEMA);
+        root.add("person", person);
+        return root;
+    }
+
+    @Test
+    void thatLazyRecordEqualsNormalizedRecord() {
+        SimpleGroup root = donald();
+        LazyRecord lazy = new LazyRecord(root, FieldInterceptor.noOp());
+        assertThat(lazy).isEqualTo(Record.normalize(root));
+        assertThat(lazy.materialize()).isEqualTo(Record.normalize(root));
+    }
+
+    @Test
+    void thatOnlyAccessedFieldsAreIntercepted() {
+        List<String> intercepted = new ArrayList<>();
+        LazyRecord lazy = new LazyRecord(donald(), (field, value) -> {
+            intercepted.add(field);
+            return value.toUpperCase();
+        });
+
+        Map<String, Object> person = (Map<String, Object>) lazy.get("person");
+        assertThat(person).containsOnlyKeys("name", "addresses", "aliases");
+        assertThat(intercepted).isEmpty();
+
+        Map<String, Object> name = (Map<String, Object>) person.get("name");
+        assertThat(name.get("firstName")).isEqualTo("DONALD");
+        assertThat(name.get("firstName")).isEqualTo("DONALD");
+        assertThat(intercepted).containsExactly("/person/name/firstName");
+
+        Map<String, Object> materialized = lazy.materialize();
+        assertThat(((Map<String, Object>) materialized.get("person")).get("aliases")).isEqualTo(List.of("MAUI MALLARD", "FRANK DUCK"));
+        assertThat(intercepted).containsExactlyInAnyOrder(
+                "/person/name/firstName",
+                "/person/name/surname",
+                "/person/name/age",
+                "/person/addresses/streetName",
+                "/person/addresses/zipCode",
+                "/person/aliases",
+                "/person/aliases"
+        );
+    }
+
+    @Test
+    void thatNonStringListsWork() {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   optional group nums (LIST) {
+                        repeated int32 array;
+                   }
+                }
+                """);
+        GroupType numsType = (GroupType) schema.getType("nums");
+        SimpleGroup nums = new SimpleGroup(numsType);
+        nums.add("array", 1);
+        nums.add("array", 2);
+        nums.add("array", 3);
+        SimpleGroup root = new SimpleGroup(schema);
+        root.add("nums", nums);
+
+        LazyRecord lazy = new LazyRecord(root, FieldInterceptor.noOp());
+        assertThat(lazy.get("nums")).isEqualTo(List.of("1", "2", "3"));
+        assertThat(lazy).isEqualTo(Record.normalize(root));
+    }
+
+    @Test
+    void thatMissingFieldsAreAbsent() {
+        LazyRecord lazy = new LazyRecord(donald(), FieldInterceptor.noOp());
+        assertThat(lazy).containsOnlyKeys("person");
+        assertThat(lazy.get("comment")).isNull();
+        assertThat(lazy.get("unknown")).isNull();
+        assertThat(lazy.containsKey("comment")).isFalse();
+    }
+
+    @Test
+    void thatLazyRecordIsReadOnly() {
+        LazyRecord lazy = new LazyRecord(donald(), FieldInterceptor.noOp());
+        assertThatThrownBy(() -> lazy.put("comment", "Quack")).isInstanceOf(UnsupportedOperationException.class);
+    }
+}
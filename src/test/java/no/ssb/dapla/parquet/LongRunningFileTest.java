@@ -1,5 +1,7 @@
 package no.ssb.dapla.parquet;
 
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.io.InputFile;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.MessageTypeParser;
 import org.junit.jupiter.api.Disabled;
@@ -7,6 +9,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
@@ -103,4 +106,41 @@ class LongRunningFileTest {
 
         System.out.println("Read " + objects.size() + " columns " + duration.toMillis() + " ms");
     }
+
+    /**
+     * Measures the cold start of the read path by reading a file in fresh JVMs, once through
+     * {@link ParquetFileReader#open(InputFile)} (Hadoop Configuration) and once through {@link ParquetReaders}.
+     */
+    @Disabled("Not meant to be run on a regular basis")
+    @Test
+    public void readStartupBenchmark() throws IOException, InterruptedException {
+        String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String file = Path.of("src", "test", "resources", "parquet", "simple-person", "0-99-people.parquet").toString();
+
+        for (String mode : List.of("hadoop", "standalone", "hadoop", "standalone")) {
+            Process process = new ProcessBuilder(java, "-cp", classPath, ReadStartup.class.getName(), mode, file)
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            process.waitFor();
+            System.out.print(output);
+        }
+    }
+
+    static class ReadStartup {
+        public static void main(String[] args) throws IOException {
+            Instant start = Instant.now();
+            try (SeekableByteChannel channel = FileChannel.open(Path.of(args[1]));
+                 ParquetFileReader reader = "hadoop".equals(args[0])
+                         ? ParquetFileReader.open(new SeekableByteChannelInputFile(channel))
+                         : ParquetReaders.open(channel)) {
+                while (reader.readNextRowGroup() != null) {
+                }
+            }
+            Duration duration = Duration.between(start, Instant.now());
+            int classes = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+            System.out.println(args[0] + ": first read " + duration.toMillis() + " ms, " + classes + " classes loaded");
+        }
+    }
 }
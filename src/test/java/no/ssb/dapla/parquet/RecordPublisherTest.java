@@ -0,0 +1,209 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecordPublisherTest {
+
+    private Path testDir;
+    private Path path;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testDir = Files.createTempDirectory("DataTest");
+        executor = Executors.newFixedThreadPool(2);
+
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                   }
+                }
+                """);
+        path = testDir.resolve(Path.of("records.parquet"));
+        try (JsonParquetWriter writer = new JsonParquetWriter(new org.apache.hadoop.fs.Path(path.toUri()), schema, true, CompressionCodecName.SNAPPY, 16 * 1024, 4 * 1024)) {
+            for (int i = 0; i < 10_000; i++) {
+                writer.write("{\"person\": {\"id\": \"%d\"}}".formatted(i));
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    @Test
+    void thatRecordsArePublishedOnDemand() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        RecordPublisher<Map<String, Object>> publisher = RecordPublisher.records(() -> {
+            opened.incrementAndGet();
+            return RecordStream.builder(FileChannel.open(path)).build();
+        }, executor);
+
+        //Every subscription reads a stream of its own, which isn't opened before items are requested
+        for (int subscription = 0; subscription < 2; subscription++) {
+            List<String> ids = new ArrayList<>();
+            CompletableFuture<Void> completed = new CompletableFuture<>();
+            publisher.subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(7);
+                }
+
+                @Override
+                public void onNext(Map<String, Object> item) {
+                    ids.add((String) ((Map<String, Object>) item.get("person")).get("id"));
+                    if (ids.size() % 7 == 0) {
+                        subscription.request(7);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completed.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.complete(null);
+                }
+            });
+            completed.get(10, TimeUnit.SECONDS);
+            assertThat(ids).hasSize(10_000);
+            assertThat(ids.get(0)).isEqualTo("0");
+            assertThat(ids.get(9_999)).isEqualTo("9999");
+        }
+        assertThat(opened.get()).isEqualTo(2);
+
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+            }
+
+            @Override
+            public void onNext(Map<String, Object> item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        assertThat(opened.get()).isEqualTo(2);
+    }
+
+    @Test
+    void thatCancelClosesTheStream() throws Exception {
+        List<FileChannel> channels = new ArrayList<>();
+        RecordPublisher<RecordBatch> publisher = RecordPublisher.batches(() -> {
+            FileChannel channel = FileChannel.open(path);
+            channels.add(channel);
+            return RecordStream.builder(channel).build();
+        }, 100, executor);
+
+        BlockingQueue<RecordBatch> batches = new LinkedBlockingQueue<>();
+        CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscribed.complete(subscription);
+                subscription.request(2);
+            }
+
+            @Override
+            public void onNext(RecordBatch item) {
+                batches.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        RecordBatch first = batches.poll(10, TimeUnit.SECONDS);
+        RecordBatch second = batches.poll(10, TimeUnit.SECONDS);
+        assertThat(first.size()).isEqualTo(100);
+        assertThat(second.get(0)).isEqualTo(Map.of("person", Map.of("id", "100")));
+        assertThat(first.get(0)).isEqualTo(Map.of("person", Map.of("id", "0"))); //Batches aren't reused
+
+        subscribed.get().cancel();
+        assertThat(channels).hasSize(1);
+        //The thread that published the second batch might not have let go of the subscription yet, and closes it if so
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (channels.get(0).isOpen() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(channels.get(0).isOpen()).isFalse();
+        subscribed.get().request(1);
+        assertThat(batches.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void thatColumnarBatchesArePublished() throws Exception {
+        RecordPublisher<ColumnarBatch> publisher = RecordPublisher.columnarBatches(() -> ColumnarReader.builder(FileChannel.open(path))
+                .withBatchSize(1000)
+                .build(), executor);
+
+        List<Integer> rowCounts = new ArrayList<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ColumnarBatch item) {
+                rowCounts.add(item.rowCount());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get(10, TimeUnit.SECONDS);
+        assertThat(rowCounts).hasSize(10);
+        assertThat(rowCounts.stream().mapToInt(Integer::intValue).sum()).isEqualTo(10_000);
+    }
+}
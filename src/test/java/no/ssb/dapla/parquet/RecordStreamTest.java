@@ -2,6 +2,8 @@ package no.ssb.dapla.parquet;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.MessageTypeParser;
 import org.junit.jupiter.api.AfterEach;
@@ -12,15 +14,19 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class RecordStreamTest {
 
@@ -93,4 +99,614 @@ class RecordStreamTest {
         }
         assertThat(streetNumbers).containsExactly("0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
     }
+
+    @Test
+    void thatReadBatchWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                   }
+                }
+                """);
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            ndjson.append("{\"person\": {\"id\": \"%d\"}}\n".formatted(i));
+        }
+        Path path = testDir.resolve(Path.of("thatReadBatchWorks.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema);
+
+        List<Integer> batchSizes = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+            RecordBatch batch = stream.readBatch(10);
+            Map<String, Object> first = batch.get(0);
+            while (!batch.isEmpty()) {
+                batchSizes.add(batch.size());
+                assertThat(batch.get(0)).isSameAs(first); //Top level maps are reused between batches
+                for (Map<String, Object> record : batch) {
+                    ids.add((String) ((Map<String, Object>) record.get("person")).get("id"));
+                }
+                stream.readBatch(batch);
+            }
+        }
+        assertThat(batchSizes).containsExactly(10, 10, 5);
+        assertThat(ids).hasSize(25);
+        assertThat(ids.get(0)).isEqualTo("0");
+        assertThat(ids.get(24)).isEqualTo("24");
+    }
+
+    @Test
+    void thatColumnInterceptorWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                       required binary name (UTF8);
+                   }
+                }
+                """);
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            ndjson.append("{\"person\": {\"id\": \"%d\", \"name\": \"donald\"}}\n".formatted(i));
+        }
+        Path path = testDir.resolve(Path.of("thatColumnInterceptorWorks.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema);
+
+        List<String> resolved = new ArrayList<>();
+        List<Integer> batchLengths = new ArrayList<>();
+        ColumnInterceptor columnInterceptor = columnPath -> {
+            resolved.add(columnPath);
+            if (!columnPath.equals("/person/name")) {
+                return null;
+            }
+            return (values, length) -> {
+                batchLengths.add(length);
+                for (int i = 0; i < length; i++) {
+                    values[i] = values[i].toUpperCase();
+                }
+            };
+        };
+
+        List<Map<String, Object>> records = new ArrayList<>();
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                .withColumnInterceptor(columnInterceptor)
+                .withColumnBatchSize(10)
+                .build()) {
+            Map<String, Object> next;
+            while ((next = stream.read()) != null) {
+                records.add(next);
+            }
+        }
+
+        assertThat(resolved).containsExactly("/person/id", "/person/name");
+        assertThat(batchLengths).containsExactly(10, 10, 5);
+        assertThat(records).hasSize(25);
+        assertThat(records.get(24)).isEqualTo(Map.of("person", Map.of("id", "24", "name", "DONALD")));
+    }
+
+    @Test
+    void thatDictionaryInterceptionWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                       required binary gender (UTF8);
+                   }
+                }
+                """);
+
+        List<String> genders = List.of("female", "male", "other");
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            ndjson.append("{\"person\": {\"id\": \"%d\", \"gender\": \"%s\"}}\n".formatted(i, genders.get(i % 3)));
+        }
+        Path path = testDir.resolve(Path.of("thatDictionaryInterceptionWorks.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema);
+
+        Map<String, Integer> interceptions = new HashMap<>();
+        FieldInterceptor fieldInterceptor = (field, value) -> {
+            interceptions.merge(field, 1, Integer::sum);
+            return value.toUpperCase();
+        };
+
+        List<Object> gendersRead = new ArrayList<>();
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                .withFieldSelectors(Set.of("/person/gender"))
+                .withFieldInterceptor(fieldInterceptor)
+                .withDictionaryInterception(true)
+                .build()) {
+            Map<String, Object> next;
+            while ((next = stream.read()) != null) {
+                gendersRead.add(((Map<String, Object>) next.get("person")).get("gender"));
+            }
+        }
+
+        assertThat(interceptions).containsExactly(Map.entry("/person/gender", 3));
+        assertThat(gendersRead).hasSize(1000);
+        assertThat(gendersRead.subList(0, 4)).containsExactly("FEMALE", "MALE", "OTHER", "FEMALE");
+    }
+
+    @Test
+    void thatFieldInterceptorCacheWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                       required binary gender (UTF8);
+                   }
+                }
+                """);
+
+        List<String> genders = List.of("female", "male", "other");
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 102; i++) {
+            ndjson.append("{\"person\": {\"id\": \"%d\", \"gender\": \"%s\"}}\n".formatted(i, genders.get(i % 3)));
+        }
+        Path path = testDir.resolve(Path.of("thatFieldInterceptorCacheWorks.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema);
+
+        Map<String, Integer> interceptions = new HashMap<>();
+        FieldInterceptor fieldInterceptor = (field, value) -> {
+            interceptions.merge(field, 1, Integer::sum);
+            return value.toUpperCase();
+        };
+        FieldInterceptorCache cache = FieldInterceptorCache.builder()
+                .withFieldSelectors(Set.of("/person/gender"))
+                .withMaximumWeight(2)
+                .withConcurrency(1)
+                .build();
+
+        List<Object> gendersRead = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                    .withFieldInterceptor(fieldInterceptor)
+                    .withFieldInterceptorCache(cache)
+                    .build()) {
+                Map<String, Object> next;
+                while ((next = stream.read()) != null) {
+                    gendersRead.add(((Map<String, Object>) next.get("person")).get("gender"));
+                }
+            }
+        }
+
+        assertThat(gendersRead).hasSize(204);
+        assertThat(gendersRead.subList(0, 4)).containsExactly("FEMALE", "MALE", "OTHER", "FEMALE");
+        //Ids are not cached, and three genders cycling through a cache of two always miss
+        assertThat(interceptions).containsEntry("/person/id", 204).containsEntry("/person/gender", 204);
+        assertThat(cache.hitCount()).isZero();
+        assertThat(cache.size()).isEqualTo(2);
+
+        cache = FieldInterceptorCache.builder().withMaximumWeight(100).build();
+        interceptions.clear();
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                .withFieldSelectors(Set.of("/person/gender"))
+                .withFieldInterceptor(fieldInterceptor)
+                .withFieldInterceptorCache(cache)
+                .build()) {
+            while (stream.read() != null) {
+            }
+        }
+        assertThat(interceptions).containsExactly(Map.entry("/person/gender", 3));
+        assertThat(cache.missCount()).isEqualTo(3);
+        assertThat(cache.hitCount()).isEqualTo(99);
+        assertThat(cache.hitRate()).isEqualTo(99.0 / 102);
+
+        //Every segment must have room for at least one entry
+        assertThatThrownBy(() -> FieldInterceptorCache.builder().withMaximumWeight(8).withConcurrency(16).build())
+                .isInstanceOf(IllegalArgumentException.class);
+
+        FieldInterceptor negative = FieldInterceptorCache.builder().withWeigher((field, value) -> -1).build().wrap(fieldInterceptor);
+        assertThatThrownBy(() -> negative.intercept("/person/gender", "female"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("/person/gender");
+    }
+
+    @Test
+    void thatRowRangeAndSeekWork() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                       required binary gender (UTF8);
+                   }
+                }
+                """);
+
+        List<String> genders = List.of("female", "male", "other");
+        Path path = testDir.resolve(Path.of("thatRowRangeAndSeekWork.parquet"));
+        try (JsonParquetWriter writer = new JsonParquetWriter(new org.apache.hadoop.fs.Path(path.toUri()), schema, true, CompressionCodecName.SNAPPY, 64 * 1024, 4 * 1024)) {
+            for (int i = 0; i < 100_000; i++) {
+                writer.write("{\"person\": {\"id\": \"%d\", \"gender\": \"%s\"}}".formatted(i, genders.get(i % 3)));
+            }
+        }
+        try (ParquetFileReader reader = ParquetReaders.open(FileChannel.open(path))) {
+            assertThat(reader.getRowGroups().size()).isGreaterThan(2);
+        }
+
+        for (boolean dictionaryInterception : List.of(false, true)) {
+            try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                    .withRowRange(40_000, 60_000)
+                    .withDictionaryInterception(dictionaryInterception)
+                    .build()) {
+                List<Integer> ids = new ArrayList<>();
+                RecordBatch batch = new RecordBatch(1000);
+                while (!stream.readBatch(batch).isEmpty()) {
+                    for (Map<String, Object> record : batch) {
+                        Map<String, Object> person = (Map<String, Object>) record.get("person");
+                        int id = Integer.parseInt((String) person.get("id"));
+                        assertThat(person.get("gender")).isEqualTo(genders.get(id % 3));
+                        ids.add(id);
+                    }
+                }
+                assertThat(ids).hasSize(20_000);
+                assertThat(ids.get(0)).isEqualTo(40_000);
+                assertThat(ids.get(19_999)).isEqualTo(59_999);
+
+                stream.seek(59_990);
+                assertThat(readId(stream)).isEqualTo("59990");
+                stream.seek(12_345);
+                assertThat(readId(stream)).isEqualTo("12345");
+                assertThat(readId(stream)).isEqualTo("12346");
+                stream.seek(50_000);
+                assertThat(readId(stream)).isEqualTo("50000");
+                stream.seek(60_000);
+                assertThat(stream.read()).isNull();
+            }
+        }
+
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+            stream.seek(99_999);
+            assertThat(readId(stream)).isEqualTo("99999");
+            assertThat(stream.read()).isNull();
+            stream.seek(0);
+            assertThat(readId(stream)).isEqualTo("0");
+            stream.seek(100_000);
+            assertThat(stream.read()).isNull();
+        }
+    }
+
+    @Test
+    void thatRowFilterWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                       required binary gender (UTF8);
+                       optional group tags (LIST) {
+                            repeated binary array (STRING);
+                       }
+                   }
+                }
+                """);
+
+        List<String> genders = List.of("female", "male", "other");
+        Path path = testDir.resolve(Path.of("thatRowFilterWorks.parquet"));
+        try (JsonParquetWriter writer = new JsonParquetWriter(new org.apache.hadoop.fs.Path(path.toUri()), schema, true, CompressionCodecName.SNAPPY, 64 * 1024, 4 * 1024)) {
+            for (int i = 0; i < 100_000; i++) {
+                writer.write("{\"person\": {\"id\": \"%d\", \"gender\": \"%s\", \"tags\": [\"t%d\", \"u%d\"]}}".formatted(i, genders.get(i % 3), i % 10, i % 1000));
+            }
+        }
+
+        for (boolean dictionaryInterception : List.of(false, true)) {
+            //The filter column isn't selected
+            try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                    .withFieldSelectors(Set.of("/person/gender"))
+                    .withRowFilter("/person/id", id -> Integer.parseInt(id) % 1000 == 7)
+                    .withDictionaryInterception(dictionaryInterception)
+                    .build()) {
+                List<Map<String, Object>> records = new ArrayList<>();
+                RecordBatch batch = new RecordBatch(30);
+                while (!stream.readBatch(batch).isEmpty()) {
+                    for (Map<String, Object> record : batch) {
+                        records.add(new HashMap<>(record));
+                    }
+                }
+                assertThat(records).hasSize(100);
+                assertThat(records.get(0)).isEqualTo(Map.of("person", Map.of("gender", "male")));
+                assertThat(records.get(1)).isEqualTo(Map.of("person", Map.of("gender", "other")));
+            }
+        }
+
+        //The filter column is selected, and the stream is restricted to a row range
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                .withFieldSelectors(Set.of("/person/id", "/person/gender"))
+                .withRowFilter("/person/id", id -> Integer.parseInt(id) % 1000 == 7)
+                .withRowRange(40_007, 60_000)
+                .build()) {
+            List<Integer> ids = new ArrayList<>();
+            Map<String, Object> record;
+            while ((record = stream.read()) != null) {
+                Map<String, Object> person = (Map<String, Object>) record.get("person");
+                int id = Integer.parseInt((String) person.get("id"));
+                assertThat(person.get("gender")).isEqualTo(genders.get(id % 3));
+                ids.add(id);
+            }
+            assertThat(ids).hasSize(20);
+            assertThat(ids.get(0)).isEqualTo(40_007);
+            assertThat(ids.get(19)).isEqualTo(59_007);
+
+            stream.seek(12_345);
+            assertThat(readId(stream)).isEqualTo("13007");
+            stream.seek(59_008);
+            assertThat(stream.read()).isNull();
+        }
+
+        //A row of a repeated column matches if any of its values does
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                .withRowFilter("/person/tags", tag -> tag.equals("u999"))
+                .build()) {
+            List<String> ids = new ArrayList<>();
+            Map<String, Object> record;
+            while ((record = stream.read()) != null) {
+                Map<String, Object> person = (Map<String, Object>) record.get("person");
+                assertThat(person.get("tags")).isEqualTo(List.of("t9", "u999"));
+                ids.add((String) person.get("id"));
+            }
+            assertThat(ids).hasSize(100);
+            assertThat(ids.get(99)).isEqualTo("99999");
+        }
+
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                .withRowFilter("/person/gender", gender -> gender.equals("unknown"))
+                .build()) {
+            assertThat(stream.read()).isNull();
+        }
+
+        //Rewritten files don't have offset indexes, so the rows between the matching rows are read and thrown away
+        Path rewritten = testDir.resolve(Path.of("thatRowFilterWorks-rewritten.parquet"));
+        File.rewrite(FileChannel.open(path), rewritten, Set.of("/person/gender"), (field, value) -> value);
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(rewritten))
+                .withFieldSelectors(Set.of("/person/id"))
+                .withRowFilter("/person/id", id -> Integer.parseInt(id) % 1000 == 7)
+                .withRowRange(40_007, 60_000)
+                .build()) {
+            assertThat(readId(stream)).isEqualTo("40007");
+            assertThat(readId(stream)).isEqualTo("41007");
+            stream.seek(59_000);
+            assertThat(readId(stream)).isEqualTo("59007");
+            assertThat(stream.read()).isNull();
+        }
+    }
+
+    @Test
+    void thatMetricsWork() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                       required binary name (UTF8);
+                   }
+                }
+                """);
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            ndjson.append("{\"person\": {\"id\": \"%d\", \"name\": \"donald\"}}\n".formatted(i));
+        }
+        Path path = testDir.resolve(Path.of("thatMetricsWork.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes()), path, schema);
+
+        Map<String, Long> counts = new ConcurrentHashMap<>();
+        Metrics metrics = new Metrics() {
+            @Override
+            public void bytesRead(long bytes) {
+                counts.merge("bytesRead", bytes, Long::sum);
+            }
+
+            @Override
+            public void rowGroupRead(long rows) {
+                counts.merge("rowGroupRows", rows, Long::sum);
+            }
+
+            @Override
+            public void pageDecompressed(long compressedBytes, long uncompressedBytes, long nanos) {
+                counts.merge("pages", 1L, Long::sum);
+            }
+
+            @Override
+            public void recordDecoded(long nanos) {
+                counts.merge("decoded", 1L, Long::sum);
+            }
+
+            @Override
+            public void recordNormalized(long nanos) {
+                counts.merge("normalized", 1L, Long::sum);
+            }
+
+            @Override
+            public void valuesIntercepted(long values, long nanos) {
+                counts.merge("intercepted", values, Long::sum);
+            }
+        };
+
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path))
+                .withFieldInterceptor((field, value) -> value.toUpperCase())
+                .withColumnInterceptor(columnPath -> columnPath.equals("/person/name") ? (values, length) -> {
+                } : null)
+                .withColumnBatchSize(30)
+                .withMetrics(metrics)
+                .build()) {
+            while (stream.read() != null) {
+            }
+        }
+
+        assertThat(counts.get("bytesRead")).isPositive().isLessThanOrEqualTo(Files.size(path));
+        assertThat(counts.get("rowGroupRows")).isEqualTo(100);
+        assertThat(counts.get("pages")).isGreaterThanOrEqualTo(2);
+        assertThat(counts.get("decoded")).isEqualTo(100);
+        assertThat(counts.get("normalized")).isEqualTo(100);
+        //Both fields by the field interceptor, and the names once more by the column interceptor
+        assertThat(counts.get("intercepted")).isEqualTo(300);
+    }
+
+    @Test
+    void thatAllocatorWorks() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                       optional binary name (UTF8);
+                   }
+                }
+                """);
+
+        PooledByteBufferAllocator allocator = new PooledByteBufferAllocator(1024 * 1024);
+        //Values of uncompressed pages refer straight to the buffers of their column chunks
+        for (CompressionCodecName codec : List.of(CompressionCodecName.UNCOMPRESSED, CompressionCodecName.SNAPPY)) {
+            Path path = testDir.resolve(Path.of("thatAllocatorWorks-%s.parquet".formatted(codec)));
+            try (JsonParquetWriter writer = new JsonParquetWriter(new org.apache.hadoop.fs.Path(path.toUri()), schema, false, codec, 16 * 1024, 4 * 1024)) {
+                for (int i = 0; i < 10_000; i++) {
+                    writer.write("{\"person\": {\"id\": \"%d\", \"name\": \"%s\"}}".formatted(i, UUID.randomUUID()));
+                }
+            }
+
+            List<Map<String, Object>> expected = new ArrayList<>();
+            try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+                Map<String, Object> record;
+                while ((record = stream.read()) != null) {
+                    expected.add(record);
+                }
+            }
+            for (int pass = 0; pass < 2; pass++) {
+                List<Map<String, Object>> records = new ArrayList<>();
+                try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).withAllocator(allocator).build()) {
+                    RecordBatch batch = new RecordBatch(1000);
+                    while (!stream.readBatch(batch).isEmpty()) {
+                        for (Map<String, Object> record : batch) {
+                            records.add(new HashMap<>(record));
+                        }
+                    }
+                }
+                assertThat(records).isEqualTo(expected);
+            }
+            assertThat(File.readColumn(FileChannel.open(path), "/person/name", Metrics.noOp(), allocator))
+                    .isEqualTo(File.readColumn(FileChannel.open(path), "/person/name"));
+        }
+
+        assertThat(allocator.reuseCount()).isGreaterThan(allocator.allocationCount());
+        assertThat(allocator.pooledBytes()).isPositive().isLessThanOrEqualTo(1024 * 1024);
+        assertThatThrownBy(() -> RecordStream.builder(FileChannel.open(testDir.resolve("thatAllocatorWorks-SNAPPY.parquet")))
+                .withLazyRecords(true)
+                .withAllocator(allocator)
+                .build()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void thatConcurrentChunkReadsWork() throws IOException {
+        StringBuilder fields = new StringBuilder();
+        for (int c = 0; c < 20; c++) {
+            fields.append("required binary c%d (UTF8);\n".formatted(c));
+        }
+        MessageType schema = MessageTypeParser.parseMessageType("message root { required group person { %s } }".formatted(fields));
+
+        Path path = testDir.resolve(Path.of("thatConcurrentChunkReadsWork.parquet"));
+        try (JsonParquetWriter writer = new JsonParquetWriter(new org.apache.hadoop.fs.Path(path.toUri()), schema, true, CompressionCodecName.SNAPPY, 64 * 1024, 4 * 1024)) {
+            for (int i = 0; i < 5_000; i++) {
+                StringBuilder person = new StringBuilder();
+                for (int c = 0; c < 20; c++) {
+                    person.append(c == 0 ? "" : ", ").append("\"c%d\": \"%d-%d\"".formatted(c, c, i));
+                }
+                writer.write("{\"person\": {%s}}".formatted(person));
+            }
+        }
+        try (ParquetFileReader reader = ParquetReaders.open(FileChannel.open(path))) {
+            assertThat(reader.getRowGroups().size()).isGreaterThan(2);
+        }
+
+        for (Set<String> fieldSelectors : List.of(Set.<String>of(), Set.of("/person/c3", "/person/c7", "/person/c19"))) {
+            List<Map<String, Object>> expected = new ArrayList<>();
+            try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).withFieldSelectors(fieldSelectors).build()) {
+                Map<String, Object> record;
+                while ((record = stream.read()) != null) {
+                    expected.add(record);
+                }
+            }
+            assertThat(expected).hasSize(5_000);
+
+            //Both streams share a channel, and are read in turns, as positional reads leave the channel position alone
+            try (FileChannel channel = FileChannel.open(path)) {
+                List<Map<String, Object>> first = new ArrayList<>();
+                List<Map<String, Object>> second = new ArrayList<>();
+                RecordStream firstStream = RecordStream.builder(new UnclosableChannel(channel))
+                        .withFieldSelectors(fieldSelectors)
+                        .withConcurrentChunkReads(true)
+                        .build();
+                RecordStream secondStream = RecordStream.builder(new UnclosableChannel(channel))
+                        .withFieldSelectors(fieldSelectors)
+                        .withConcurrentChunkReads(true)
+                        .withAllocator(new PooledByteBufferAllocator(1024 * 1024))
+                        .build();
+                secondStream.seek(2_500);
+                RecordBatch batch = new RecordBatch(100);
+                while (!firstStream.readBatch(batch).isEmpty()) {
+                    batch.forEach(record -> first.add(new HashMap<>(record)));
+                    if (!secondStream.readBatch(batch).isEmpty()) {
+                        batch.forEach(record -> second.add(new HashMap<>(record)));
+                    }
+                }
+                firstStream.close();
+                secondStream.close();
+                assertThat(first).isEqualTo(expected);
+                assertThat(second).isEqualTo(expected.subList(2_500, 5_000));
+            }
+        }
+    }
+
+    @Test
+    void thatUtf8ViewsWork() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required group person {
+                       required binary id (UTF8);
+                   }
+                   optional group aliases (LIST) {
+                       repeated binary array (STRING);
+                   }
+                }
+                """);
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            ndjson.append("{\"person\": {\"id\": \"Blåbærsyltetøy %d\"}, \"aliases\": [\"Ærlig %d\", \"Ærlig %d\"]}\n".formatted(i, i, i));
+        }
+        Path path = testDir.resolve(Path.of("thatUtf8ViewsWork.parquet"));
+        File.writeNdjson(new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)), path, schema);
+
+        for (boolean lazyRecords : List.of(false, true)) {
+            List<String> ids = new ArrayList<>();
+            try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).withUtf8Views(true).withLazyRecords(lazyRecords).build()) {
+                Map<String, Object> record;
+                while ((record = stream.read()) != null) {
+                    Object id = ((Map<String, Object>) record.get("person")).get("id");
+                    assertThat(id).isInstanceOf(Utf8String.class);
+                    ids.add(id.toString());
+
+                    List<Object> aliases = (List<Object>) record.get("aliases");
+                    assertThat(aliases.get(0)).isInstanceOf(Utf8String.class);
+                    assertThat(aliases.get(0)).isEqualTo(aliases.get(1)).hasSameHashCodeAs(aliases.get(1));
+                    Utf8String alias = (Utf8String) aliases.get(0);
+                    assertThat(alias.contentEquals("Ærlig")).isFalse();
+                    assertThat(alias.contentEquals("Ærlig " + (ids.size() - 1))).isTrue();
+                    assertThat(alias.getBytes()).isEqualTo(("Ærlig " + (ids.size() - 1)).getBytes(StandardCharsets.UTF_8));
+                    assertThat((Object) alias.copy()).isEqualTo(alias);
+                    assertThat(alias.compareTo(Utf8String.of(alias.toString()))).isZero();
+                }
+            }
+            assertThat(ids).hasSize(10);
+            assertThat(ids.get(0)).isEqualTo("Blåbærsyltetøy 0");
+            assertThat(ids.get(9)).isEqualTo("Blåbærsyltetøy 9");
+        }
+
+        assertThatThrownBy(() -> RecordStream.builder(FileChannel.open(path))
+                .withUtf8Views(true)
+                .withFieldInterceptor((field, value) -> value)
+                .build()).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static String readId(RecordStream stream) throws IOException {
+        return (String) ((Map<String, Object>) stream.read().get("person")).get("id");
+    }
 }
@@ -0,0 +1,210 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RecordWriterTest {
+
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType("""
+            message root {
+               required group person {
+                   required binary id (STRING);
+                   optional int32 age (INTEGER(32, true));
+                   optional double income;
+                   optional boolean active;
+               }
+               optional group addresses (LIST) {
+                   repeated group array {
+                       required binary streetName (STRING);
+                   }
+               }
+               optional group aliases (LIST) {
+                    repeated binary array (STRING);
+               }
+            }
+            """);
+
+    private Path testDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testDir = Files.createTempDirectory("DataTest");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    @Test
+    void thatMapsCanBeWritten() throws IOException {
+        Path path = testDir.resolve("thatMapsCanBeWritten.parquet");
+        try (RecordWriter<Map<String, Object>> writer = RecordWriter.builder(path, SCHEMA).build()) {
+            //Entries in any order, values of any type that converts to the type of the field
+            Map<String, Object> person = new HashMap<>();
+            person.put("income", 1000.5);
+            person.put("age", "42");
+            person.put("id", Utf8String.of("1"));
+            person.put("active", true);
+            Map<String, Object> record = new HashMap<>();
+            record.put("aliases", List.of("Donald", "Duck"));
+            record.put("person", person);
+            record.put("addresses", List.of(Map.of("streetName", "Duckburg Lane 1")));
+            writer.write(record);
+
+            writer.write(Map.of("person", Map.of("id", "2"), "aliases", List.of()));
+        }
+
+        List<Map<String, Object>> records = readAll(path);
+        assertThat(records).containsExactly(
+                Map.of(
+                        "person", Map.of("id", "1", "age", "42", "income", "1000.5", "active", "true"),
+                        "addresses", List.of(Map.of("streetName", "Duckburg Lane 1")),
+                        "aliases", List.of("Donald", "Duck")
+                ),
+                Map.of("person", Map.of("id", "2"), "aliases", List.of())
+        );
+
+        //Records that are read can be written back as they are
+        Path copy = testDir.resolve("copy.parquet");
+        try (RecordWriter<Map<String, Object>> writer = RecordWriter.builder(copy, SCHEMA).build()) {
+            for (Map<String, Object> record : records) {
+                writer.write(record);
+            }
+        }
+        assertThat(readAll(copy)).isEqualTo(records);
+    }
+
+    @Test
+    void thatObjectsCanBeWrittenWithPlan() throws IOException {
+        RecordPlan<Person> personPlan = RecordPlan.<Person>builder()
+                .field("id", Person::getId)
+                .field("age", Person::getAge)
+                .build();
+        RecordPlan<Address> addressPlan = RecordPlan.<Address>builder()
+                .field("streetName", Address::getStreetName)
+                .build();
+        RecordPlan<Person> plan = RecordPlan.<Person>builder()
+                .field("aliases", Person::getAliases) //Out of schema order
+                .group("person", person -> person, personPlan)
+                .list("addresses", Person::getAddresses, addressPlan)
+                .build();
+
+        Path path = testDir.resolve("thatObjectsCanBeWrittenWithPlan.parquet");
+        try (RecordWriter<Person> writer = RecordWriter.builder(path, SCHEMA, plan).build()) {
+            writer.write(new Person("1", 42, List.of(new Address("Duckburg Lane 1"), new Address("Duckburg Lane 2")), List.of("Donald")));
+            writer.write(new Person("2", null, List.of(), null));
+        }
+
+        assertThat(readAll(path)).containsExactly(
+                Map.of(
+                        "person", Map.of("id", "1", "age", "42"),
+                        "addresses", List.of(Map.of("streetName", "Duckburg Lane 1"), Map.of("streetName", "Duckburg Lane 2")),
+                        "aliases", List.of("Donald")
+                ),
+                Map.of("person", Map.of("id", "2"), "addresses", List.of())
+        );
+    }
+
+    @Test
+    void thatPlanIsCheckedAgainstSchema() {
+        RecordPlan<Person> plan = RecordPlan.<Person>builder()
+                .field("name", Person::getId)
+                .build();
+        assertThatThrownBy(() -> RecordWriter.builder(testDir.resolve("plan.parquet"), SCHEMA, plan).build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("name");
+        assertThatThrownBy(() -> RecordPlan.<Person>builder().field("id", Person::getId).field("id", Person::getId))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void thatIntegersAreNotTruncated() throws IOException {
+        Path path = testDir.resolve("thatIntegersAreNotTruncated.parquet");
+        try (RecordWriter<Map<String, Object>> writer = RecordWriter.builder(path, SCHEMA).build()) {
+            writer.write(Map.of("person", Map.of("id", "1", "age", 42L)));
+            writer.write(Map.of("person", Map.of("id", "2", "age", 43.0)));
+        }
+        assertThat(readAll(path)).extracting(record -> ((Map<String, Object>) record.get("person")).get("age")).containsExactly("42", "43");
+
+        for (Object age : List.<Object>of(3_000_000_000L, 42.5, "forty-two")) {
+            assertThatThrownBy(() -> {
+                try (RecordWriter<Map<String, Object>> writer = RecordWriter.builder(testDir.resolve("invalid.parquet"), SCHEMA).build()) {
+                    writer.write(Map.of("person", Map.of("id", "1", "age", age)));
+                }
+            })
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("age");
+            Files.deleteIfExists(testDir.resolve("invalid.parquet"));
+        }
+    }
+
+    private static List<Map<String, Object>> readAll(Path path) throws IOException {
+        List<Map<String, Object>> records = new ArrayList<>();
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+            Map<String, Object> record;
+            while ((record = stream.read()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    static class Person {
+        private final String id;
+        private final Integer age;
+        private final List<Address> addresses;
+        private final List<String> aliases;
+
+        Person(String id, Integer age, List<Address> addresses, List<String> aliases) {
+            this.id = id;
+            this.age = age;
+            this.addresses = addresses;
+            this.aliases = aliases;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        Integer getAge() {
+            return age;
+        }
+
+        List<Address> getAddresses() {
+            return addresses;
+        }
+
+        List<String> getAliases() {
+            return aliases;
+        }
+    }
+
+    static class Address {
+        private final String streetName;
+
+        Address(String streetName) {
+            this.streetName = streetName;
+        }
+
+        String getStreetName() {
+            return streetName;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SortingJsonWriterTest {
+
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType("""
+            message root {
+               required group person {
+                   required binary id (STRING);
+                   optional int64 age (INTEGER(64, true));
+               }
+            }
+            """);
+
+    private Path testDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testDir = Files.createTempDirectory("DataTest");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    @Test
+    void thatKeysAreComparedByTheirUtf8Bytes() {
+        SortingJsonWriter writer = new SortingJsonWriter(testDir.resolve("sorted.parquet"), SCHEMA, List.of("/person/id"), 1024, Metrics.noOp());
+
+        //A supplementary character is a surrogate pair in UTF-16, which sorts before U+FFFD, but not in UTF-8
+        List<String> records = List.of(
+                "{\"person\": {\"id\": \"\\ud83d\\ude00\"}}",
+                "{\"person\": {\"id\": \"\\ufffd\"}}",
+                "{\"person\": {\"id\": \"z\"}}",
+                "{\"person\": {}}"
+        );
+        List<SortingJsonWriter.SortEntry> entries = new ArrayList<>();
+        for (String record : records) {
+            entries.add(writer.entry(record));
+        }
+        entries.sort(SortingJsonWriter.SortEntry.ORDER);
+        assertThat(entries.stream().map(entry -> records.indexOf(entry.json)).collect(Collectors.toList())).containsExactly(3, 2, 1, 0);
+
+        assertThatThrownBy(() -> writer.entry("{\"person\": {\"id\": [\"many\"]}}"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("/person/id")
+                .hasMessageContaining("many");
+    }
+
+    @Test
+    void thatSortPathsMustBeBinary() {
+        assertThatThrownBy(() -> new SortingJsonWriter(testDir.resolve("sorted.parquet"), SCHEMA, List.of("/person/age"), 1024, Metrics.noOp()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("/person/age");
+    }
+
+    @Test
+    void thatFileIsOnlyWrittenWhenFinished() throws IOException {
+        Path path = testDir.resolve("sorted.parquet");
+        try (SortingJsonWriter writer = new SortingJsonWriter(path, SCHEMA, List.of("/person/id"), 1, Metrics.noOp())) {
+            writer.write("{\"person\": {\"id\": \"2\"}}");
+            writer.write("{\"person\": {\"id\": \"1\"}}");
+            assertThatThrownBy(() -> writer.write("{\"person\": ")).isInstanceOf(RuntimeException.class);
+        }
+        assertThat(testDir).isEmptyDirectory();
+
+        assertThatThrownBy(() -> File.writeNdjsonSorted(new ByteArrayInputStream("{\"person\": {\"id\": \"1\"}}\n{".getBytes()), path, SCHEMA, List.of("/person/id")))
+                .isInstanceOf(RuntimeException.class);
+        assertThat(testDir).isEmptyDirectory();
+    }
+
+    @Test
+    void thatManyRunsAreMergedInPasses() throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType("""
+                message root {
+                   required binary id (STRING);
+                   required binary position (STRING);
+                }
+                """);
+        Path path = testDir.resolve("sorted.parquet");
+
+        //Every record is spilled as a run of its own, and pairs of records share a key
+        List<String> expected = new ArrayList<>();
+        try (SortingJsonWriter writer = new SortingJsonWriter(path, schema, List.of("/id"), 1, Metrics.noOp())) {
+            for (int i = 0; i < 300; i++) {
+                String id = "%03d".formatted(150 - i / 2);
+                String position = "%03d".formatted(i);
+                writer.write("{\"id\": \"%s\", \"position\": \"%s\"}".formatted(id, position));
+                expected.add(id + ":" + position);
+            }
+            writer.finish();
+        }
+        //Ties keep their input order, like a stable sort
+        expected.sort(Comparator.comparing(record -> record.substring(0, 3)));
+
+        List<String> records = new ArrayList<>();
+        try (RecordStream stream = RecordStream.builder(FileChannel.open(path)).build()) {
+            Map<String, Object> record;
+            while ((record = stream.read()) != null) {
+                records.add(record.get("id") + ":" + record.get("position"));
+            }
+        }
+        assertThat(records).isEqualTo(expected);
+        assertThat(testDir).isDirectoryNotContaining(p -> p.getFileName().toString().startsWith(".sort-"));
+
+        assertThatThrownBy(() -> new SortingJsonWriter(path, schema, List.of("/id"), 0, Metrics.noOp()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
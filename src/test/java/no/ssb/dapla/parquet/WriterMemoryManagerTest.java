@@ -0,0 +1,114 @@
+package no.ssb.dapla.parquet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriterMemoryManagerTest {
+
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType("""
+            message root {
+               required group person {
+                   required binary id (STRING);
+               }
+            }
+            """);
+
+    private Path testDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testDir = Files.createTempDirectory("DataTest");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+    }
+
+    @Test
+    void thatWritersShareTheBudget() throws IOException {
+        WriterMemoryManager memoryManager = new WriterMemoryManager(2 * 1024 * 1024, 64 * 1024);
+        List<Path> paths = write(memoryManager, 4, 20_000);
+
+        assertThat(memoryManager.writerCount()).isEqualTo(0);
+        assertThat(memoryManager.scale()).isEqualTo(1.0);
+        for (Path path : paths) {
+            assertThat(rowGroupCount(path)).isGreaterThan(1);
+            assertThat(File.rowCount(FileChannel.open(path))).isEqualTo(20_000);
+        }
+    }
+
+    @Test
+    void thatWritersWithinBudgetAreNotScaled() throws IOException {
+        WriterMemoryManager memoryManager = new WriterMemoryManager(Long.MAX_VALUE, 64 * 1024);
+        for (Path path : write(memoryManager, 2, 20_000)) {
+            assertThat(rowGroupCount(path)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void thatScaleIsBoundedByMinimumRowGroupSize() throws IOException {
+        WriterMemoryManager memoryManager = new WriterMemoryManager(1024, 64 * 1024);
+        List<MeteredWriter<String>> writers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            writers.add(MeteredWriter.json(testDir.resolve("part-%d.parquet".formatted(i)), SCHEMA, Metrics.noOp(), memoryManager));
+        }
+        assertThat(memoryManager.writerCount()).isEqualTo(3);
+        assertThat(memoryManager.scale()).isEqualTo(1024.0 / (3L * ParquetWriter.DEFAULT_BLOCK_SIZE));
+        assertThat(memoryManager.allocatedBytes()).isEqualTo(3 * 64 * 1024);
+
+        writers.remove(0).close();
+        assertThat(memoryManager.writerCount()).isEqualTo(2);
+        memoryManager.setBudget(Long.MAX_VALUE);
+        assertThat(memoryManager.allocatedBytes()).isEqualTo(2L * ParquetWriter.DEFAULT_BLOCK_SIZE);
+        for (MeteredWriter<String> writer : writers) {
+            writer.close();
+        }
+        assertThat(memoryManager.writerCount()).isEqualTo(0);
+    }
+
+    /**
+     * Write the same number of records to each of a number of files, interleaving the writes as concurrent writers
+     * would.
+     */
+    private List<Path> write(WriterMemoryManager memoryManager, int files, int records) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        List<MeteredWriter<String>> writers = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            Path path = testDir.resolve("part-%d.parquet".formatted(i));
+            paths.add(path);
+            writers.add(MeteredWriter.json(path, SCHEMA, Metrics.noOp(), memoryManager));
+        }
+        for (int i = 0; i < records; i++) {
+            for (MeteredWriter<String> writer : writers) {
+                writer.write("{\"person\": {\"id\": \"%s%s\"}}".formatted(UUID.randomUUID(), UUID.randomUUID()));
+            }
+        }
+        for (MeteredWriter<String> writer : writers) {
+            writer.close();
+        }
+        return paths;
+    }
+
+    private static int rowGroupCount(Path path) throws IOException {
+        try (ParquetFileReader reader = ParquetReaders.open(FileChannel.open(path))) {
+            return reader.getRowGroups().size();
+        }
+    }
+}